@@ -1,7 +1,7 @@
 package io.graversen.springboot3app.configuration;
 
-import dev.langchain4j.chain.ConversationalRetrievalChain;
 import io.graversen.starter.spring.confluence.rag.ConfluenceIngestor;
+import io.graversen.starter.spring.confluence.rag.ConfluenceRagAssistant;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -13,9 +13,9 @@ import org.springframework.stereotype.Component;
 @Component
 @RequiredArgsConstructor
 public class ExampleRunner implements ApplicationRunner {
-    // ConversationalRetrievalChain is the main entry point for RAG (Retrieval-Augmented Generation) tasks.
-    // It allows you to ask questions and get answers based on the ingested documents.
-    private final ConversationalRetrievalChain ragChain;
+    // ConfluenceRagAssistant is the main entry point for RAG (Retrieval-Augmented Generation) tasks.
+    // It allows you to ask questions and get answers based on the ingested documents, one conversation per id.
+    private final ConfluenceRagAssistant ragAssistant;
 
     // ConfluenceIngestor is responsible for ingesting documents from Confluence into the RAG system.
     // It handles the retrieval and processing of documents, making them available for querying.
@@ -37,7 +37,7 @@ public class ExampleRunner implements ApplicationRunner {
     }
 
     private void askAndAnswer(@NonNull String question) {
-        final var answer = ragChain.execute(question);
+        final var answer = ragAssistant.ask("example-runner", question);
         log.info("Question: {}", question);
         log.info("Answer: {}", answer);
     }
@@ -0,0 +1,131 @@
+package io.graversen.starter.spring.confluence.rag.benchmarks;
+
+import io.graversen.starter.spring.confluence.rag.ConfluenceDtos;
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+/**
+ * Deterministic, synthetic Confluence pages in storage format. The shapes mirror what real spaces contain: short
+ * prose pages, pages dominated by macros, and exported tables that run into megabytes.
+ */
+@UtilityClass
+public class ConfluenceCorpus {
+    private static final List<String> WORDS = List.of(
+            "rig", "cycle", "bay", "yield", "overseer", "protocol", "shift", "drill", "ore", "incident",
+            "radiation", "manual", "override", "miner", "quota", "ventilation", "sector", "report", "tonnes", "depth",
+            "maintenance", "inspection", "crew", "extraction", "shaft", "pressure", "sensor", "calibration", "log", "seam"
+    );
+
+    public enum PageShape {
+        SMALL,
+        MACRO_HEAVY,
+        LARGE_TABLE
+    }
+
+    public String page(@NonNull PageShape shape, long seed) {
+        final var random = new Random(seed);
+        return switch (shape) {
+            case SMALL -> smallPage(random);
+            case MACRO_HEAVY -> macroHeavyPage(random);
+            case LARGE_TABLE -> tablePage(random, 2 * 1024 * 1024);
+        };
+    }
+
+    public ConfluenceDtos.PageResponse pageResponse(@NonNull PageShape shape, long seed) {
+        final var id = Long.toString(100_000 + seed);
+        return new ConfluenceDtos.PageResponse(
+                id,
+                "%s %s %d".formatted(capitalize(WORDS.get((int) (seed % WORDS.size()))), shape.name().toLowerCase(), seed),
+                new ConfluenceDtos.Version(1, "2024-01-01T00:00:00.000Z"),
+                new ConfluenceDtos.PageResponse.Body(new ConfluenceDtos.StorageBody(page(shape, seed))),
+                new ConfluenceDtos.Space("OPS"),
+                List.of(new ConfluenceDtos.Ancestor("100", "Operations"), new ConfluenceDtos.Ancestor("200", "Runbooks")),
+                new ConfluenceDtos.PageMetadata(new ConfluenceDtos.Labels(List.of(new ConfluenceDtos.Label(shape.name().toLowerCase()))))
+        );
+    }
+
+    public String question(long seed) {
+        final var random = new Random(seed);
+        return "Which %s had the highest %s during %s %d?".formatted(word(random), word(random), word(random), random.nextInt(500));
+    }
+
+    private String smallPage(Random random) {
+        final var page = new StringBuilder();
+        page.append("<h1>").append(sentence(random, 4)).append("</h1>");
+        for (var section = 0; section < 3; section++) {
+            page.append("<h2>").append(sentence(random, 3)).append("</h2>");
+            page.append("<p>").append(sentence(random, 40))
+                    .append(" See <a href=\"https://confluence.example.com/display/OPS/").append(word(random)).append("\">the runbook</a> and ")
+                    .append("<ac:link><ri:page ri:content-title=\"").append(sentence(random, 2)).append("\" /></ac:link>")
+                    .append(" for <strong>").append(sentence(random, 3)).append("</strong> &amp; <em>").append(sentence(random, 2)).append("</em>.</p>");
+            page.append("<ul>");
+            IntStream.range(0, 4).forEach(item -> page.append("<li>").append(sentence(random, 8)).append("</li>"));
+            page.append("</ul>");
+        }
+        return page.toString();
+    }
+
+    private String macroHeavyPage(Random random) {
+        final var page = new StringBuilder();
+        page.append("<h1>").append(sentence(random, 4)).append("</h1>");
+        for (var section = 0; section < 12; section++) {
+            page.append("<h2>").append(sentence(random, 3)).append("&nbsp;&ndash; ")
+                    .append("<ac:structured-macro ac:name=\"status\"><ac:parameter ac:name=\"colour\">Green</ac:parameter>")
+                    .append("<ac:parameter ac:name=\"title\">DONE</ac:parameter></ac:structured-macro></h2>");
+            page.append("<ac:structured-macro ac:name=\"info\"><ac:rich-text-body><p>")
+                    .append(sentence(random, 25)).append("</p></ac:rich-text-body></ac:structured-macro>");
+            page.append("<p>").append(sentence(random, 60)).append("</p>");
+            page.append("<ac:structured-macro ac:name=\"code\"><ac:parameter ac:name=\"language\">java</ac:parameter>")
+                    .append("<ac:plain-text-body><![CDATA[");
+            IntStream.range(0, 15).forEach(line -> page.append("final var ").append(word(random)).append(line)
+                    .append(" = rig.").append(word(random)).append("(\"").append(word(random)).append("\", ").append(random.nextInt(1000)).append(");\n"));
+            page.append("]]></ac:plain-text-body></ac:structured-macro>");
+            page.append("<ac:structured-macro ac:name=\"expand\"><ac:parameter ac:name=\"title\">").append(sentence(random, 3))
+                    .append("</ac:parameter><ac:rich-text-body><ol>");
+            IntStream.range(0, 6).forEach(item -> page.append("<li>").append(sentence(random, 12)).append("</li>"));
+            page.append("</ol></ac:rich-text-body></ac:structured-macro>");
+            page.append("<ac:structured-macro ac:name=\"warning\"><ac:rich-text-body><p>")
+                    .append(sentence(random, 15)).append("</p></ac:rich-text-body></ac:structured-macro>");
+        }
+        return page.toString();
+    }
+
+    private String tablePage(Random random, int targetBytes) {
+        final var page = new StringBuilder(targetBytes + 1024);
+        page.append("<h1>").append(sentence(random, 4)).append("</h1><p>").append(sentence(random, 30)).append("</p>");
+        page.append("<table><tbody><tr><th>Rig</th><th>Cycle</th><th>Bay</th><th>Yield (t/h)</th><th>Incidents</th><th>Notes</th></tr>");
+        while (page.length() < targetBytes) {
+            page.append("<tr><td>").append(capitalize(word(random))).append('-').append(random.nextInt(100))
+                    .append("</td><td>").append(random.nextInt(1000))
+                    .append("</td><td>").append(random.nextInt(9) + 1).append('-').append((char) ('A' + random.nextInt(6)))
+                    .append("</td><td>").append(random.nextInt(10_000) / 100.0)
+                    .append("</td><td>").append(random.nextInt(5))
+                    .append("</td><td>").append(sentence(random, 10)).append("</td></tr>");
+        }
+        page.append("</tbody></table>");
+        return page.toString();
+    }
+
+    private String sentence(Random random, int words) {
+        final var sentence = new StringBuilder();
+        for (var i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(word(random));
+        }
+        return sentence.toString();
+    }
+
+    private String word(Random random) {
+        return WORDS.get(random.nextInt(WORDS.size()));
+    }
+
+    private String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+}
@@ -0,0 +1,50 @@
+package io.graversen.starter.spring.confluence.rag.benchmarks;
+
+import io.graversen.starter.spring.confluence.rag.ConfluenceContentFormatter;
+import io.graversen.starter.spring.confluence.rag.ContentFormatterType;
+import io.graversen.starter.spring.confluence.rag.Html2MarkdownContentFormatter;
+import io.graversen.starter.spring.confluence.rag.StorageFormatMarkdownFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FormatterBenchmark {
+    @Param({"SMALL", "MACRO_HEAVY", "LARGE_TABLE"})
+    private ConfluenceCorpus.PageShape shape;
+
+    @Param({"HTML2MARKDOWN", "STORAGE_FORMAT"})
+    private ContentFormatterType formatterType;
+
+    private ConfluenceContentFormatter formatter;
+    private String page;
+
+    @Setup
+    public void setup() {
+        formatter = switch (formatterType) {
+            case HTML2MARKDOWN -> new Html2MarkdownContentFormatter();
+            case STORAGE_FORMAT -> new StorageFormatMarkdownFormatter();
+        };
+        page = ConfluenceCorpus.page(shape, 42);
+    }
+
+    @Benchmark
+    public String formatContent() {
+        return formatter.formatContent(page);
+    }
+}
@@ -0,0 +1,55 @@
+package io.graversen.starter.spring.confluence.rag.benchmarks;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * Deterministic stand-in for a remote embedding model: every word is hashed into a bucket of a fixed-size vector, which
+ * is then L2 normalized. Texts sharing words end up close in cosine distance, which is all retrieval benchmarks need.
+ */
+@RequiredArgsConstructor
+public class HashingEmbeddingModel implements EmbeddingModel {
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private final int dimension;
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        return Response.from(textSegments.stream().map(segment -> Embedding.from(embed(segment.text()))).toList());
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    private float[] embed(String text) {
+        final var vector = new float[dimension];
+        for (final var word : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (word.isEmpty()) {
+                continue;
+            }
+            final var hash = word.hashCode();
+            vector[Math.floorMod(hash, dimension)] += (hash & 1) == 0 ? 1f : -1f;
+        }
+
+        var norm = 0.0;
+        for (final var value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            final var scale = (float) (1 / Math.sqrt(norm));
+            for (var i = 0; i < dimension; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+}
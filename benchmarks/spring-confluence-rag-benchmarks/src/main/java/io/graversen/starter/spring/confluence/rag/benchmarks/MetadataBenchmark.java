@@ -0,0 +1,56 @@
+package io.graversen.starter.spring.confluence.rag.benchmarks;
+
+import dev.langchain4j.data.document.Metadata;
+import io.graversen.starter.spring.confluence.rag.ConfluenceCitationsExtractor;
+import io.graversen.starter.spring.confluence.rag.ConfluenceDtos;
+import io.graversen.starter.spring.confluence.rag.ConfluenceMetadataExtractor;
+import io.graversen.starter.spring.confluence.rag.ConfluenceProperties;
+import io.graversen.starter.spring.confluence.rag.ContentHashes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetadataBenchmark {
+    @Param({"SMALL", "MACRO_HEAVY"})
+    private ConfluenceCorpus.PageShape shape;
+
+    private ConfluenceMetadataExtractor metadataExtractor;
+    private ConfluenceDtos.PageResponse page;
+
+    @Setup
+    public void setup() {
+        final var confluenceProperties = new ConfluenceProperties();
+        confluenceProperties.setBaseUrl("https://confluence.example.com");
+        confluenceProperties.setSpaces(List.of("OPS"));
+
+        metadataExtractor = new ConfluenceCitationsExtractor(confluenceProperties);
+        page = ConfluenceCorpus.pageResponse(shape, 42);
+    }
+
+    @Benchmark
+    public Metadata extractMetadata() {
+        return Metadata.from(metadataExtractor.extractMetadata(page));
+    }
+
+    @Benchmark
+    public String contentHash() {
+        return ContentHashes.sha256Hex(page.body().storage().value());
+    }
+}
@@ -0,0 +1,83 @@
+package io.graversen.starter.spring.confluence.rag.benchmarks;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+import io.graversen.starter.spring.confluence.rag.Html2MarkdownContentFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RetrievalBenchmark {
+    private static final int QUESTIONS = 64;
+
+    @Param({"200", "2000"})
+    private int pages;
+
+    @Param({"256", "1536"})
+    private int dimension;
+
+    @Param({"5"})
+    private int topK;
+
+    private ContentRetriever retriever;
+    private List<Query> queries;
+    private int nextQuery;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        final var embeddingModel = new HashingEmbeddingModel(dimension);
+        final var embeddingStore = new InMemoryEmbeddingStore<TextSegment>();
+        final var formatter = new Html2MarkdownContentFormatter();
+        final var splitter = DocumentSplitters.recursive(1000, 100);
+
+        final var segments = new ArrayList<TextSegment>();
+        for (var seed = 0; seed < pages; seed++) {
+            final var shape = seed % 4 == 0 ? ConfluenceCorpus.PageShape.MACRO_HEAVY : ConfluenceCorpus.PageShape.SMALL;
+            final var metadata = Metadata.from(Map.of("pageId", Integer.toString(seed), "pageTitle", "Page " + seed));
+            segments.addAll(splitter.split(Document.from(formatter.formatContent(ConfluenceCorpus.page(shape, seed)), metadata)));
+        }
+        embeddingStore.addAll(embeddingModel.embedAll(segments).content(), segments);
+
+        retriever = EmbeddingStoreContentRetriever.builder()
+                .embeddingStore(embeddingStore)
+                .embeddingModel(embeddingModel)
+                .maxResults(topK)
+                .minScore(0.0)
+                .build();
+        queries = IntStream.range(0, QUESTIONS).mapToObj(seed -> Query.from(ConfluenceCorpus.question(seed))).toList();
+    }
+
+    @Benchmark
+    public List<Content> retrieve() {
+        nextQuery = (nextQuery + 1) % QUESTIONS;
+        return retriever.retrieve(queries.get(nextQuery));
+    }
+}
@@ -0,0 +1,65 @@
+package io.graversen.starter.spring.confluence.rag.benchmarks;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import io.graversen.starter.spring.confluence.rag.ConfluenceSectionSplitter;
+import io.graversen.starter.spring.confluence.rag.DocumentSplitterType;
+import io.graversen.starter.spring.confluence.rag.Html2MarkdownContentFormatter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SplitterBenchmark {
+    @Param({"SMALL", "MACRO_HEAVY", "LARGE_TABLE"})
+    private ConfluenceCorpus.PageShape shape;
+
+    @Param({"500", "1000"})
+    private int chunkSize;
+
+    @Param({"0.1"})
+    private double overlapFraction;
+
+    @Param({"RECURSIVE", "SECTIONS"})
+    private DocumentSplitterType splitterType;
+
+    private DocumentSplitter splitter;
+    private Document document;
+
+    @Setup
+    public void setup() {
+        // Same construction as AiRagConfiguration.documentSplitter
+        final var overlap = (int) Math.round(overlapFraction * chunkSize);
+        splitter = switch (splitterType) {
+            case RECURSIVE -> DocumentSplitters.recursive(chunkSize, overlap);
+            case SECTIONS -> new ConfluenceSectionSplitter(chunkSize, overlap);
+        };
+        final var markdown = new Html2MarkdownContentFormatter().formatContent(ConfluenceCorpus.page(shape, 42));
+        document = Document.from(markdown, Metadata.from(Map.of("pageId", "100042", "pageTitle", "Benchmark page")));
+    }
+
+    @Benchmark
+    public List<TextSegment> split() {
+        return splitter.split(document);
+    }
+}
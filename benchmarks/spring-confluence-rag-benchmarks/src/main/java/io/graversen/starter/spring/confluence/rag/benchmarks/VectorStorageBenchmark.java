@@ -0,0 +1,252 @@
+package io.graversen.starter.spring.confluence.rag.benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Measures recall@K and query latency of the reduced-footprint storage options against the embeddings of an existing
+ * vector store table. Each option is materialized into a scratch table next to the source table and indexed with
+ * HNSW; the queries are stored embeddings sampled from the source table, and the ground truth is an exact scan over
+ * the full-precision vectors. Truncated options keep the leading dimensions and renormalize, which is what the
+ * embeddings API returns for text-embedding-3 models when asked for fewer dimensions.
+ *
+ * <pre>
+ * java -cp benchmarks.jar io.graversen.starter.spring.confluence.rag.benchmarks.VectorStorageBenchmark \
+ *     jdbc:postgresql://localhost:5432/confluence username password [table] [queries] [top-k] [rescore-candidates]
+ * </pre>
+ */
+public class VectorStorageBenchmark {
+    private static final int HNSW_EF_SEARCH = 40;
+
+    public static void main(String[] args) throws SQLException {
+        if (args.length < 3) {
+            System.err.println("Usage: VectorStorageBenchmark <jdbc-url> <username> <password> [table] [queries] [top-k] [rescore-candidates]");
+            System.exit(2);
+        }
+
+        final var table = args.length > 3 ? args[3] : "confluence_vector_store";
+        final var queryCount = args.length > 4 ? Integer.parseInt(args[4]) : 100;
+        final var topK = args.length > 5 ? Integer.parseInt(args[5]) : 5;
+        final var rescoreCandidates = args.length > 6 ? Integer.parseInt(args[6]) : 100;
+
+        try (final var connection = DriverManager.getConnection(args[0], args[1], args[2])) {
+            final var dimension = dimension(connection, table);
+            final var queries = sampleQueries(connection, table, queryCount);
+            final var groundTruth = groundTruth(connection, table, queries, topK);
+            System.out.printf("%d queries against '%s' (%d dimensions), recall@%d%n%n", queries.size(), table, dimension, topK);
+            System.out.printf("%-28s %10s %10s %10s %10s %12s%n", "Storage", "Recall", "Mean ms", "p50 ms", "p95 ms", "Size MB");
+
+            for (final var option : options(dimension, rescoreCandidates)) {
+                try {
+                    final var result = run(connection, table, option, queries, groundTruth, topK);
+                    System.out.printf(
+                            "%-28s %9.2f%% %10.2f %10.2f %10.2f %12.1f%n",
+                            option.name(), result.recall() * 100, result.meanMillis(), result.p50Millis(), result.p95Millis(),
+                            result.bytes() / (1024.0 * 1024.0)
+                    );
+                } catch (SQLException e) {
+                    // pgvector cannot index every type at every dimension, e.g. HNSW on vector stops at 2,000
+                    System.out.printf("%-28s %s%n", option.name(), e.getMessage().lines().findFirst().orElse("failed"));
+                }
+            }
+        }
+    }
+
+    private static List<StorageOption> options(int dimension, int rescoreCandidates) {
+        final var options = new ArrayList<StorageOption>();
+        options.add(StorageOption.exact("vector(%d)".formatted(dimension), "vector", dimension, "embedding"));
+        options.add(StorageOption.exact("halfvec(%d)".formatted(dimension), "halfvec", dimension, "embedding::halfvec(%d)".formatted(dimension)));
+        options.add(StorageOption.binary("vector(%d) + binary".formatted(dimension), "vector", dimension, "embedding", rescoreCandidates));
+        options.add(StorageOption.binary("halfvec(%d) + binary".formatted(dimension), "halfvec", dimension, "embedding::halfvec(%d)".formatted(dimension), rescoreCandidates));
+        for (var truncated = dimension / 2; truncated >= Math.max(dimension / 8, 64); truncated /= 2) {
+            final var expression = "l2_normalize(subvector(embedding, 1, %d))".formatted(truncated);
+            options.add(StorageOption.exact("vector(%d) truncated".formatted(truncated), "vector", truncated, expression));
+            options.add(StorageOption.exact("halfvec(%d) truncated".formatted(truncated), "halfvec", truncated, expression + "::halfvec(%d)".formatted(truncated)));
+        }
+        return options;
+    }
+
+    private static Result run(
+            Connection connection,
+            String table,
+            StorageOption option,
+            List<Query> queries,
+            List<Set<String>> groundTruth,
+            int topK
+    ) throws SQLException {
+        final var scratchTable = table + "_storage_benchmark";
+        try (final var statement = connection.createStatement()) {
+            statement.execute("DROP TABLE IF EXISTS " + scratchTable);
+            statement.execute("CREATE UNLOGGED TABLE %s AS SELECT embedding_id, (%s)::%s(%d) AS embedding FROM %s"
+                    .formatted(scratchTable, option.expression(), option.type(), option.dimension(), table));
+            statement.execute("SET maintenance_work_mem = '1GB'");
+            statement.execute("CREATE INDEX ON %s USING hnsw (%s)".formatted(scratchTable, option.indexedExpression()));
+            statement.execute("ANALYZE " + scratchTable);
+            statement.execute("SET hnsw.ef_search = %d".formatted(Math.max(HNSW_EF_SEARCH, option.rescoreCandidates())));
+        }
+
+        try {
+            final var latencies = new long[queries.size()];
+            var recall = 0.0;
+            try (final var search = connection.prepareStatement(option.query(scratchTable))) {
+                // One unmeasured pass warms the index pages into shared buffers, as they would be in production
+                for (var pass = 0; pass < 2; pass++) {
+                    recall = 0.0;
+                    for (var i = 0; i < queries.size(); i++) {
+                        final var query = queries.get(i);
+                        var parameter = 1;
+                        search.setString(parameter++, query.embeddingId());
+                        if (option.rescoreCandidates() > 0) {
+                            search.setString(parameter++, query.vector());
+                            search.setInt(parameter++, option.rescoreCandidates());
+                        }
+                        search.setString(parameter++, query.vector());
+                        search.setInt(parameter, topK);
+
+                        final var found = new HashSet<String>();
+                        final var startedAt = System.nanoTime();
+                        try (final var resultSet = search.executeQuery()) {
+                            while (resultSet.next()) {
+                                found.add(resultSet.getString(1));
+                            }
+                        }
+                        latencies[i] = System.nanoTime() - startedAt;
+
+                        found.retainAll(groundTruth.get(i));
+                        recall += groundTruth.get(i).isEmpty() ? 1.0 : (double) found.size() / groundTruth.get(i).size();
+                    }
+                }
+            }
+
+            final long bytes;
+            try (final var statement = connection.createStatement();
+                 final var resultSet = statement.executeQuery("SELECT pg_total_relation_size('%s')".formatted(scratchTable))) {
+                resultSet.next();
+                bytes = resultSet.getLong(1);
+            }
+
+            Arrays.sort(latencies);
+            return new Result(
+                    recall / queries.size(),
+                    Arrays.stream(latencies).average().orElse(0) / 1_000_000.0,
+                    latencies[latencies.length / 2] / 1_000_000.0,
+                    latencies[(int) Math.min(latencies.length - 1, Math.ceil(latencies.length * 0.95) - 1)] / 1_000_000.0,
+                    bytes
+            );
+        } finally {
+            try (final var statement = connection.createStatement()) {
+                statement.execute("DROP TABLE IF EXISTS " + scratchTable);
+                statement.execute("RESET hnsw.ef_search");
+                statement.execute("RESET maintenance_work_mem");
+            }
+        }
+    }
+
+    private static int dimension(Connection connection, String table) throws SQLException {
+        try (final var statement = connection.createStatement();
+             final var resultSet = statement.executeQuery("SELECT vector_dims(embedding::vector) FROM %s LIMIT 1".formatted(table))) {
+            if (!resultSet.next()) {
+                throw new IllegalStateException("Table '%s' has no embeddings".formatted(table));
+            }
+            return resultSet.getInt(1);
+        }
+    }
+
+    private static List<Query> sampleQueries(Connection connection, String table, int queryCount) throws SQLException {
+        final var queries = new ArrayList<Query>();
+        try (final var statement = connection.createStatement()) {
+            // A fixed seed samples the same queries on every run, so results of separate runs can be compared
+            statement.execute("SELECT setseed(0.42)");
+            try (final var resultSet = statement.executeQuery(
+                    "SELECT embedding_id, embedding::vector::text FROM %s ORDER BY random() LIMIT %d".formatted(table, queryCount))) {
+                while (resultSet.next()) {
+                    queries.add(new Query(resultSet.getString(1), resultSet.getString(2)));
+                }
+            }
+        }
+        return queries;
+    }
+
+    private static List<Set<String>> groundTruth(Connection connection, String table, List<Query> queries, int topK) throws SQLException {
+        final var groundTruth = new ArrayList<Set<String>>();
+        try (final var statement = connection.createStatement()) {
+            // Without index scans the planner has to compute the exact distance to every stored vector
+            statement.execute("SET enable_indexscan = off");
+            statement.execute("SET enable_bitmapscan = off");
+        }
+
+        try (final var search = connection.prepareStatement(
+                "SELECT embedding_id FROM %s WHERE embedding_id::text <> ? ORDER BY embedding::vector <=> ?::vector LIMIT ?".formatted(table))) {
+            for (final var query : queries) {
+                search.setString(1, query.embeddingId());
+                search.setString(2, query.vector());
+                search.setInt(3, topK);
+                final var nearest = new HashSet<String>();
+                try (final var resultSet = search.executeQuery()) {
+                    while (resultSet.next()) {
+                        nearest.add(resultSet.getString(1));
+                    }
+                }
+                groundTruth.add(nearest);
+            }
+        } finally {
+            try (final var statement = connection.createStatement()) {
+                statement.execute("RESET enable_indexscan");
+                statement.execute("RESET enable_bitmapscan");
+            }
+        }
+        return groundTruth;
+    }
+
+    private record Query(String embeddingId, String vector) {
+    }
+
+    private record StorageOption(String name, String type, int dimension, String expression, int rescoreCandidates) {
+        private static StorageOption exact(String name, String type, int dimension, String expression) {
+            return new StorageOption(name, type, dimension, expression, 0);
+        }
+
+        private static StorageOption binary(String name, String type, int dimension, String expression, int rescoreCandidates) {
+            return new StorageOption(name, type, dimension, expression, rescoreCandidates);
+        }
+
+        private String indexedExpression() {
+            return rescoreCandidates > 0
+                    ? "(binary_quantize(embedding)::bit(%d)) bit_hamming_ops".formatted(dimension)
+                    : "embedding %s_cosine_ops".formatted(type);
+        }
+
+        private String queryVector() {
+            // The query is truncated the same way as the stored vectors; the cast checks the dimensions match
+            return expression.startsWith("l2_normalize")
+                    ? "l2_normalize(subvector(?::vector, 1, %d))::%s(%d)".formatted(dimension, type, dimension)
+                    : "?::vector::%s(%d)".formatted(type, dimension);
+        }
+
+        private String query(String scratchTable) {
+            if (rescoreCandidates == 0) {
+                return "SELECT embedding_id FROM %s WHERE embedding_id::text <> ? ORDER BY embedding <=> %s LIMIT ?"
+                        .formatted(scratchTable, queryVector());
+            }
+            return """
+                    SELECT embedding_id FROM (
+                        SELECT embedding_id, embedding FROM %1$s
+                        WHERE embedding_id::text <> ?
+                        ORDER BY binary_quantize(embedding)::bit(%2$d) <~> binary_quantize(?::vector)
+                        LIMIT ?
+                    ) candidates
+                    ORDER BY embedding <=> %3$s
+                    LIMIT ?
+                    """.formatted(scratchTable, dimension, queryVector());
+        }
+    }
+
+    private record Result(double recall, double meanMillis, double p50Millis, double p95Millis, long bytes) {
+    }
+}
@@ -1,27 +1,43 @@
 package io.graversen.starter.spring.confluence.rag;
 
-import dev.langchain4j.chain.ConversationalRetrievalChain;
 import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.data.document.splitter.DocumentSplitters;
-import dev.langchain4j.data.message.SystemMessage;
-import dev.langchain4j.memory.chat.TokenWindowChatMemory;
 import dev.langchain4j.model.embedding.EmbeddingModel;
 import dev.langchain4j.model.openai.*;
+import dev.langchain4j.model.scoring.ScoringModel;
 import dev.langchain4j.rag.DefaultRetrievalAugmentor;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.injector.ContentInjector;
 import dev.langchain4j.rag.content.injector.DefaultContentInjector;
 import dev.langchain4j.rag.content.retriever.ContentRetriever;
 import dev.langchain4j.rag.content.retriever.EmbeddingStoreContentRetriever;
 import dev.langchain4j.rag.query.router.DefaultQueryRouter;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import dev.langchain4j.store.embedding.EmbeddingStore;
 import dev.langchain4j.store.embedding.pgvector.PgVectorEmbeddingStore;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
 import lombok.extern.slf4j.Slf4j;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.util.ClassUtils;
 
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+
 @Slf4j
 @Configuration
 public class AiRagConfiguration {
@@ -30,26 +46,84 @@ public class AiRagConfiguration {
     public ConfluenceIngestor confluenceIngestor(
             SpringConfluenceRagProperties springConfluenceRagProperties,
             ConfluenceApi confluenceApi,
-            EmbeddingStoreIngestor embeddingStoreIngestor,
+            ConfluenceSpaceCrawler spaceCrawler,
+            EmbeddingModel embeddingModel,
+            ObjectProvider<CachingEmbeddingModel> ingestionEmbeddingModel,
+            OpenAiEmbeddingModelName embeddingModelName,
+            PgVectorEmbeddingStore embeddingStore,
+            ObjectProvider<SpacePartitionManager> spacePartitionManager,
+            ConfluenceRagDataSource confluenceRagDataSource,
+            DocumentSplitter documentSplitter,
+            ConfluencePageStateStore pageStateStore,
             ConfluenceContentFormatter contentFormatter,
-            ConfluenceMetadataExtractor metadataExtractor
+            ConfluenceMetadataExtractor metadataExtractor,
+            ObjectProvider<ConfluenceIngestionListener> ingestionListeners,
+            ObjectProvider<ConfluenceAttachmentTextExtractor> attachmentTextExtractor,
+            ConfluenceRagObservability observability,
+            PostgresIngestionLock ingestionLock
     ) {
+        final var ingestionStore = ingestionStore(embeddingStore, spacePartitionManager, confluenceRagDataSource, springConfluenceRagProperties);
+        final var observedDocumentSplitter = new ObservedDocumentSplitter(documentSplitter, observability);
+        final var textExtractor = springConfluenceRagProperties.getIngestion().getAttachments().getEnabled()
+                ? attachmentTextExtractor.getIfAvailable()
+                : null;
+        final var attachmentIngestor = textExtractor == null
+                ? null
+                : new ConfluenceAttachmentIngestor(
+                        confluenceApi,
+                        textExtractor,
+                        ingestionStore,
+                        observedDocumentSplitter,
+                        pageStateStore,
+                        springConfluenceRagProperties.getConfluence(),
+                        springConfluenceRagProperties.getIngestion(),
+                        observability
+                );
+
+        final EmbeddingModel cachingEmbeddingModel = ingestionEmbeddingModel.getIfAvailable();
         final var confluenceIngestor = new ConfluenceIngestor(
                 confluenceApi,
-                embeddingStoreIngestor,
+                spaceCrawler,
+                cachingEmbeddingModel == null ? backgroundEmbeddingModel(embeddingModel) : cachingEmbeddingModel,
+                ingestionStore,
+                observedDocumentSplitter,
+                splitterConfiguration(documentSplitter, springConfluenceRagProperties.getEmbeddingModel()),
+                new OpenAiTokenCountEstimator(embeddingModelName),
+                pageStateStore,
                 springConfluenceRagProperties.getConfluence(),
-                contentFormatter,
-                metadataExtractor
+                springConfluenceRagProperties.getIngestion(),
+                new ObservedContentFormatter(contentFormatter, observability),
+                metadataExtractor,
+                ingestionListeners.orderedStream().toList(),
+                observability,
+                ingestionLock,
+                attachmentIngestor
         );
-        log.info("✅ Initialized Confluence Ingestor");
+        log.info("✅ Initialized Confluence Ingestor{}", attachmentIngestor == null ? "" : " (including attachments)");
         return confluenceIngestor;
     }
 
     @Bean
     @ConditionalOnMissingBean
-    public ConfluenceContentFormatter contentFormatter() {
-        final var contentFormatter = new Html2MarkdownContentFormatter();
-        log.info("✅ Initialized Content Formatter");
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.ingestion.attachments", name = "enabled", havingValue = "true")
+    public ConfluenceAttachmentTextExtractor attachmentTextExtractor() {
+        final var attachmentTextExtractor = new DefaultAttachmentTextExtractor();
+        if (!ClassUtils.isPresent("org.apache.tika.parser.AutoDetectParser", getClass().getClassLoader())) {
+            log.warn("Apache Tika is not on the classpath, only plain text attachments are ingested");
+        }
+        log.info("✅ Initialized Attachment Text Extractor");
+        return attachmentTextExtractor;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ConfluenceContentFormatter contentFormatter(SpringConfluenceRagProperties springConfluenceRagProperties) {
+        final var contentFormatterType = springConfluenceRagProperties.getIngestion().getContentFormatter();
+        final ConfluenceContentFormatter contentFormatter = switch (contentFormatterType) {
+            case HTML2MARKDOWN -> new Html2MarkdownContentFormatter();
+            case STORAGE_FORMAT -> new StorageFormatMarkdownFormatter();
+        };
+        log.info("✅ Initialized Content Formatter ({})", contentFormatterType);
         return contentFormatter;
     }
 
@@ -88,7 +162,8 @@ public class AiRagConfiguration {
     @Bean
     public OpenAiChatModel chatModel(
             SpringConfluenceRagProperties springConfluenceRagProperties,
-            OpenAiChatModelName chatModelName
+            OpenAiChatModelName chatModelName,
+            ConfluenceRagObservability observability
     ) {
         final var openAiProperties = springConfluenceRagProperties.getOpenAi();
         final var chatModelProperties = springConfluenceRagProperties.getChatModel();
@@ -96,88 +171,385 @@ public class AiRagConfiguration {
                 .apiKey(openAiProperties.getApiKey())
                 .modelName(chatModelName)
                 .temperature(Math.max(chatModelProperties.getTemperature(), 1.25))
+                .listeners(List.of(new ObservedChatModelListener(observability, chatModelName.toString(), false)))
                 .build();
 
         log.info("✅ Initialized OpenAI Chat Model");
         return chatModel;
     }
 
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.embedding-model.retrieval-cache", name = "enabled", havingValue = "true")
+    public RetrievalCache retrievalCache(
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            ConfluenceRagObservability observability
+    ) {
+        final var embeddingProperties = springConfluenceRagProperties.getEmbeddingModel();
+        final var retrievalCache = new RetrievalCache(embeddingProperties.getRetrievalCache(), retrievalCandidates(embeddingProperties));
+        retrievalCache.bindTo(observability.getMeterRegistry());
+
+        log.info("✅ Initialized Retrieval Cache");
+        return retrievalCache;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ConfluenceSpaceFilter spaceFilter(SpringConfluenceRagProperties springConfluenceRagProperties) {
+        final var retrievalSpaces = List.copyOf(springConfluenceRagProperties.getEmbeddingModel().getRetrievalSpaces());
+        log.info("✅ Initialized Space Filter ({})", retrievalSpaces.isEmpty() ? "all spaces" : String.join(", ", retrievalSpaces));
+        return query -> retrievalSpaces;
+    }
+
     @Bean
     public ContentRetriever contentRetriever(
-            PgVectorEmbeddingStore store,
+            @Qualifier("queryEmbeddingStore") PgVectorEmbeddingStore store,
             EmbeddingModel embedder,
-            SpringConfluenceRagProperties springConfluenceRagProperties
+            ConfluenceSpaceFilter spaceFilter,
+            ObjectProvider<RetrievalCache> retrievalCache,
+            ConfluenceRagDataSource confluenceRagDataSource,
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            ConfluenceRagObservability observability
     ) {
         final var embeddingProperties = springConfluenceRagProperties.getEmbeddingModel();
-        final var retriever = EmbeddingStoreContentRetriever.builder()
-                .embeddingStore(store)
-                .embeddingModel(embedder)
-                .maxResults(embeddingProperties.getTopK())
-                .minScore(embeddingProperties.getSimilarityThreshold())
-                .build();
+        final var cache = retrievalCache.getIfAvailable();
+        final var queryEmbedder = cache == null ? embedder : new CachingQueryEmbeddingModel(embedder, cache);
+        final var maxResults = retrievalCandidates(embeddingProperties);
+        final var storageProperties = springConfluenceRagProperties.getDatabase().getStorage();
+        final var reducedStorage = storageProperties.getType() != VectorStorageType.VECTOR || storageProperties.getBinaryQuantization();
+        final var partitioned = storageProperties.getPartitionBySpace();
+        final ContentRetriever retriever = switch (embeddingProperties.getRetrievalMode()) {
+            case VECTOR -> {
+                if (reducedStorage || partitioned) {
+                    yield new PgVectorContentRetriever(
+                            confluenceRagDataSource,
+                            springConfluenceRagProperties.getDatabase(),
+                            queryEmbedder,
+                            spaceFilter,
+                            maxResults,
+                            embeddingProperties.getSimilarityThreshold()
+                    );
+                }
+                yield EmbeddingStoreContentRetriever.builder()
+                        .embeddingStore(store)
+                        .embeddingModel(queryEmbedder)
+                        .maxResults(maxResults)
+                        .minScore(embeddingProperties.getSimilarityThreshold())
+                        .dynamicFilter(query -> {
+                            final var spaceKeys = spaceFilter.spaceKeys(query);
+                            return spaceKeys.isEmpty() ? null : metadataKey("spaceKey").isIn(spaceKeys);
+                        })
+                        .build();
+            }
+            case HYBRID -> {
+                final var hybridRetriever = new HybridContentRetriever(
+                        confluenceRagDataSource,
+                        springConfluenceRagProperties.getDatabase(),
+                        queryEmbedder,
+                        embeddingProperties,
+                        spaceFilter,
+                        maxResults
+                );
+                hybridRetriever.initialize();
+                yield hybridRetriever;
+            }
+        };
 
-        log.info("✅ Initialized Embedding Store Content Retriever");
-        return retriever;
+        log.info("✅ Initialized Content Retriever ({})", embeddingProperties.getRetrievalMode());
+        return new ObservedContentRetriever(cache == null ? retriever : new CachingContentRetriever(retriever, cache, spaceFilter), observability);
     }
 
     @Bean
-    public ConversationalRetrievalChain ragChain(
-            OpenAiChatModel chatModel,
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.embedding-model.reranking", name = "enabled", havingValue = "true")
+    public ScoringModel scoringModel() {
+        log.info("✅ Initialized Lexical Scoring Model");
+        return new LexicalScoringModel();
+    }
+
+    @Bean
+    public RetrievalAugmentor retrievalAugmentor(
             ContentRetriever retriever,
+            ObjectProvider<ScoringModel> scoringModel,
             OpenAiChatModelName chatModelName,
-            SpringConfluenceRagProperties springConfluenceRagProperties
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            ConfluenceRagObservability observability
     ) {
         final var chatModelProperties = springConfluenceRagProperties.getChatModel();
-        final var memory = TokenWindowChatMemory.withMaxTokens(chatModelProperties.getMemoryTokens(), new OpenAiTokenCountEstimator(chatModelName));
-        memory.add(new SystemMessage(chatModelProperties.getSystemPrompt()));
-
+        final var embeddingProperties = springConfluenceRagProperties.getEmbeddingModel();
+        final var contextInjection = chatModelProperties.getContextInjection();
         final var queryRouter = new DefaultQueryRouter(retriever);
 
-        final var contentInjector = DefaultContentInjector.builder()
-                .metadataKeysToInclude(List.copyOf(chatModelProperties.getMetaDataKeys()))
-                .build();
+        final ContentInjector contentInjector = contextInjection.getGroupByPage()
+                ? new PageGroupingContentInjector(
+                        chatModelProperties.getMetaDataKeys(),
+                        new OpenAiTokenCountEstimator(chatModelName),
+                        contextInjection.getTokenBudget(),
+                        observability
+                )
+                : DefaultContentInjector.builder()
+                        .metadataKeysToInclude(List.copyOf(chatModelProperties.getMetaDataKeys()))
+                        .build();
 
-        final var retrievalAugmentor = DefaultRetrievalAugmentor.builder()
+        final var retrievalAugmentorBuilder = DefaultRetrievalAugmentor.builder()
                 .queryRouter(queryRouter)
-                .contentInjector(contentInjector)
-                .build();
+                .contentInjector(contentInjector);
 
-        final var chain = ConversationalRetrievalChain.builder()
-                .chatModel(chatModel)
-                .chatMemory(memory)
-                .retrievalAugmentor(retrievalAugmentor)
-                .build();
+        final var reranker = scoringModel.getIfAvailable();
+        if (embeddingProperties.getReranking().getEnabled() && reranker != null) {
+            retrievalAugmentorBuilder.contentAggregator(new TokenBudgetReRankingContentAggregator(
+                    reranker,
+                    new OpenAiTokenCountEstimator(chatModelName),
+                    embeddingProperties.getReranking(),
+                    embeddingProperties.getTopK()
+            ));
+        }
+
+        final var retrievalAugmentor = retrievalAugmentorBuilder.build();
 
-        log.info("✅ Initialized Conversational Retrieval Chain");
-        return chain;
+        log.info("✅ Initialized Retrieval Augmentor");
+        return retrievalAugmentor;
     }
 
     @Bean
-    public EmbeddingModel embeddingModel(
+    public OpenAiStreamingChatModel streamingChatModel(
             SpringConfluenceRagProperties springConfluenceRagProperties,
-            OpenAiEmbeddingModelName embeddingModelName
+            OpenAiChatModelName chatModelName,
+            ConfluenceRagObservability observability
     ) {
         final var openAiProperties = springConfluenceRagProperties.getOpenAi();
-
-        final var embeddingModel = OpenAiEmbeddingModel.builder()
+        final var chatModelProperties = springConfluenceRagProperties.getChatModel();
+        final var streamingChatModel = OpenAiStreamingChatModel.builder()
                 .apiKey(openAiProperties.getApiKey())
-                .modelName(embeddingModelName)
-                .dimensions(embeddingModelName.dimension())
+                .modelName(chatModelName)
+                .temperature(Math.max(chatModelProperties.getTemperature(), 1.25))
+                .listeners(List.of(new ObservedChatModelListener(observability, chatModelName.toString(), true)))
                 .build();
 
-        log.info("✅ Initialized OpenAI Embedding Model");
+        log.info("✅ Initialized OpenAI Streaming Chat Model");
+        return streamingChatModel;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.chat-model", name = "persist-conversations", havingValue = "true")
+    public PostgresChatMemoryStore chatMemoryStore(
+            ConfluenceRagDataSource confluenceRagDataSource,
+            SpringConfluenceRagProperties springConfluenceRagProperties
+    ) {
+        final var chatMemoryStore = new PostgresChatMemoryStore(
+                confluenceRagDataSource,
+                springConfluenceRagProperties.getDatabase(),
+                springConfluenceRagProperties.getChatModel().getPersistedConversationRetention()
+        );
+        chatMemoryStore.initialize();
+
+        log.info("✅ Initialized Postgres Chat Memory Store");
+        return chatMemoryStore;
+    }
+
+    @Bean
+    public ConversationChatMemoryProvider chatMemoryProvider(
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            OpenAiChatModelName chatModelName,
+            ObjectProvider<ChatMemoryStore> chatMemoryStore
+    ) {
+        final var chatMemoryProvider = new ConversationChatMemoryProvider(
+                springConfluenceRagProperties.getChatModel(),
+                new OpenAiTokenCountEstimator(chatModelName),
+                chatMemoryStore.getIfAvailable()
+        );
+
+        log.info("✅ Initialized Conversation Chat Memory Provider");
+        return chatMemoryProvider;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.chat-model.answer-cache", name = "enabled", havingValue = "true")
+    public AnswerCache answerCache(
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            EmbeddingModel embeddingModel,
+            ObjectProvider<RetrievalCache> retrievalCache,
+            ConfluenceSpaceFilter spaceFilter,
+            ConfluenceRagDataSource confluenceRagDataSource,
+            ConfluenceRagObservability observability
+    ) {
+        final var answerCacheProperties = springConfluenceRagProperties.getChatModel().getAnswerCache();
+        final var cache = retrievalCache.getIfAvailable();
+        // Shares query embeddings with retrieval, so a question that misses is not embedded twice
+        final var queryEmbedder = cache == null ? embeddingModel : new CachingQueryEmbeddingModel(embeddingModel, cache);
+
+        PostgresAnswerCacheStore answerCacheStore = null;
+        if (answerCacheProperties.getPersist()) {
+            answerCacheStore = new PostgresAnswerCacheStore(
+                    confluenceRagDataSource,
+                    springConfluenceRagProperties.getDatabase(),
+                    embeddingModel.dimension()
+            );
+            answerCacheStore.initialize();
+        }
+
+        final var answerCache = new AnswerCache(answerCacheProperties, queryEmbedder, spaceFilter, answerCacheStore);
+        answerCache.initialize();
+        answerCache.bindTo(observability.getMeterRegistry());
+
+        log.info("✅ Initialized Answer Cache ({})", answerCacheStore == null ? "in memory" : "persisted in Postgres");
+        return answerCache;
+    }
+
+    @Bean
+    public ConfluenceRagAssistant ragAssistant(
+            OpenAiChatModel chatModel,
+            RetrievalAugmentor retrievalAugmentor,
+            ConversationChatMemoryProvider chatMemoryProvider,
+            ObjectProvider<AnswerCache> answerCache
+    ) {
+        final var ragAssistant = new ConfluenceRagAssistant(chatModel, retrievalAugmentor, chatMemoryProvider, answerCache.getIfAvailable());
+
+        log.info("✅ Initialized Confluence RAG Assistant");
+        return ragAssistant;
+    }
+
+    @Bean
+    public StreamingConfluenceRagChain streamingRagChain(
+            OpenAiStreamingChatModel streamingChatModel,
+            RetrievalAugmentor retrievalAugmentor,
+            ConversationChatMemoryProvider chatMemoryProvider,
+            SpringConfluenceRagProperties springConfluenceRagProperties
+    ) {
+        final var streamingRagChain = new StreamingConfluenceRagChain(
+                streamingChatModel,
+                retrievalAugmentor,
+                chatMemoryProvider,
+                springConfluenceRagProperties.getChatModel()
+        );
+
+        log.info("✅ Initialized Streaming Confluence RAG Chain");
+        return streamingRagChain;
+    }
+
+    @Bean
+    @Primary
+    public EmbeddingModel embeddingModel(
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            OpenAiEmbeddingModelName embeddingModelName,
+            ConfluenceRagObservability observability
+    ) {
+        final var embeddingProperties = springConfluenceRagProperties.getEmbeddingModel();
+
+        final String modelName;
+        final EmbeddingModel embeddingModel;
+        switch (embeddingProperties.getProvider()) {
+            case OPENAI -> {
+                final var openAiEmbeddingModel = OpenAiEmbeddingModel.builder()
+                        .apiKey(springConfluenceRagProperties.getOpenAi().getApiKey())
+                        .modelName(embeddingModelName)
+                        .dimensions(embeddingDimensions(embeddingProperties, embeddingModelName))
+                        .build();
+                modelName = embeddingModelName.toString();
+                embeddingModel = new ObservedEmbeddingModel(openAiEmbeddingModel, observability, modelName);
+                log.info("✅ Initialized OpenAI Embedding Model");
+            }
+            case ONNX -> {
+                if (!ClassUtils.isPresent("ai.onnxruntime.OrtSession", getClass().getClassLoader())
+                        || !ClassUtils.isPresent("ai.djl.huggingface.tokenizers.HuggingFaceTokenizer", getClass().getClassLoader())) {
+                    throw new IllegalStateException("The ONNX embedding model requires com.microsoft.onnxruntime:onnxruntime and ai.djl.huggingface:tokenizers");
+                }
+
+                final var onnxProperties = embeddingProperties.getOnnx();
+                final var onnxEmbeddingModel = new OnnxEmbeddingModel(onnxProperties);
+                if (embeddingProperties.getDimensions() != null && embeddingProperties.getDimensions() != onnxEmbeddingModel.dimension()) {
+                    throw new IllegalArgumentException("%s does not support %d dimensions".formatted(onnxEmbeddingModel.modelName(), embeddingProperties.getDimensions()));
+                }
+
+                modelName = onnxEmbeddingModel.modelName();
+                // Observed inside the batching so metrics report the actual inferences and their token counts
+                embeddingModel = new BatchingEmbeddingModel(
+                        new ObservedEmbeddingModel(onnxEmbeddingModel, observability, modelName),
+                        onnxProperties.getMaxBatchSize(),
+                        onnxProperties.getBatchWait()
+                );
+                log.info("✅ Initialized ONNX Embedding Model ({}, {} dimensions)", modelName, embeddingModel.dimension());
+            }
+            default -> throw new IllegalStateException();
+        }
+
         return embeddingModel;
     }
 
     @Bean
-    public PgVectorEmbeddingStore embeddingStore(SpringConfluenceRagProperties springConfluenceRagProperties, EmbeddingModel embeddingModel) {
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.embedding-model.cache", name = "enabled", havingValue = "true")
+    public CachingEmbeddingModel ingestionEmbeddingModel(
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            OpenAiEmbeddingModelName embeddingModelName,
+            EmbeddingModel embeddingModel,
+            ConfluenceRagDataSource confluenceRagDataSource,
+            ConfluenceRagObservability observability
+    ) {
+        // Only ingested chunks are cached; questions are embedded by the undecorated model, so they are never written to
+        // the cache files or table
+        final var embeddingProperties = springConfluenceRagProperties.getEmbeddingModel();
+        final var cacheProperties = embeddingProperties.getCache();
+        if (cacheProperties.getDirectory() == null || cacheProperties.getDirectory().isBlank()) {
+            throw new IllegalStateException("The embedding cache requires ai.spring.confluence.rag.embedding-model.cache.directory");
+        }
+
+        final var modelName = switch (embeddingProperties.getProvider()) {
+            case OPENAI -> embeddingModelName.toString();
+            case ONNX -> OnnxEmbeddingModel.modelName(Path.of(embeddingProperties.getOnnx().getModelPath()));
+        };
+
+        final var cacheTiers = new ArrayList<EmbeddingCache>();
+        cacheTiers.add(new MappedFileEmbeddingCache(Path.of(cacheProperties.getDirectory()), modelName, embeddingModel.dimension()));
+
+        if (cacheProperties.getPostgres()) {
+            final var postgresCache = new PostgresEmbeddingCache(
+                    confluenceRagDataSource,
+                    springConfluenceRagProperties.getDatabase(),
+                    modelName,
+                    embeddingModel.dimension()
+            );
+            postgresCache.initialize();
+            cacheTiers.add(postgresCache);
+        }
+
+        final var cachingEmbeddingModel = new CachingEmbeddingModel(backgroundEmbeddingModel(embeddingModel), cacheTiers);
+        cachingEmbeddingModel.bindTo(observability.getMeterRegistry());
+
+        log.info("✅ Initialized Embedding Cache ({} tiers)", cacheTiers.size());
+        return cachingEmbeddingModel;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.database.storage", name = "partition-by-space", havingValue = "true")
+    public SpacePartitionManager spacePartitionManager(
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            ConfluenceRagDataSource confluenceRagDataSource,
+            EmbeddingModel embeddingModel
+    ) {
+        final var spacePartitionManager = new SpacePartitionManager(
+                confluenceRagDataSource,
+                springConfluenceRagProperties.getDatabase(),
+                embeddingModel.dimension()
+        );
+        spacePartitionManager.initialize();
+
+        log.info("✅ Initialized Space Partition Manager");
+        return spacePartitionManager;
+    }
+
+    @Bean
+    @Primary
+    public PgVectorEmbeddingStore embeddingStore(
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            ConfluenceRagDataSource confluenceRagDataSource,
+            ObjectProvider<SpacePartitionManager> spacePartitionManager,
+            EmbeddingModel embeddingModel
+    ) {
+        // The partitioned table has to exist before the store would create a regular one
+        spacePartitionManager.getIfAvailable();
+
         final var databaseProperties = springConfluenceRagProperties.getDatabase();
-        final var embeddingStore = PgVectorEmbeddingStore.builder()
-                .host(databaseProperties.getHostname())
-                .port(databaseProperties.getPort())
-                .database(databaseProperties.getDatabase())
-                .user(databaseProperties.getUsername())
-                .password(databaseProperties.getPassword())
+        final var embeddingStore = PgVectorEmbeddingStore.datasourceBuilder()
+                .datasource(confluenceRagDataSource.getDataSource())
                 .table(databaseProperties.getTable())
                 .dimension(embeddingModel.dimension())
                 .createTable(true)
@@ -188,6 +560,185 @@ public class AiRagConfiguration {
         return embeddingStore;
     }
 
+    @Bean
+    public PgVectorEmbeddingStore queryEmbeddingStore(
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            ConfluenceRagDataSource confluenceRagDataSource,
+            PgVectorEmbeddingStore embeddingStore,
+            EmbeddingModel embeddingModel
+    ) {
+        if (!confluenceRagDataSource.hasSeparateQueryDataSource()) {
+            return embeddingStore;
+        }
+
+        final var databaseProperties = springConfluenceRagProperties.getDatabase();
+        final var queryEmbeddingStore = PgVectorEmbeddingStore.datasourceBuilder()
+                .datasource(confluenceRagDataSource.getQueryDataSource())
+                .table(databaseProperties.getTable())
+                .dimension(embeddingModel.dimension())
+                .createTable(false)
+                .dropTableFirst(false)
+                .build();
+
+        log.info("✅ Initialized PgVector Query Embedding Store");
+        return queryEmbeddingStore;
+    }
+
+    @Bean
+    public PgVectorIndexManager vectorIndexManager(
+            ConfluenceRagDataSource confluenceRagDataSource,
+            PgVectorEmbeddingStore embeddingStore,
+            ObjectProvider<SpacePartitionManager> spacePartitionManager,
+            EmbeddingModel embeddingModel,
+            SpringConfluenceRagProperties springConfluenceRagProperties
+    ) {
+        final var databaseProperties = springConfluenceRagProperties.getDatabase();
+        final var vectorIndexManager = new PgVectorIndexManager(
+                confluenceRagDataSource,
+                databaseProperties,
+                embeddingModel.dimension(),
+                spacePartitionManager.getIfAvailable()
+        );
+        vectorIndexManager.initialize();
+
+        log.info(
+                "✅ Initialized PgVector Index Manager ({}, {}{}{})",
+                databaseProperties.getIndex().getType(),
+                databaseProperties.getStorage().getType(),
+                databaseProperties.getStorage().getBinaryQuantization() ? " with binary quantization" : "",
+                databaseProperties.getStorage().getPartitionBySpace() ? ", partitioned by space" : ""
+        );
+        return vectorIndexManager;
+    }
+
+    @Bean
+    public ConfluenceRagDataSource confluenceRagDataSource(
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        final var databaseProperties = springConfluenceRagProperties.getDatabase();
+        final var poolProperties = databaseProperties.getPool();
+        final var dataSource = hikariDataSource("confluence-rag", poolProperties.getMaximumPoolSize(), databaseProperties, meterRegistry);
+
+        if (!poolProperties.getSeparateQueryPool()) {
+            log.info("✅ Initialized Confluence RAG Data Source");
+            return new ConfluenceRagDataSource(dataSource);
+        }
+
+        final var queryDataSource = hikariDataSource("confluence-rag-query", poolProperties.getQueryMaximumPoolSize(), databaseProperties, meterRegistry);
+        log.info("✅ Initialized Confluence RAG Data Sources (separate ingestion and query pools)");
+        return new ConfluenceRagDataSource(dataSource, queryDataSource);
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    public ConfluencePageStateStore pageStateStore(
+            ConfluenceRagDataSource confluenceRagDataSource,
+            PgVectorEmbeddingStore embeddingStore,
+            SpringConfluenceRagProperties springConfluenceRagProperties
+    ) {
+        final var pageStateStore = new PostgresPageStateStore(confluenceRagDataSource, springConfluenceRagProperties.getDatabase());
+        pageStateStore.initialize();
+
+        log.info("✅ Initialized Postgres Page State Store");
+        return pageStateStore;
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.ingestion.sync", name = "enabled", havingValue = "true")
+    public ConfluenceSyncCheckpointStore syncCheckpointStore(
+            ConfluenceRagDataSource confluenceRagDataSource,
+            SpringConfluenceRagProperties springConfluenceRagProperties
+    ) {
+        final var checkpointStore = new PostgresSyncCheckpointStore(confluenceRagDataSource, springConfluenceRagProperties.getDatabase());
+        checkpointStore.initialize();
+
+        log.info("✅ Initialized Postgres Sync Checkpoint Store");
+        return checkpointStore;
+    }
+
+    @Bean
+    public PostgresIngestionLock ingestionLock(
+            ConfluenceRagDataSource confluenceRagDataSource,
+            SpringConfluenceRagProperties springConfluenceRagProperties
+    ) {
+        log.info("✅ Initialized Postgres Ingestion Lock");
+        return new PostgresIngestionLock(confluenceRagDataSource, springConfluenceRagProperties.getDatabase());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.ingestion.sync", name = "enabled", havingValue = "true")
+    public ConfluenceChangeFeed confluenceChangeFeed(
+            ConfluenceIngestor confluenceIngestor,
+            ConfluenceSpaceCrawler spaceCrawler,
+            ConfluencePageStateStore pageStateStore,
+            ConfluenceSyncCheckpointStore syncCheckpointStore,
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            ConfluenceRagObservability observability,
+            PostgresIngestionLock ingestionLock
+    ) {
+        final var changeFeed = new ConfluenceChangeFeed(
+                confluenceIngestor,
+                spaceCrawler,
+                pageStateStore,
+                syncCheckpointStore,
+                springConfluenceRagProperties.getConfluence(),
+                springConfluenceRagProperties.getIngestion(),
+                observability,
+                ingestionLock
+        );
+
+        log.info("✅ Initialized Confluence Change Feed");
+        return changeFeed;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.ingestion.sync", name = "enabled", havingValue = "true")
+    public ConfluenceSyncScheduler confluenceSyncScheduler(
+            ConfluenceChangeFeed confluenceChangeFeed,
+            SpringConfluenceRagProperties springConfluenceRagProperties
+    ) {
+        log.info("✅ Initialized Confluence Sync Scheduler");
+        return new ConfluenceSyncScheduler(confluenceChangeFeed, springConfluenceRagProperties.getIngestion().getSync());
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.ingestion.jobs", name = "enabled", havingValue = "true")
+    public IngestionJobStore ingestionJobStore(
+            ConfluenceRagDataSource confluenceRagDataSource,
+            SpringConfluenceRagProperties springConfluenceRagProperties
+    ) {
+        final var jobStore = new PostgresIngestionJobStore(confluenceRagDataSource, springConfluenceRagProperties.getDatabase());
+        jobStore.initialize();
+
+        log.info("✅ Initialized Postgres Ingestion Job Store");
+        return jobStore;
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.ingestion.jobs", name = "enabled", havingValue = "true")
+    public ConfluenceIngestionJobs confluenceIngestionJobs(
+            ConfluenceIngestor confluenceIngestor,
+            ConfluenceSpaceCrawler spaceCrawler,
+            IngestionJobStore ingestionJobStore,
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            PostgresIngestionLock ingestionLock
+    ) {
+        final var ingestionJobs = new ConfluenceIngestionJobs(
+                confluenceIngestor,
+                spaceCrawler,
+                ingestionJobStore,
+                springConfluenceRagProperties.getConfluence(),
+                springConfluenceRagProperties.getIngestion().getJobs(),
+                ingestionLock
+        );
+
+        log.info("✅ Initialized Confluence Ingestion Jobs");
+        return ingestionJobs;
+    }
+
     @Bean
     public DocumentSplitter documentSplitter(SpringConfluenceRagProperties springConfluenceRagProperties) {
         final var embeddingProperties = springConfluenceRagProperties.getEmbeddingModel();
@@ -195,25 +746,103 @@ public class AiRagConfiguration {
         final var fraction = embeddingProperties.getOverlapFraction();
         final var overlap = (int) Math.round(Math.max(0.0, Math.min(fraction, 1.0)) * chunkSize);
 
-        final var documentSplitter = DocumentSplitters.recursive(chunkSize, overlap);
+        final var documentSplitter = switch (embeddingProperties.getSplitter()) {
+            case RECURSIVE -> DocumentSplitters.recursive(chunkSize, overlap);
+            case SECTIONS -> new ConfluenceSectionSplitter(chunkSize, overlap);
+        };
 
-        log.info("✅ Initialized Document Splitter");
+        log.info("✅ Initialized Document Splitter ({})", embeddingProperties.getSplitter());
         return documentSplitter;
     }
 
-    @Bean
-    public EmbeddingStoreIngestor embeddingStoreIngestor(
-            EmbeddingModel embeddingModel,
+    private static String splitterConfiguration(DocumentSplitter documentSplitter, EmbeddingModelProperties embeddingProperties) {
+        // The class tells custom splitters apart, the properties configure the built-in ones
+        return "%s:%s:%d:%s".formatted(
+                documentSplitter.getClass().getName(),
+                embeddingProperties.getSplitter(),
+                embeddingProperties.getChunkSize(),
+                embeddingProperties.getOverlapFraction()
+        );
+    }
+
+    private static EmbeddingModel backgroundEmbeddingModel(EmbeddingModel embeddingModel) {
+        // Ingestion yields to questions when both share the in-process model
+        return embeddingModel instanceof BatchingEmbeddingModel batchingEmbeddingModel ? batchingEmbeddingModel.background() : embeddingModel;
+    }
+
+    private HikariDataSource hikariDataSource(
+            String poolName,
+            int maximumPoolSize,
+            DatabaseProperties databaseProperties,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        final var poolProperties = databaseProperties.getPool();
+        final var hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName(poolName);
+        hikariConfig.setJdbcUrl("jdbc:postgresql://%s:%d/%s".formatted(
+                databaseProperties.getHostname(),
+                databaseProperties.getPort(),
+                databaseProperties.getDatabase()
+        ));
+        hikariConfig.setUsername(databaseProperties.getUsername());
+        hikariConfig.setPassword(databaseProperties.getPassword());
+        hikariConfig.setMaximumPoolSize(maximumPoolSize);
+        hikariConfig.setMinimumIdle(Math.min(poolProperties.getMinimumIdle(), maximumPoolSize));
+        hikariConfig.setConnectionTimeout(poolProperties.getConnectionTimeout().toMillis());
+        hikariConfig.addDataSourceProperty("options", "-c statement_timeout=%d %s".formatted(
+                poolProperties.getStatementTimeout().toMillis(),
+                PgVectorIndexManager.sessionOptions(databaseProperties)
+        ));
+        meterRegistry.ifAvailable(registry -> hikariConfig.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(registry)));
+
+        return new HikariDataSource(hikariConfig);
+    }
+
+    private static EmbeddingStore<TextSegment> ingestionStore(
             PgVectorEmbeddingStore embeddingStore,
-            DocumentSplitter documentSplitter
+            ObjectProvider<SpacePartitionManager> spacePartitionManager,
+            ConfluenceRagDataSource confluenceRagDataSource,
+            SpringConfluenceRagProperties springConfluenceRagProperties
     ) {
-        final var ingestor = EmbeddingStoreIngestor.builder()
-                .embeddingModel(embeddingModel)
-                .embeddingStore(embeddingStore)
-                .documentSplitter(documentSplitter)
-                .build();
+        // The embedding store's own inserts cannot target a partitioned table
+        final var partitionManager = spacePartitionManager.getIfAvailable();
+        return partitionManager == null
+                ? embeddingStore
+                : new SpacePartitionedEmbeddingStore(embeddingStore, partitionManager, confluenceRagDataSource, springConfluenceRagProperties.getDatabase());
+    }
+
+    private static int embeddingDimensions(EmbeddingModelProperties embeddingProperties, OpenAiEmbeddingModelName embeddingModelName) {
+        final var dimensions = embeddingProperties.getDimensions();
+        if (dimensions == null) {
+            return embeddingModelName.dimension();
+        }
+
+        // text-embedding-3 models are trained so that a prefix of the vector is itself a usable embedding
+        final var truncated = dimensions != embeddingModelName.dimension();
+        if (dimensions < 1 || dimensions > embeddingModelName.dimension()
+                || (truncated && embeddingModelName == OpenAiEmbeddingModelName.TEXT_EMBEDDING_ADA_002)) {
+            throw new IllegalArgumentException("%s does not support %d dimensions".formatted(embeddingModelName, dimensions));
+        }
+        return dimensions;
+    }
+
+    private static int retrievalCandidates(EmbeddingModelProperties embeddingProperties) {
+        // The reranker can only promote what retrieval returned, so it is handed a wider candidate set than top-k
+        final var reranking = embeddingProperties.getReranking();
+        return reranking.getEnabled()
+                ? Math.max(reranking.getCandidates(), embeddingProperties.getTopK())
+                : embeddingProperties.getTopK();
+    }
 
-        log.info("✅ Initialized Embedding Store Ingestor");
-        return ingestor;
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.annotation.Endpoint")
+    @ConditionalOnProperty(prefix = "ai.spring.confluence.rag.ingestion.jobs", name = "enabled", havingValue = "true")
+    static class IngestionJobEndpointConfiguration {
+        @Bean
+        @ConditionalOnMissingBean
+        public IngestionJobEndpoint ingestionJobEndpoint(ConfluenceIngestionJobs confluenceIngestionJobs) {
+            log.info("✅ Initialized Confluence Ingestion Endpoint");
+            return new IngestionJobEndpoint(confluenceIngestionJobs);
+        }
     }
 }
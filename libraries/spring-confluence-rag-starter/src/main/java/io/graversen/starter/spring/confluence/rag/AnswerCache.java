@@ -0,0 +1,365 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.query.Query;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Answers near-duplicate questions with an earlier answer. A question matches when the cosine similarity of its
+ * embedding to an answered question's reaches the threshold, within the same set of retrieval spaces. The most recent
+ * answers are held as one contiguous matrix of normalized vectors, so a lookup is a single exact scan; at the default
+ * thousand entries that takes well under a millisecond, less than an approximate index would need to pay off. Answers
+ * are dropped when a page they cite is ingested again, and are persisted so they survive restarts. While a question is
+ * being answered, near-duplicates of it wait for that answer instead of generating their own.
+ */
+@Slf4j
+public class AnswerCache implements ConfluenceIngestionListener, MeterBinder {
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final EmbeddingModel embeddingModel;
+    private final ConfluenceSpaceFilter spaceFilter;
+    private final AnswerCacheStore answerCacheStore;
+    private final double similarityThreshold;
+    private final Duration timeToLive;
+    private final int dimension;
+    private final float[] vectors;
+    private final CachedAnswer[] entries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bypasses = new LongAdder();
+    private final LongAdder evictionsByIngestion = new LongAdder();
+    private final List<PendingAnswer> pendingAnswers = new ArrayList<>();
+    // Advanced by every ingestion event, before its evictions, so an answer generated across one is never cached
+    private final AtomicLong generation = new AtomicLong();
+    private int nextSlot;
+
+    public AnswerCache(
+            @NonNull AnswerCacheProperties answerCacheProperties,
+            @NonNull EmbeddingModel embeddingModel,
+            @NonNull ConfluenceSpaceFilter spaceFilter,
+            AnswerCacheStore answerCacheStore
+    ) {
+        this.embeddingModel = embeddingModel;
+        this.spaceFilter = spaceFilter;
+        this.answerCacheStore = answerCacheStore;
+        this.similarityThreshold = answerCacheProperties.getSimilarityThreshold();
+        this.timeToLive = answerCacheProperties.getTimeToLive();
+        this.dimension = embeddingModel.dimension();
+        this.vectors = new float[answerCacheProperties.getMaxEntries() * dimension];
+        this.entries = new CachedAnswer[answerCacheProperties.getMaxEntries()];
+    }
+
+    public void initialize() {
+        if (answerCacheStore == null) {
+            return;
+        }
+
+        final var createdAfter = Instant.now().minus(timeToLive);
+        answerCacheStore.prune(createdAfter, entries.length);
+        final var recent = answerCacheStore.findRecent(createdAfter, entries.length);
+        // Loaded oldest first, so the oldest answers are also the first to be replaced
+        recent.reversed().forEach(this::insert);
+        log.debug("Loaded {} cached answers", recent.size());
+    }
+
+    public Key key(@NonNull Query query) {
+        final var spaceKeys = spaceFilter.spaceKeys(query).stream().sorted().toList();
+        final var embedding = embeddingModel.embed(query.text()).content().vector();
+        return new Key(query.text(), String.join(",", spaceKeys), normalized(embedding));
+    }
+
+    /**
+     * Answers from the cache, or with {@code generator} and caches the result. Concurrent near-duplicate questions in
+     * the same scope share one generation.
+     */
+    public ConfluenceRagAnswer answer(@NonNull Key key, @NonNull Supplier<ConfluenceRagAnswer> generator) {
+        final var cachedAnswer = find(key);
+        if (cachedAnswer.isPresent()) {
+            return cachedAnswer.get().toAnswer();
+        }
+
+        final var ownAnswer = new PendingAnswer(key, new CompletableFuture<>());
+        final Optional<PendingAnswer> inFlight;
+        synchronized (pendingAnswers) {
+            inFlight = pendingAnswers.stream()
+                    .filter(pending -> pending.key().scope().equals(key.scope()))
+                    .filter(pending -> dot(pending.key().embedding(), key.embedding()) >= similarityThreshold)
+                    .findFirst();
+            if (inFlight.isEmpty()) {
+                // Pending answers are cached before they stop being pending, so one that just finished is found here
+                final var justCached = lookup(key);
+                if (justCached.isPresent()) {
+                    return justCached.get().toAnswer();
+                }
+                pendingAnswers.add(ownAnswer);
+            }
+        }
+
+        if (inFlight.isPresent()) {
+            try {
+                return inFlight.get().answer().join().toAnswer();
+            } catch (CompletionException e) {
+                // The question that came first got no answer, this one tries on its own
+                final var startedGeneration = generation.get();
+                final var answer = generator.get();
+                put(key, answer.answer(), answer.citations(), startedGeneration);
+                return answer;
+            }
+        }
+
+        try {
+            final var startedGeneration = generation.get();
+            final var answer = generator.get();
+            // Waiting near-duplicates get the answer even when it is too stale to cache
+            ownAnswer.answer().complete(put(key, answer.answer(), answer.citations(), startedGeneration));
+            return answer;
+        } catch (RuntimeException | Error e) {
+            ownAnswer.answer().completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (pendingAnswers) {
+                pendingAnswers.remove(ownAnswer);
+            }
+        }
+    }
+
+    public Optional<CachedAnswer> find(@NonNull Key key) {
+        final var best = lookup(key);
+        (best.isEmpty() ? misses : hits).increment();
+        best.ifPresent(cachedAnswer -> log.debug("Answered '{}' from the cached answer to '{}'", key.question(), cachedAnswer.question()));
+        return best;
+    }
+
+    public CachedAnswer put(@NonNull Key key, @NonNull String answer, @NonNull List<ConfluenceCitation> citations) {
+        return put(key, answer, citations, generation.get());
+    }
+
+    private CachedAnswer put(Key key, String answer, List<ConfluenceCitation> citations, long startedGeneration) {
+        final var cachedAnswer = new CachedAnswer(
+                UUID.randomUUID(),
+                key.scope(),
+                key.question(),
+                key.embedding(),
+                answer,
+                List.copyOf(citations),
+                Instant.now()
+        );
+        if (generation.get() != startedGeneration) {
+            log.debug("Not caching the answer to '{}', pages were ingested while it was generated", key.question());
+            return cachedAnswer;
+        }
+
+        final var replaced = insert(cachedAnswer);
+        persist(() -> {
+            answerCacheStore.save(cachedAnswer);
+            // Answers replaced in memory would otherwise only leave the table when they expire
+            if (replaced != null) {
+                answerCacheStore.delete(replaced.id());
+            }
+            answerCacheStore.prune(Instant.now().minus(timeToLive), entries.length);
+        });
+
+        // An ingestion between the check above and the insert may have evicted before there was anything to evict
+        if (generation.get() != startedGeneration) {
+            remove(cachedAnswer);
+        }
+        return cachedAnswer;
+    }
+
+    private Optional<CachedAnswer> lookup(Key key) {
+        final var createdAfter = Instant.now().minus(timeToLive);
+        CachedAnswer best = null;
+        var bestSimilarity = similarityThreshold;
+
+        lock.readLock().lock();
+        try {
+            for (var slot = 0; slot < entries.length; slot++) {
+                final var entry = entries[slot];
+                if (entry == null || !entry.scope().equals(key.scope()) || entry.createdAt().isBefore(createdAfter)) {
+                    continue;
+                }
+
+                final var similarity = dot(key.embedding(), slot * dimension);
+                if (similarity >= bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        return Optional.ofNullable(best);
+    }
+
+    public void recordBypass() {
+        bypasses.increment();
+    }
+
+    @Override
+    public void onPageIngested(@NonNull String spaceKey, @NonNull String pageId) {
+        generation.incrementAndGet();
+        evict(entry -> entry.citations().stream().anyMatch(citation -> pageId.equals(citation.pageId())));
+        persist(() -> answerCacheStore.deleteCiting(pageId));
+    }
+
+    @Override
+    public void onPageRemoved(@NonNull String spaceKey, @NonNull String pageId) {
+        onPageIngested(spaceKey, pageId);
+    }
+
+    @Override
+    public void onSpaceIngested(@NonNull String spaceKey) {
+        // Answers without any sources may be answerable from content that was just ingested
+        generation.incrementAndGet();
+        evict(entry -> entry.citations().isEmpty());
+        persist(answerCacheStore::deleteUncited);
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        FunctionCounter.builder(ConfluenceRagObservability.metricName("answer.cache.hits"), hits, LongAdder::sum).register(registry);
+        FunctionCounter.builder(ConfluenceRagObservability.metricName("answer.cache.misses"), misses, LongAdder::sum).register(registry);
+        FunctionCounter.builder(ConfluenceRagObservability.metricName("answer.cache.bypasses"), bypasses, LongAdder::sum).register(registry);
+        FunctionCounter.builder(ConfluenceRagObservability.metricName("answer.cache.evictions.ingestion"), evictionsByIngestion, LongAdder::sum)
+                .register(registry);
+        Gauge.builder(ConfluenceRagObservability.metricName("answer.cache.entries"), this, AnswerCache::size).register(registry);
+    }
+
+    public AnswerCacheStatistics getStatistics() {
+        return new AnswerCacheStatistics(hits.sum(), misses.sum(), bypasses.sum(), evictionsByIngestion.sum(), size());
+    }
+
+    private int size() {
+        lock.readLock().lock();
+        try {
+            return (int) Arrays.stream(entries).filter(Objects::nonNull).count();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private CachedAnswer insert(CachedAnswer cachedAnswer) {
+        if (cachedAnswer.embedding().length != dimension) {
+            return null;
+        }
+
+        lock.writeLock().lock();
+        try {
+            // The oldest slot is replaced; answers are only worth keeping while the questions keep coming
+            final var replaced = entries[nextSlot];
+            entries[nextSlot] = cachedAnswer;
+            System.arraycopy(cachedAnswer.embedding(), 0, vectors, nextSlot * dimension, dimension);
+            nextSlot = (nextSlot + 1) % entries.length;
+            return replaced;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void remove(CachedAnswer cachedAnswer) {
+        lock.writeLock().lock();
+        try {
+            for (var slot = 0; slot < entries.length; slot++) {
+                if (entries[slot] == cachedAnswer) {
+                    entries[slot] = null;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        persist(() -> answerCacheStore.delete(cachedAnswer.id()));
+    }
+
+    private void evict(Predicate<CachedAnswer> predicate) {
+        var evicted = 0;
+        lock.writeLock().lock();
+        try {
+            for (var slot = 0; slot < entries.length; slot++) {
+                if (entries[slot] != null && predicate.test(entries[slot])) {
+                    entries[slot] = null;
+                    evicted++;
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (evicted > 0) {
+            evictionsByIngestion.add(evicted);
+            log.debug("Evicted {} cached answers after ingestion", evicted);
+        }
+    }
+
+    private void persist(Runnable operation) {
+        if (answerCacheStore == null) {
+            return;
+        }
+        try {
+            operation.run();
+        } catch (DataAccessException e) {
+            // The in-memory cache stays correct, only answers cached across a restart may be affected
+            log.warn("Could not persist answer cache change", e);
+        }
+    }
+
+    private double dot(float[] embedding, int offset) {
+        var dot = 0.0;
+        for (var i = 0; i < dimension; i++) {
+            dot += embedding[i] * vectors[offset + i];
+        }
+        return dot;
+    }
+
+    private static double dot(float[] embedding, float[] other) {
+        var dot = 0.0;
+        for (var i = 0; i < embedding.length; i++) {
+            dot += embedding[i] * other[i];
+        }
+        return dot;
+    }
+
+    private static float[] normalized(float[] embedding) {
+        // Copied, as the embedding may be shared with other caches
+        final var vector = embedding.clone();
+        var norm = 0.0;
+        for (final var value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            final var scale = (float) (1 / Math.sqrt(norm));
+            for (var i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    public record Key(String question, String scope, float[] embedding) {
+    }
+
+    private record PendingAnswer(Key key, CompletableFuture<CachedAnswer> answer) {
+    }
+}
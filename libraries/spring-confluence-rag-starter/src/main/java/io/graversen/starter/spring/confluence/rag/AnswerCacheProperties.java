@@ -0,0 +1,16 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class AnswerCacheProperties {
+    private Boolean enabled = false;
+    private Double similarityThreshold = 0.95;
+    private Integer maxEntries = 1_000;
+    private Duration timeToLive = Duration.ofHours(24);
+    private Boolean persist = true;
+}
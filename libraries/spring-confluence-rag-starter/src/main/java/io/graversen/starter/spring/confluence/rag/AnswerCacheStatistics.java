@@ -0,0 +1,8 @@
+package io.graversen.starter.spring.confluence.rag;
+
+public record AnswerCacheStatistics(long hits, long misses, long bypasses, long evictionsByIngestion, int entries) {
+    public double hitRate() {
+        final var lookups = hits + misses;
+        return lookups == 0 ? 0.0 : (double) hits / lookups;
+    }
+}
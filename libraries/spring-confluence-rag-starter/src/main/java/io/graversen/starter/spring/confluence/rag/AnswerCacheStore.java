@@ -0,0 +1,24 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public interface AnswerCacheStore {
+    List<CachedAnswer> findRecent(@NonNull Instant createdAfter, int limit);
+
+    void save(@NonNull CachedAnswer cachedAnswer);
+
+    void deleteCiting(@NonNull String pageId);
+
+    void deleteUncited();
+
+    void delete(@NonNull UUID id);
+
+    /**
+     * Deletes answers created before {@code createdBefore}, and all but the {@code maxEntries} most recent ones.
+     */
+    void prune(@NonNull Instant createdBefore, int maxEntries);
+}
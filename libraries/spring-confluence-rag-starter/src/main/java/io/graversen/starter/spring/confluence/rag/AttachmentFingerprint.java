@@ -0,0 +1,9 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+public record AttachmentFingerprint(@NonNull String attachmentId, @NonNull String pageId, int version) {
+    public boolean isVersion(ConfluenceDtos.Version attachmentVersion) {
+        return attachmentVersion != null && attachmentVersion.number() != null && attachmentVersion.number() == version;
+    }
+}
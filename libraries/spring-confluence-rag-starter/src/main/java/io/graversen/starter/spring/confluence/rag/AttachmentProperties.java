@@ -0,0 +1,29 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.util.unit.DataSize;
+
+import java.util.List;
+
+@Getter
+@Setter
+public class AttachmentProperties {
+    private Boolean enabled = false;
+    private DataSize maxSize = DataSize.ofMegabytes(50);
+    private Integer concurrency = 2;
+    private Integer windowCharacters = 50_000;
+    private Boolean checkUnchangedPages = true;
+    private List<String> mediaTypes = List.of(
+            "application/pdf",
+            "application/msword",
+            "application/vnd.openxmlformats-officedocument.wordprocessingml.document",
+            "application/vnd.ms-excel",
+            "application/vnd.openxmlformats-officedocument.spreadsheetml.sheet",
+            "application/vnd.ms-powerpoint",
+            "application/vnd.openxmlformats-officedocument.presentationml.presentation",
+            "text/plain",
+            "text/markdown",
+            "text/csv"
+    );
+}
@@ -0,0 +1,50 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+import java.util.function.Consumer;
+
+/**
+ * Collects the extracted text of an attachment into windows of about {@code windowCharacters}, each of which is split
+ * and embedded on its own, so no more than one window of an attachment is held in memory. A window ends at the last
+ * line break past its middle where there is one, so paragraphs are rarely cut in two.
+ */
+public class AttachmentTextWindows implements Consumer<String> {
+    private final StringBuilder window = new StringBuilder();
+    private final int windowCharacters;
+    private final Consumer<String> windowConsumer;
+    private int windows;
+
+    public AttachmentTextWindows(int windowCharacters, @NonNull Consumer<String> windowConsumer) {
+        this.windowCharacters = Math.max(windowCharacters, 1);
+        this.windowConsumer = windowConsumer;
+    }
+
+    @Override
+    public void accept(String text) {
+        window.append(text);
+        while (window.length() >= windowCharacters) {
+            final var lineBreak = window.lastIndexOf("\n", windowCharacters);
+            final var end = lineBreak > windowCharacters / 2 ? lineBreak + 1 : windowCharacters;
+            emit(window.substring(0, end));
+            window.delete(0, end);
+        }
+    }
+
+    public void flush() {
+        emit(window.toString());
+        window.setLength(0);
+    }
+
+    public int windows() {
+        return windows;
+    }
+
+    private void emit(String text) {
+        if (text.isBlank()) {
+            return;
+        }
+        windows++;
+        windowConsumer.accept(text);
+    }
+}
@@ -0,0 +1,175 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coalesces concurrent calls to an in-process embedding model into shared batches. A single worker takes the oldest
+ * waiting call and, for at most the batch wait, collects further calls of the same kind until the batch is full; a
+ * batch of questions then costs one inference instead of one per question. Calls through {@link #background()}, such
+ * as ingestion, only run when no question is waiting, so a large ingestion never queues questions behind it for more
+ * than one batch.
+ */
+public class BatchingEmbeddingModel implements EmbeddingModel, AutoCloseable {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final BlockingQueue<PendingCall> pendingCalls = new PriorityBlockingQueue<>(
+            11,
+            Comparator.comparing(PendingCall::background).thenComparingLong(PendingCall::sequence)
+    );
+    private final AtomicLong sequence = new AtomicLong();
+    private final EmbeddingModel backgroundModel = new BackgroundEmbeddingModel();
+    private final EmbeddingModel delegate;
+    private final int maxBatchSize;
+    private final long batchWaitNanos;
+    private final Thread worker;
+    private volatile boolean closed;
+
+    public BatchingEmbeddingModel(@NonNull EmbeddingModel delegate, int maxBatchSize, @NonNull Duration batchWait) {
+        this.delegate = delegate;
+        this.maxBatchSize = maxBatchSize;
+        this.batchWaitNanos = batchWait.toNanos();
+        this.worker = Thread.ofPlatform().name("embedding-batcher").daemon().start(this::work);
+    }
+
+    /**
+     * The same model for bulk work, whose calls yield to every waiting question.
+     */
+    public EmbeddingModel background() {
+        return backgroundModel;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        return submit(textSegments, false);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    @Override
+    public void close() throws Exception {
+        closed = true;
+        worker.interrupt();
+        worker.join(SHUTDOWN_TIMEOUT);
+
+        // Callers blocked on calls the worker never took would otherwise wait forever
+        final var remaining = new ArrayList<PendingCall>();
+        pendingCalls.drainTo(remaining);
+        remaining.forEach(BatchingEmbeddingModel::reject);
+
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+
+    private Response<List<Embedding>> submit(List<TextSegment> textSegments, boolean background) {
+        if (textSegments.isEmpty()) {
+            return Response.from(List.of());
+        }
+        if (closed) {
+            throw new IllegalStateException("The embedding model is closed");
+        }
+
+        final var call = new PendingCall(List.copyOf(textSegments), background, sequence.incrementAndGet(), new CompletableFuture<>());
+        pendingCalls.add(call);
+        // A call added while closing may have missed the drain
+        if (closed && pendingCalls.remove(call)) {
+            reject(call);
+        }
+
+        try {
+            return call.result().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+
+    private void work() {
+        while (!Thread.currentThread().isInterrupted()) {
+            final var batch = new ArrayList<PendingCall>();
+            try {
+                final var first = pendingCalls.take();
+                batch.add(first);
+
+                var segments = first.textSegments().size();
+                final var deadline = System.nanoTime() + batchWaitNanos;
+                while (segments < maxBatchSize) {
+                    final var next = pendingCalls.poll(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    if (next.background() != first.background()) {
+                        // A question goes into the next batch right away, and background work never delays one
+                        pendingCalls.add(next);
+                        break;
+                    }
+                    batch.add(next);
+                    segments += next.textSegments().size();
+                }
+            } catch (InterruptedException e) {
+                batch.forEach(BatchingEmbeddingModel::reject);
+                Thread.currentThread().interrupt();
+                return;
+            }
+
+            embed(batch);
+        }
+    }
+
+    private void embed(List<PendingCall> batch) {
+        try {
+            final var textSegments = batch.stream().flatMap(call -> call.textSegments().stream()).toList();
+            final var embeddings = delegate.embedAll(textSegments).content();
+
+            var offset = 0;
+            for (final var call : batch) {
+                final var size = call.textSegments().size();
+                call.result().complete(Response.from(embeddings.subList(offset, offset + size)));
+                offset += size;
+            }
+        } catch (RuntimeException e) {
+            batch.forEach(call -> call.result().completeExceptionally(e));
+        }
+    }
+
+    private static void reject(PendingCall call) {
+        call.result().completeExceptionally(new IllegalStateException("The embedding model was closed"));
+    }
+
+    private class BackgroundEmbeddingModel implements EmbeddingModel {
+        @Override
+        public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+            return submit(textSegments, true);
+        }
+
+        @Override
+        public int dimension() {
+            return delegate.dimension();
+        }
+    }
+
+    private record PendingCall(
+            List<TextSegment> textSegments,
+            boolean background,
+            long sequence,
+            CompletableFuture<Response<List<Embedding>>> result
+    ) {
+    }
+}
@@ -0,0 +1,19 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+public record CachedAnswer(
+        UUID id,
+        String scope,
+        String question,
+        float[] embedding,
+        String answer,
+        List<ConfluenceCitation> citations,
+        Instant createdAt
+) {
+    public ConfluenceRagAnswer toAnswer() {
+        return new ConfluenceRagAnswer(answer, citations, true);
+    }
+}
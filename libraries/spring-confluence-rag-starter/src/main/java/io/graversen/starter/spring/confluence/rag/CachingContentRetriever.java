@@ -0,0 +1,26 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class CachingContentRetriever implements ContentRetriever {
+    private final @NonNull ContentRetriever delegate;
+    private final @NonNull RetrievalCache retrievalCache;
+    private final @NonNull ConfluenceSpaceFilter spaceFilter;
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        // The same question asked within different spaces retrieves different segments
+        final var spaceKeys = spaceFilter.spaceKeys(query).stream().sorted().toList();
+        final var queryKey = spaceKeys.isEmpty()
+                ? QueryTexts.normalize(query.text())
+                : String.join(",", spaceKeys) + "\n" + QueryTexts.normalize(query.text());
+        return retrievalCache.contents(queryKey, () -> delegate.retrieve(query));
+    }
+}
@@ -0,0 +1,125 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class CachingEmbeddingModel implements EmbeddingModel, MeterBinder, AutoCloseable {
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private final EmbeddingModel delegate;
+    private final List<EmbeddingCache> tiers;
+    private final Map<String, LongAdder> hitsByTier = new ConcurrentHashMap<>();
+    private final LongAdder misses = new LongAdder();
+
+    public CachingEmbeddingModel(@NonNull EmbeddingModel delegate, @NonNull List<EmbeddingCache> tiers) {
+        this.delegate = delegate;
+        this.tiers = List.copyOf(tiers);
+        this.tiers.forEach(tier -> hitsByTier.put(tier.name(), new LongAdder()));
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        final var textHashes = textSegments.stream()
+                .map(TextSegment::text)
+                .map(CachingEmbeddingModel::textHash)
+                .toList();
+
+        final var embeddings = new HashMap<String, float[]>();
+        final var missing = new LinkedHashSet<>(textHashes);
+
+        for (var tierIndex = 0; tierIndex < tiers.size() && !missing.isEmpty(); tierIndex++) {
+            final var tier = tiers.get(tierIndex);
+            final var found = tier.getAll(missing);
+            hitsByTier.get(tier.name()).add(found.size());
+            missing.removeAll(found.keySet());
+            embeddings.putAll(found);
+
+            // Promote lower tier hits so the next lookup is served by the cheapest tier
+            if (!found.isEmpty()) {
+                tiers.subList(0, tierIndex).forEach(fasterTier -> fasterTier.putAll(found));
+            }
+        }
+
+        Response<List<Embedding>> response = null;
+        if (!missing.isEmpty()) {
+            misses.add(missing.size());
+
+            final var segmentsByTextHash = new LinkedHashMap<String, TextSegment>();
+            for (var i = 0; i < textSegments.size(); i++) {
+                if (missing.contains(textHashes.get(i))) {
+                    segmentsByTextHash.putIfAbsent(textHashes.get(i), textSegments.get(i));
+                }
+            }
+
+            response = delegate.embedAll(new ArrayList<>(segmentsByTextHash.values()));
+            final var computed = new HashMap<String, float[]>();
+            final var missingTextHashes = new ArrayList<>(segmentsByTextHash.keySet());
+            for (var i = 0; i < missingTextHashes.size(); i++) {
+                computed.put(missingTextHashes.get(i), response.content().get(i).vector());
+            }
+
+            tiers.forEach(tier -> tier.putAll(computed));
+            embeddings.putAll(computed);
+        }
+
+        final var results = textHashes.stream()
+                .map(embeddings::get)
+                .map(Embedding::from)
+                .toList();
+
+        return response == null
+                ? Response.from(results)
+                : Response.from(results, response.tokenUsage(), response.finishReason());
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    public EmbeddingCacheStatistics getStatistics() {
+        final var hits = hitsByTier.entrySet().stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().sum()));
+        return new EmbeddingCacheStatistics(hits, misses.sum());
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        hitsByTier.forEach((tier, hits) -> FunctionCounter.builder(ConfluenceRagObservability.metricName("embedding.cache.hits"), hits, LongAdder::sum)
+                .tag("tier", tier)
+                .register(registry));
+        FunctionCounter.builder(ConfluenceRagObservability.metricName("embedding.cache.misses"), misses, LongAdder::sum)
+                .register(registry);
+    }
+
+    @Override
+    public void close() {
+        tiers.forEach(EmbeddingCache::close);
+        log.info("Closed embedding cache: {}", getStatistics());
+    }
+
+    static String textHash(String text) {
+        final var normalized = WHITESPACE.matcher(Normalizer.normalize(text, Normalizer.Form.NFC)).replaceAll(" ").strip();
+        return ContentHashes.sha256Hex(normalized);
+    }
+}
@@ -0,0 +1,33 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class CachingQueryEmbeddingModel implements EmbeddingModel {
+    private final @NonNull EmbeddingModel delegate;
+    private final @NonNull RetrievalCache retrievalCache;
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        final var embeddings = textSegments.stream()
+                .map(textSegment -> retrievalCache.queryEmbedding(textSegment.text(), this::embedQuery))
+                .toList();
+        return Response.from(embeddings);
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    private Embedding embedQuery(String queryText) {
+        return delegate.embed(queryText).content();
+    }
+}
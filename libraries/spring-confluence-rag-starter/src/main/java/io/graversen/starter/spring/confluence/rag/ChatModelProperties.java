@@ -2,14 +2,16 @@ package io.graversen.starter.spring.confluence.rag;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
+import java.time.Duration;
 import java.util.List;
 
 @Getter
 @Setter
 public class ChatModelProperties {
     private String model = "gpt-4o-mini";
-    private List<String> metaDataKeys = List.of("pageId", "pageTitle", "pageUrl");
+    private List<String> metaDataKeys = List.of("pageId", "pageTitle", "pageUrl", "attachmentTitle");
     private String systemPrompt = """
             You are a helpful assistant that answers questions based on the content of Confluence pages.
             Answer the question based on the provided context clearly and concisely. Format using Markdown as appropriate.
@@ -18,5 +20,15 @@ public class ChatModelProperties {
             **Source**: [Page Title](Page URL)
             """;
     private Integer memoryTokens = 8192;
+    private Integer maxConversations = 10_000;
+    private Duration conversationIdleTimeout = Duration.ofMinutes(30);
+    private Boolean persistConversations = false;
+    private Duration persistedConversationRetention = Duration.ofDays(30);
     private Double temperature = 1.0;
+
+    @NestedConfigurationProperty
+    private ContextInjectionProperties contextInjection = new ContextInjectionProperties();
+
+    @NestedConfigurationProperty
+    private AnswerCacheProperties answerCache = new AnswerCacheProperties();
 }
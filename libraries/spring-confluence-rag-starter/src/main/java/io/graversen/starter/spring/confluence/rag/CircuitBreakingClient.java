@@ -0,0 +1,92 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import feign.Client;
+import feign.Request;
+import feign.Response;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.time.Duration;
+
+/**
+ * Stops calling Confluence after a run of consecutive connection failures or server errors, failing fast instead of
+ * letting every page of a crawl wait out its retries against a server that is down. After the open duration a single
+ * trial request is let through; its outcome closes the circuit or opens it again. Throttling (429) is left to the
+ * retryer and does not count as a failure.
+ */
+@Slf4j
+public class CircuitBreakingClient implements Client {
+    private final Client delegate;
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAtNanos;
+
+    public CircuitBreakingClient(Client delegate, int failureThreshold, Duration openDuration) {
+        this.delegate = delegate;
+        this.failureThreshold = Math.max(failureThreshold, 1);
+        this.openNanos = openDuration.toNanos();
+    }
+
+    @Override
+    public Response execute(Request request, Request.Options options) throws IOException {
+        acquirePermission(request);
+
+        final Response response;
+        try {
+            response = delegate.execute(request, options);
+        } catch (IOException | RuntimeException e) {
+            onFailure();
+            throw e;
+        }
+
+        if (response.status() >= 500) {
+            onFailure();
+        } else {
+            onSuccess();
+        }
+        return response;
+    }
+
+    private synchronized void acquirePermission(Request request) {
+        if (state == State.OPEN && System.nanoTime() - openedAtNanos >= openNanos) {
+            state = State.HALF_OPEN;
+            log.info("Confluence circuit breaker half-open, trying {}", request.url());
+            return;
+        }
+        if (state != State.CLOSED) {
+            throw new ConfluenceUnavailableException("Confluence circuit breaker is open after %d consecutive failures".formatted(consecutiveFailures));
+        }
+    }
+
+    private synchronized void onSuccess() {
+        if (state != State.CLOSED) {
+            log.info("Confluence circuit breaker closed");
+        }
+        state = State.CLOSED;
+        consecutiveFailures = 0;
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            log.warn("Confluence circuit breaker opened after {} consecutive failures", consecutiveFailures);
+            state = State.OPEN;
+            openedAtNanos = System.nanoTime();
+        }
+    }
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    public static class ConfluenceUnavailableException extends RuntimeException {
+        public ConfluenceUnavailableException(String message) {
+            super(message);
+        }
+    }
+}
@@ -3,19 +3,67 @@ package io.graversen.starter.spring.confluence.rag;
 import feign.Headers;
 import feign.Param;
 import feign.RequestLine;
+import feign.Response;
 
+import java.net.URI;
+
+import static io.graversen.starter.spring.confluence.rag.ConfluenceDtos.AttachmentListResponse;
 import static io.graversen.starter.spring.confluence.rag.ConfluenceDtos.PageListResponse;
 import static io.graversen.starter.spring.confluence.rag.ConfluenceDtos.PageResponse;
 
 @Headers("Accept: application/json")
 public interface ConfluenceApi {
-    @RequestLine("GET /rest/api/content?spaceKey={spaceKey}&type=page&limit={limit}&start={start}")
+    @RequestLine("GET /rest/api/content?spaceKey={spaceKey}&type=page&limit={limit}&start={start}&expand=version,ancestors,metadata.labels")
     PageListResponse getPages(
             @Param("spaceKey") String spaceKey,
             @Param("limit") Integer limit,
             @Param("start") Integer start
     );
 
-    @RequestLine("GET /rest/api/content/{id}?expand=body.storage")
+    @RequestLine("GET /rest/api/content?spaceKey={spaceKey}&type=page&limit={limit}&cursor={cursor}&expand=version,ancestors,metadata.labels")
+    PageListResponse getPagesAfter(
+            @Param("spaceKey") String spaceKey,
+            @Param("limit") Integer limit,
+            @Param("cursor") String cursor
+    );
+
+    @RequestLine("GET /rest/api/content?spaceKey={spaceKey}&type=page&status={status}&limit={limit}&start={start}&expand=version")
+    PageListResponse getPagesByStatus(
+            @Param("spaceKey") String spaceKey,
+            @Param("status") String status,
+            @Param("limit") Integer limit,
+            @Param("start") Integer start
+    );
+
+    @RequestLine("GET /rest/api/content/search?cql={cql}&limit={limit}&start={start}&expand=version,ancestors,metadata.labels")
+    PageListResponse searchContent(
+            @Param("cql") String cql,
+            @Param("limit") Integer limit,
+            @Param("start") Integer start
+    );
+
+    @RequestLine("GET /rest/api/content/search?cql={cql}&limit={limit}&cursor={cursor}&expand=version,ancestors,metadata.labels")
+    PageListResponse searchContentAfter(
+            @Param("cql") String cql,
+            @Param("limit") Integer limit,
+            @Param("cursor") String cursor
+    );
+
+    @RequestLine("GET /rest/api/content/{id}?expand=body.storage,version,space,ancestors,metadata.labels")
     PageResponse getPage(@Param("id") String id);
+
+    @RequestLine("GET /rest/api/content/{id}/child/attachment?limit={limit}&start={start}&expand=version")
+    AttachmentListResponse getAttachments(
+            @Param("id") String pageId,
+            @Param("limit") Integer limit,
+            @Param("start") Integer start
+    );
+
+    /**
+     * Downloads an attachment from its absolute download link. The body is streamed rather than decoded, and the
+     * status is not checked, so callers must check it and close the response.
+     */
+    @RequestLine("GET")
+    @Headers("Accept: */*")
+    Response downloadAttachment(URI downloadUri);
 }
@@ -0,0 +1,324 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static io.graversen.starter.spring.confluence.rag.IngestionThroughput.Stage;
+
+/**
+ * Ingests the attachments of a page into the same embedding pipeline as the page itself, with the page's metadata and
+ * the attachment's id and title. Every attachment is streamed to a temporary file and its text extracted in windows of
+ * bounded size, each of which is split and embedded on its own, so neither a download nor the text of a large
+ * attachment is ever held in memory as a whole. Attachments are skipped while their version is unchanged, and
+ * downloads are capped in size and in how many run at once.
+ */
+@Slf4j
+public class ConfluenceAttachmentIngestor {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ConfluenceApi confluenceApi;
+    private final ConfluenceAttachmentTextExtractor textExtractor;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final DocumentSplitter documentSplitter;
+    private final ConfluencePageStateStore pageStateStore;
+    private final ConfluenceProperties confluenceProperties;
+    private final IngestionProperties ingestionProperties;
+    private final AttachmentProperties attachmentProperties;
+    private final ConfluenceRagObservability observability;
+    private final Semaphore downloads;
+
+    public ConfluenceAttachmentIngestor(
+            @NonNull ConfluenceApi confluenceApi,
+            @NonNull ConfluenceAttachmentTextExtractor textExtractor,
+            @NonNull EmbeddingStore<TextSegment> embeddingStore,
+            @NonNull DocumentSplitter documentSplitter,
+            @NonNull ConfluencePageStateStore pageStateStore,
+            @NonNull ConfluenceProperties confluenceProperties,
+            @NonNull IngestionProperties ingestionProperties,
+            @NonNull ConfluenceRagObservability observability
+    ) {
+        this.confluenceApi = confluenceApi;
+        this.textExtractor = textExtractor;
+        this.embeddingStore = embeddingStore;
+        this.documentSplitter = documentSplitter;
+        this.pageStateStore = pageStateStore;
+        this.confluenceProperties = confluenceProperties;
+        this.ingestionProperties = ingestionProperties;
+        this.attachmentProperties = ingestionProperties.getAttachments();
+        this.observability = observability;
+        this.downloads = new Semaphore(Math.max(attachmentProperties.getConcurrency(), 1));
+    }
+
+    /**
+     * Whether pages skipped by their version still have their attachments checked, as adding or updating an
+     * attachment does not change the version of its page.
+     */
+    public boolean checksUnchangedPages() {
+        return attachmentProperties.getCheckUnchangedPages();
+    }
+
+    /**
+     * Ingests the new and changed attachments of a page and removes the segments of attachments no longer attached.
+     * Segments are handed to the pipeline without waiting for their batch; the returned future completes with the
+     * number of attachments ingested or removed once all of their segments are stored. An attachment that cannot be
+     * downloaded or extracted is logged and retried on the next ingestion, rather than failing its page.
+     */
+    public CompletableFuture<Integer> ingestAttachments(
+            @NonNull String pageId,
+            @NonNull Supplier<Metadata> pageMetadata,
+            @NonNull SegmentEmbeddingPipeline embeddingPipeline,
+            @NonNull IngestionThroughput throughput
+    ) {
+        final Map<String, AttachmentFingerprint> fingerprints = ingestionProperties.getIncremental()
+                ? new HashMap<>(pageStateStore.findAttachments(pageId))
+                : new HashMap<>();
+        final var attachments = attachments(pageId);
+        final var attachmentIngestions = new ArrayList<CompletableFuture<Void>>();
+
+        for (final var attachment : attachments) {
+            final var fingerprint = fingerprints.get(attachment.id());
+            if (fingerprint != null && fingerprint.isVersion(attachment.version())) {
+                fingerprints.remove(attachment.id());
+                continue;
+            }
+            // An attachment that is no longer ingestible, e.g. after growing past the size limit, keeps its fingerprint
+            // so that its outdated segments are removed below
+            if (!isIngestible(pageId, attachment)) {
+                observability.counter("ingestion.attachments.skipped").increment();
+                continue;
+            }
+
+            fingerprints.remove(attachment.id());
+            try {
+                attachmentIngestions.add(ingestAttachment(pageId, attachment, pageMetadata, embeddingPipeline, throughput));
+            } catch (IOException | RuntimeException e) {
+                observability.counter("ingestion.attachments.failed").increment();
+                log.warn("⚙️ Failed to ingest attachment {} ({}) of Confluence page {}", attachment.title(), attachment.id(), pageId, e);
+            }
+        }
+
+        fingerprints.keySet().forEach(attachmentId -> {
+            embeddingStore.removeAll(metadataKey("attachmentId").isEqualTo(attachmentId));
+            pageStateStore.deleteAttachment(attachmentId);
+            log.debug("⚙️ Removed attachment {} of Confluence page {}", attachmentId, pageId);
+        });
+        observability.counter("ingestion.attachments.removed").increment(fingerprints.size());
+
+        final var changed = attachmentIngestions.size() + fingerprints.size();
+        return allOf(attachmentIngestions).thenApply(ignored -> changed);
+    }
+
+    private CompletableFuture<Void> ingestAttachment(
+            String pageId,
+            ConfluenceDtos.Attachment attachment,
+            Supplier<Metadata> pageMetadata,
+            SegmentEmbeddingPipeline embeddingPipeline,
+            IngestionThroughput throughput
+    ) throws IOException {
+        log.info("⚙️ Ingesting attachment {} ({}) of Confluence page {}", attachment.title(), attachment.id(), pageId);
+        final var mediaType = mediaType(attachment);
+        final var segmentIngestions = new ArrayList<CompletableFuture<Void>>();
+        final var segmentCount = new AtomicInteger();
+        final var revision = UUID.randomUUID().toString();
+
+        // The permit is held until the text has been handed to the pipeline, which caps the temporary files on disk as
+        // well as the number of extractions at once
+        downloads.acquireUninterruptibly();
+        Path file = null;
+        try {
+            file = Files.createTempFile("confluence-attachment-", ".tmp");
+            final var downloadStartedAt = System.nanoTime();
+            final var size = download(attachment, file);
+            throughput.record(Stage.DOWNLOAD, 1, System.nanoTime() - downloadStartedAt);
+            observability.summary("ingestion.attachments.bytes").record(size);
+
+            final var metadata = pageMetadata.get().copy()
+                    .put("contentType", "attachment")
+                    .put("attachmentId", attachment.id())
+                    .put("attachmentTitle", attachment.title())
+                    .put("mediaType", mediaType)
+                    .put("revision", revision);
+
+            final var extractStartedAt = System.nanoTime();
+            final var textWindows = new AttachmentTextWindows(attachmentProperties.getWindowCharacters(), text -> {
+                final List<TextSegment> segments = documentSplitter.split(Document.from(text, metadata.copy()));
+                // Every window is split on its own, so its segments are renumbered to follow those of the windows before
+                final var offset = segmentCount.getAndAdd(segments.size());
+                for (var i = 0; i < segments.size(); i++) {
+                    segments.get(i).metadata().put("index", String.valueOf(offset + i));
+                }
+                segmentIngestions.add(embeddingPipeline.submit(segments));
+            });
+            textExtractor.extractText(file, mediaType, textWindows);
+            textWindows.flush();
+            throughput.record(Stage.EXTRACT, 1, System.nanoTime() - extractStartedAt);
+            log.debug("⚙️ Extracted {} windows of text from attachment {} ({})", textWindows.windows(), attachment.title(), attachment.id());
+        } catch (IOException | RuntimeException e) {
+            // The windows already submitted are left to finish and then removed, the previous revision stays in place
+            if (!segmentIngestions.isEmpty()) {
+                allOf(segmentIngestions).whenComplete((ignored, throwable) -> removeRevision(attachment.id(), revision));
+            }
+            throw e;
+        } finally {
+            downloads.release();
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        }
+
+        final var attachmentVersion = attachment.version() == null || attachment.version().number() == null
+                ? 0
+                : attachment.version().number();
+        return allOf(segmentIngestions)
+                .whenComplete((ignored, throwable) -> {
+                    if (throwable != null) {
+                        removeRevision(attachment.id(), revision);
+                    }
+                })
+                .thenRun(() -> {
+                    // The previous revision is only replaced once the new one is stored, so the attachment stays
+                    // searchable throughout and keeps its old segments if the new ones fail
+                    if (ingestionProperties.getIncremental()) {
+                        embeddingStore.removeAll(metadataKey("attachmentId").isEqualTo(attachment.id())
+                                .and(metadataKey("revision").isNotEqualTo(revision)));
+                        pageStateStore.saveAttachment(new AttachmentFingerprint(attachment.id(), pageId, attachmentVersion));
+                    }
+                    observability.counter("ingestion.attachments.ingested").increment();
+                });
+    }
+
+    private void removeRevision(String attachmentId, String revision) {
+        try {
+            embeddingStore.removeAll(metadataKey("attachmentId").isEqualTo(attachmentId).and(metadataKey("revision").isEqualTo(revision)));
+        } catch (RuntimeException e) {
+            log.warn("⚙️ Could not remove the partially stored segments of attachment {}", attachmentId, e);
+        }
+    }
+
+    private static CompletableFuture<Void> allOf(List<CompletableFuture<Void>> futures) {
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new));
+    }
+
+    private List<ConfluenceDtos.Attachment> attachments(String pageId) {
+        final var attachments = new ArrayList<ConfluenceDtos.Attachment>();
+        final var pageSize = ingestionProperties.getPageSize();
+        var start = 0;
+        while (true) {
+            final var response = confluenceApi.getAttachments(pageId, pageSize, start);
+            final var results = response.results() == null ? List.<ConfluenceDtos.Attachment>of() : response.results();
+            attachments.addAll(results);
+            if (results.isEmpty() || !response.hasNext()) {
+                return attachments;
+            }
+            start += results.size();
+        }
+    }
+
+    private boolean isIngestible(String pageId, ConfluenceDtos.Attachment attachment) {
+        final var mediaType = mediaType(attachment);
+        if (!attachmentProperties.getMediaTypes().contains(mediaType) || !textExtractor.supports(mediaType)) {
+            log.debug("⚙️ Skipping attachment {} ({}) of Confluence page {} of unsupported type {}", attachment.title(), attachment.id(), pageId, mediaType);
+            return false;
+        }
+        if (attachment.links() == null || attachment.links().download() == null) {
+            log.debug("⚙️ Skipping attachment {} ({}) of Confluence page {} without a download link", attachment.title(), attachment.id(), pageId);
+            return false;
+        }
+
+        final var fileSize = attachment.extensions() == null ? null : attachment.extensions().fileSize();
+        if (fileSize != null && fileSize > attachmentProperties.getMaxSize().toBytes()) {
+            log.info("⚙️ Skipping attachment {} ({}) of Confluence page {} of {} bytes, exceeding the maximum size of {}",
+                    attachment.title(), attachment.id(), pageId, fileSize, attachmentProperties.getMaxSize());
+            return false;
+        }
+        return true;
+    }
+
+    private long download(ConfluenceDtos.Attachment attachment, Path file) throws IOException {
+        final var maxSize = attachmentProperties.getMaxSize().toBytes();
+        try (final var response = confluenceApi.downloadAttachment(downloadUri(attachment))) {
+            if (response.status() != 200 || response.body() == null) {
+                throw new IOException("Download of attachment %s failed with status %d".formatted(attachment.id(), response.status()));
+            }
+
+            // The reported file size is not trusted to enforce the limit, the download is cut off once it is exceeded
+            try (final var inputStream = response.body().asInputStream();
+                 final var outputStream = Files.newOutputStream(file)) {
+                final var buffer = new byte[BUFFER_SIZE];
+                var size = 0L;
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    size += read;
+                    if (size > maxSize) {
+                        throw new IOException("Attachment %s exceeds the maximum size of %s".formatted(attachment.id(), attachmentProperties.getMaxSize()));
+                    }
+                    outputStream.write(buffer, 0, read);
+                }
+                return size;
+            }
+        }
+    }
+
+    private URI downloadUri(ConfluenceDtos.Attachment attachment) throws IOException {
+        final var downloadLink = attachment.links().download();
+        final var baseUrl = confluenceProperties.getBaseUrl();
+        final var baseUri = URI.create(baseUrl);
+        // Download links are relative to the base URL, including the /wiki context path of Confluence Cloud
+        final var downloadUri = downloadLink.startsWith("/")
+                ? URI.create((baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl) + downloadLink)
+                : URI.create(downloadLink);
+
+        // Every request carries the Confluence credentials, which must never be sent to another host
+        if (!sameOrigin(baseUri, downloadUri)) {
+            throw new IOException("Download link of attachment %s points outside of %s".formatted(attachment.id(), baseUrl));
+        }
+        return downloadUri;
+    }
+
+    private static boolean sameOrigin(URI baseUri, URI uri) {
+        return baseUri.getScheme() != null
+                && baseUri.getScheme().equalsIgnoreCase(uri.getScheme())
+                && baseUri.getHost() != null
+                && baseUri.getHost().equalsIgnoreCase(uri.getHost())
+                && uri.getRawUserInfo() == null
+                && port(baseUri) == port(uri);
+    }
+
+    private static int port(URI uri) {
+        if (uri.getPort() != -1) {
+            return uri.getPort();
+        }
+        return "https".equalsIgnoreCase(uri.getScheme()) ? 443 : 80;
+    }
+
+    private static String mediaType(ConfluenceDtos.Attachment attachment) {
+        final var mediaType = attachment.extensions() == null ? null : attachment.extensions().mediaType();
+        if (mediaType == null) {
+            return "application/octet-stream";
+        }
+        // Parameters such as the charset are not part of the type
+        final var parametersStart = mediaType.indexOf(';');
+        return (parametersStart < 0 ? mediaType : mediaType.substring(0, parametersStart)).strip().toLowerCase(Locale.ROOT);
+    }
+}
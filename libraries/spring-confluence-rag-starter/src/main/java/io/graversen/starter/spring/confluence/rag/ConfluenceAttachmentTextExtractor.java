@@ -0,0 +1,17 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Extracts the text of a downloaded attachment. The text is handed to {@code textConsumer} piece by piece as it is
+ * read, so an implementation should never need to hold the text of a whole attachment in memory.
+ */
+public interface ConfluenceAttachmentTextExtractor {
+    boolean supports(@NonNull String mediaType);
+
+    void extractText(@NonNull Path file, @NonNull String mediaType, @NonNull Consumer<String> textConsumer) throws IOException;
+}
@@ -0,0 +1,116 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import static io.graversen.starter.spring.confluence.rag.ConfluenceDtos.PageSummary;
+
+/**
+ * Keeps the index in sync with Confluence by only looking at what changed: a CQL search for pages modified since the
+ * space's checkpoint, plus the space's trash for pages that were deleted. Pages that are purged outright never show
+ * up in either, so every reconcile interval the full page listing (without bodies) is compared with the page state
+ * store. The first sync of a space is such a reconciliation, which also ingests every page.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ConfluenceChangeFeed {
+    private static final DateTimeFormatter CQL_DATE_TIME = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
+    private final @NonNull ConfluenceIngestor confluenceIngestor;
+    private final @NonNull ConfluenceSpaceCrawler spaceCrawler;
+    private final @NonNull ConfluencePageStateStore pageStateStore;
+    private final @NonNull ConfluenceSyncCheckpointStore checkpointStore;
+    private final @NonNull ConfluenceProperties confluenceProperties;
+    private final @NonNull IngestionProperties ingestionProperties;
+    private final @NonNull ConfluenceRagObservability observability;
+    private final @NonNull PostgresIngestionLock ingestionLock;
+
+    public void sync() {
+        // The lock is shared with full ingestions and jobs on every instance, a sync never runs alongside either
+        final var lease = ingestionLock.tryAcquire("sync");
+        if (lease.isEmpty()) {
+            log.info("⚙️ Confluence sync skipped, another ingestion is in progress");
+            return;
+        }
+
+        try (final var ignored = lease.get()) {
+            confluenceProperties.getSpaces().forEach(spaceKey -> {
+                try {
+                    observability.observe("sync", () -> syncSpace(spaceKey), "space", spaceKey);
+                } catch (RuntimeException e) {
+                    // The checkpoint was not advanced, so the next sync picks up the same changes again
+                    log.error("⚙️ Failed to sync Confluence space '{}'", spaceKey, e);
+                }
+            });
+        }
+    }
+
+    private void syncSpace(String spaceKey) {
+        final var syncStartedAt = Instant.now();
+        final var syncProperties = ingestionProperties.getSync();
+        final var checkpoint = checkpointStore.find(spaceKey);
+        final var throughput = new IngestionThroughput();
+
+        final var changed = new LinkedHashMap<String, PageSummary>();
+        final var removed = new HashSet<String>();
+        final var known = ingestionProperties.getIncremental() ? pageStateStore.findBySpace(spaceKey).keySet() : Set.<String>of();
+
+        checkpoint.ifPresent(lastSync -> {
+            final var since = lastSync.lastModified().minus(syncProperties.getLookback());
+            final var cql = "space = \"%s\" and type = page and lastmodified >= \"%s\" order by lastmodified asc"
+                    .formatted(spaceKey, LocalDateTime.ofInstant(since, ZoneId.of(syncProperties.getTimeZone())).format(CQL_DATE_TIME));
+            spaceCrawler.search(cql, throughput, page -> changed.put(page.id(), page));
+
+            // Without page state every trashed page is purged, which is harmless for pages that were never ingested
+            spaceCrawler.crawlTrash(spaceKey, throughput, page -> {
+                if (!ingestionProperties.getIncremental() || known.contains(page.id())) {
+                    removed.add(page.id());
+                }
+            });
+        });
+
+        final var reconcile = checkpoint.isEmpty()
+                || checkpoint.get().reconciledAt().plus(syncProperties.getReconcileInterval()).isBefore(syncStartedAt);
+        if (reconcile) {
+            final var current = new HashSet<String>();
+            spaceCrawler.crawl(spaceKey, throughput, page -> {
+                current.add(page.id());
+                // Pages restored from the trash keep their last modified date, so they only show up here
+                if (checkpoint.isEmpty() || !known.contains(page.id())) {
+                    changed.putIfAbsent(page.id(), page);
+                }
+            });
+            known.stream().filter(pageId -> !current.contains(pageId)).forEach(removed::add);
+        }
+
+        removed.forEach(changed::remove);
+        log.info(
+                "⚙️ Sync of space '{}' found {} changed and {} removed pages{}",
+                spaceKey, changed.size(), removed.size(), reconcile ? " (reconciled)" : ""
+        );
+
+        confluenceIngestor.removePages(spaceKey, List.copyOf(removed));
+        if (!changed.isEmpty()) {
+            confluenceIngestor.ingestPages(spaceKey, new ArrayList<>(changed.values())).join();
+        }
+
+        observability.counter("sync.pages.changed").increment(changed.size());
+        observability.counter("sync.pages.removed").increment(removed.size());
+        checkpointStore.save(new SyncCheckpoint(
+                spaceKey,
+                syncStartedAt,
+                reconcile ? syncStartedAt : checkpoint.get().reconciledAt()
+        ));
+    }
+}
@@ -0,0 +1,21 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.rag.content.Content;
+import lombok.NonNull;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+
+public record ConfluenceCitation(String pageId, String pageTitle, String pageUrl) {
+    public static List<ConfluenceCitation> from(@NonNull List<Content> contents) {
+        final var citations = new LinkedHashMap<String, ConfluenceCitation>();
+        contents.stream()
+                .map(content -> content.textSegment().metadata())
+                .filter(metadata -> metadata.getString("pageId") != null)
+                .forEach(metadata -> citations.putIfAbsent(
+                        metadata.getString("pageId"),
+                        new ConfluenceCitation(metadata.getString("pageId"), metadata.getString("pageTitle"), metadata.getString("pageUrl"))
+                ));
+        return List.copyOf(citations.values());
+    }
+}
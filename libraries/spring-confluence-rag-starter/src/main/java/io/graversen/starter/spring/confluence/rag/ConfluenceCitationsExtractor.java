@@ -3,7 +3,12 @@ package io.graversen.starter.spring.confluence.rag;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @RequiredArgsConstructor
 public class ConfluenceCitationsExtractor implements ConfluenceMetadataExtractor {
@@ -11,10 +16,31 @@ public class ConfluenceCitationsExtractor implements ConfluenceMetadataExtractor
 
     @Override
     public Map<String, String> extractMetadata(ConfluenceDtos.@NonNull PageResponse confluencePage) {
-        return Map.of(
-                "pageId", confluencePage.id(),
-                "pageTitle", confluencePage.title(),
-                "pageUrl", "%s/pages/viewpage.action?pageId=%s".formatted(confluenceProperties.getBaseUrl(), confluencePage.id())
-        );
+        final var metadata = new LinkedHashMap<String, String>();
+        metadata.put("pageId", confluencePage.id());
+        metadata.put("pageTitle", confluencePage.title());
+        metadata.put("pageUrl", "%s/pages/viewpage.action?pageId=%s".formatted(confluenceProperties.getBaseUrl(), confluencePage.id()));
+        if (confluencePage.space() != null && confluencePage.space().key() != null) {
+            metadata.put("spaceKey", confluencePage.space().key());
+        }
+
+        // Segment metadata only holds scalar values, so lists are stored comma separated, ancestors from the root down
+        final var ancestorIds = joined(confluencePage.ancestors(), ConfluenceDtos.Ancestor::id);
+        if (!ancestorIds.isEmpty()) {
+            metadata.put("ancestorIds", ancestorIds);
+        }
+        final var labels = confluencePage.metadata() == null || confluencePage.metadata().labels() == null
+                ? ""
+                : joined(confluencePage.metadata().labels().results(), ConfluenceDtos.Label::name);
+        if (!labels.isEmpty()) {
+            metadata.put("labels", labels);
+        }
+        return metadata;
+    }
+
+    private static <T> String joined(List<T> values, Function<T, String> value) {
+        return values == null
+                ? ""
+                : values.stream().map(value).filter(Objects::nonNull).collect(Collectors.joining(","));
     }
 }
@@ -0,0 +1,22 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class ConfluenceClientProperties {
+    private Duration connectTimeout = Duration.ofSeconds(10);
+    private Duration readTimeout = Duration.ofSeconds(60);
+    private Integer maxIdleConnections = 16;
+    private Duration keepAlive = Duration.ofMinutes(5);
+    private Integer maxAttempts = 6;
+    private Duration initialBackoff = Duration.ofSeconds(1);
+    private Duration maxBackoff = Duration.ofSeconds(60);
+    private Double requestsPerSecond;
+    private Integer burst = 10;
+    private Integer circuitBreakerFailureThreshold = 10;
+    private Duration circuitBreakerOpenDuration = Duration.ofSeconds(30);
+}
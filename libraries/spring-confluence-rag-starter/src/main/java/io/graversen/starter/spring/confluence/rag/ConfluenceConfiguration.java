@@ -1,35 +1,96 @@
 package io.graversen.starter.spring.confluence.rag;
 
 import feign.Feign;
+import feign.Request;
 import feign.RequestInterceptor;
+import feign.Retryer;
 import feign.jackson.JacksonDecoder;
 import feign.jackson.JacksonEncoder;
+import feign.micrometer.MicrometerObservationCapability;
 import feign.okhttp.OkHttpClient;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.ConnectionPool;
+import okhttp3.Protocol;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
+@Slf4j
 @Configuration
 public class ConfluenceConfiguration {
     @Bean
-    public ConfluenceApi confluencePageClient(SpringConfluenceRagProperties springConfluenceRagProperties) {
+    public ConfluenceApi confluencePageClient(
+            SpringConfluenceRagProperties springConfluenceRagProperties,
+            ConfluenceRagObservability observability
+    ) {
         final var confluenceProperties = springConfluenceRagProperties.getConfluence();
-        return Feign.builder()
-                .client(new OkHttpClient())
+        final var clientProperties = confluenceProperties.getClient();
+
+        final var requestInterceptors = new ArrayList<RequestInterceptor>();
+        requestInterceptors.add(confluenceAuthenticator(confluenceProperties));
+        if (clientProperties.getRequestsPerSecond() != null) {
+            requestInterceptors.add(new ConfluenceRateLimiter(clientProperties.getRequestsPerSecond(), clientProperties.getBurst()));
+        }
+
+        final var confluenceApi = Feign.builder()
+                .client(new CircuitBreakingClient(
+                        new OkHttpClient(okHttpClient(clientProperties)),
+                        clientProperties.getCircuitBreakerFailureThreshold(),
+                        clientProperties.getCircuitBreakerOpenDuration()
+                ))
+                // Feign's own options win over the OkHttp client's timeouts, so both are set from the same properties
+                .options(new Request.Options(
+                        clientProperties.getConnectTimeout().toMillis(), TimeUnit.MILLISECONDS,
+                        clientProperties.getReadTimeout().toMillis(), TimeUnit.MILLISECONDS,
+                        true
+                ))
+                .retryer(new Retryer.Default(
+                        clientProperties.getInitialBackoff().toMillis(),
+                        clientProperties.getMaxBackoff().toMillis(),
+                        clientProperties.getMaxAttempts()
+                ))
+                .errorDecoder(new ConfluenceErrorDecoder())
                 .encoder(new JacksonEncoder())
                 .decoder(new JacksonDecoder())
-                .requestInterceptor(confluenceAuthenticator(springConfluenceRagProperties))
+                .requestInterceptors(requestInterceptors)
+                .addCapability(new MicrometerObservationCapability(observability.getObservationRegistry()))
                 .target(ConfluenceApi.class, confluenceProperties.getBaseUrl());
+
+        log.info("✅ Initialized Confluence Client");
+        return confluenceApi;
+    }
+
+    @Bean
+    public ConfluenceSpaceCrawler confluenceSpaceCrawler(
+            ConfluenceApi confluenceApi,
+            SpringConfluenceRagProperties springConfluenceRagProperties
+    ) {
+        return new ConfluenceSpaceCrawler(confluenceApi, springConfluenceRagProperties.getIngestion());
+    }
+
+    private okhttp3.OkHttpClient okHttpClient(ConfluenceClientProperties clientProperties) {
+        // OkHttp negotiates HTTP/2 where the server supports it, and asks for and transparently decompresses gzip
+        // responses as long as no Accept-Encoding header is set on the request
+        return new okhttp3.OkHttpClient.Builder()
+                .connectTimeout(clientProperties.getConnectTimeout())
+                .readTimeout(clientProperties.getReadTimeout())
+                .connectionPool(new ConnectionPool(
+                        clientProperties.getMaxIdleConnections(),
+                        clientProperties.getKeepAlive().toMillis(),
+                        TimeUnit.MILLISECONDS
+                ))
+                .protocols(List.of(Protocol.HTTP_2, Protocol.HTTP_1_1))
+                .build();
     }
 
-    private RequestInterceptor confluenceAuthenticator(SpringConfluenceRagProperties springConfluenceRagProperties) {
-        return template -> {
-            final var confluenceProperties = springConfluenceRagProperties.getConfluence();
-            final var auth = confluenceProperties.getUsername() + ":" + confluenceProperties.getApiKey();
-            final var base64 = Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
-            template.header("Authorization", "Basic " + base64);
-        };
+    private RequestInterceptor confluenceAuthenticator(ConfluenceProperties confluenceProperties) {
+        final var auth = confluenceProperties.getUsername() + ":" + confluenceProperties.getApiKey();
+        final var authorization = "Basic " + Base64.getEncoder().encodeToString(auth.getBytes(StandardCharsets.UTF_8));
+        return template -> template.header("Authorization", authorization);
     }
 }
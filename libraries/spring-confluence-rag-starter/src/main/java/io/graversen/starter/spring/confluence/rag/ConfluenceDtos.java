@@ -1,12 +1,35 @@
 package io.graversen.starter.spring.confluence.rag;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
+
 import java.util.List;
 
 public class ConfluenceDtos {
-    public record PageSummary(String id, String title) {
+    // Listings expand ancestors and labels, which change without a new page version
+    public record PageSummary(String id, String title, Version version, List<Ancestor> ancestors, PageMetadata metadata) {
+        public PageSummary(String id, String title, Version version) {
+            this(id, title, version, null, null);
+        }
     }
 
-    public record PageListResponse(List<PageSummary> results, String nextCursor) {
+    public record Version(Integer number, String when) {
+
+    }
+
+    public record PageListResponse(
+            List<PageSummary> results,
+            String nextCursor,
+            Integer start,
+            Integer limit,
+            Integer size,
+            @JsonProperty("_links") Links links
+    ) {
+        public boolean hasNext() {
+            return nextCursor != null || (links != null && links.next() != null);
+        }
+    }
+
+    public record Links(String next) {
 
     }
 
@@ -14,9 +37,67 @@ public class ConfluenceDtos {
 
     }
 
-    public record PageResponse(String id, String title, Body body) {
+    public record PageResponse(
+            String id,
+            String title,
+            Version version,
+            Body body,
+            Space space,
+            List<Ancestor> ancestors,
+            PageMetadata metadata
+    ) {
         public record Body(StorageBody storage) {
 
         }
     }
+
+    public record Space(String key) {
+
+    }
+
+    public record Ancestor(String id, String title) {
+
+    }
+
+    public record PageMetadata(Labels labels) {
+
+    }
+
+    public record Labels(List<Label> results) {
+
+    }
+
+    public record Label(String name) {
+
+    }
+
+    public record AttachmentListResponse(
+            List<Attachment> results,
+            Integer start,
+            Integer limit,
+            Integer size,
+            @JsonProperty("_links") Links links
+    ) {
+        public boolean hasNext() {
+            return links != null && links.next() != null;
+        }
+    }
+
+    public record Attachment(
+            String id,
+            String title,
+            Version version,
+            AttachmentExtensions extensions,
+            @JsonProperty("_links") AttachmentLinks links
+    ) {
+
+    }
+
+    public record AttachmentExtensions(String mediaType, Long fileSize) {
+
+    }
+
+    public record AttachmentLinks(String download) {
+
+    }
 }
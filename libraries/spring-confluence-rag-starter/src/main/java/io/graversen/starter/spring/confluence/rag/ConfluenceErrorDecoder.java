@@ -0,0 +1,59 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import feign.FeignException;
+import feign.Response;
+import feign.RetryableException;
+import feign.codec.ErrorDecoder;
+
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collection;
+
+/**
+ * Makes throttling and server errors retryable. Confluence Cloud answers 429 (and sometimes 503) with a
+ * {@code Retry-After} header, in seconds or as an HTTP date, which the retryer then waits for instead of its own backoff.
+ */
+public class ConfluenceErrorDecoder implements ErrorDecoder {
+    private static final String RETRY_AFTER = "Retry-After";
+
+    private final ErrorDecoder delegate = new ErrorDecoder.Default();
+
+    @Override
+    public Exception decode(String methodKey, Response response) {
+        final var status = response.status();
+        if (status != 429 && status < 500) {
+            return delegate.decode(methodKey, response);
+        }
+
+        final var exception = FeignException.errorStatus(methodKey, response);
+        return new RetryableException(
+                status,
+                exception.getMessage(),
+                response.request().httpMethod(),
+                exception,
+                retryAfter(response),
+                response.request()
+        );
+    }
+
+    static Long retryAfter(Response response) {
+        // Feign keeps response headers in a case-insensitive map
+        final Collection<String> values = response.headers().get(RETRY_AFTER);
+        if (values == null || values.isEmpty()) {
+            return null;
+        }
+
+        final var value = values.iterator().next().strip();
+        try {
+            return Instant.now().plusSeconds(Long.parseLong(value)).toEpochMilli();
+        } catch (NumberFormatException e) {
+            try {
+                return ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            } catch (DateTimeParseException ignored) {
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,413 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs ingestion as a persisted job: the pages of all spaces are first recorded in a job table, then ingested in
+ * batches while every page's outcome, attempt count and last error are written back. A job that was interrupted by a
+ * restart is resumed from its remaining pages, failed pages are retried up to the max attempts, and a running job can
+ * be cancelled between batches. A job is leased to one instance at a time; shutting down stops it after its current
+ * batch and releases the lease, leaving it running for the next instance to resume.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ConfluenceIngestionJobs implements SmartLifecycle {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(30);
+
+    private final String owner = UUID.randomUUID().toString();
+    private ExecutorService jobExecutor;
+    private ScheduledExecutorService leaseExecutor;
+    private volatile RunningJob current;
+
+    private final @NonNull ConfluenceIngestor confluenceIngestor;
+    private final @NonNull ConfluenceSpaceCrawler spaceCrawler;
+    private final @NonNull IngestionJobStore jobStore;
+    private final @NonNull ConfluenceProperties confluenceProperties;
+    private final @NonNull IngestionJobProperties jobProperties;
+    private final @NonNull PostgresIngestionLock ingestionLock;
+
+    /**
+     * Resumes the latest job that did not finish, or starts a new one for all configured spaces. If a job is already
+     * running in this process, its completion is returned instead.
+     */
+    public synchronized CompletableFuture<IngestionJobProgress> submit() {
+        if (current != null && !current.completion().isDone()) {
+            return current.completion();
+        }
+        requireRunning();
+
+        final var job = jobStore.findLatestRunning().orElseGet(() -> jobStore.create(confluenceProperties.getSpaces()));
+        claim(job.jobId());
+        return run(job);
+    }
+
+    public synchronized CompletableFuture<IngestionJobProgress> resume(@NonNull String jobId) {
+        if (current != null && !current.completion().isDone()) {
+            throw new IllegalStateException("Ingestion job %s is still running".formatted(current.jobId()));
+        }
+        requireRunning();
+
+        final var job = jobStore.find(jobId).orElseThrow(() -> new IllegalArgumentException("Unknown ingestion job: " + jobId));
+        claim(jobId);
+        jobStore.updateStatus(jobId, IngestionJobStatus.RUNNING);
+        return run(job);
+    }
+
+    public boolean cancel() {
+        final var job = current;
+        if (job == null || job.completion().isDone()) {
+            return false;
+        }
+
+        log.info("⚙️ Cancelling ingestion job {} after its current batch", job.jobId());
+        job.cancelled().set(true);
+        return true;
+    }
+
+    public Optional<IngestionJobProgress> progress() {
+        return Optional.ofNullable(current).map(RunningJob::progress);
+    }
+
+    @Override
+    public synchronized void start() {
+        if (isRunning()) {
+            return;
+        }
+
+        // Created on every start, so the component can be stopped and started again like the sync scheduler
+        jobExecutor = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("confluence-ingestion-job").factory());
+        leaseExecutor = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("confluence-ingestion-job-lease").daemon().factory()
+        );
+        if (jobProperties.getResumeOnStartup()) {
+            jobStore.findLatestRunning().ifPresent(job -> {
+                if (jobStore.claim(job.jobId(), owner, jobProperties.getLease())) {
+                    log.info("⚙️ Resuming ingestion job {} that was interrupted", job.jobId());
+                    run(job);
+                } else {
+                    log.info("⚙️ Ingestion job {} is running on another instance", job.jobId());
+                }
+            });
+        }
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (!isRunning()) {
+            return;
+        }
+
+        // Stopping is not cancelling: the job stays running in the store and is resumed on the next start
+        final var job = current;
+        if (job != null && !job.completion().isDone()) {
+            log.info("⚙️ Stopping ingestion job {} after its current batch", job.jobId());
+            job.interrupted().set(true);
+        }
+
+        jobExecutor.shutdown();
+        try {
+            if (!jobExecutor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("⚙️ Ingestion job did not stop within {}, its lease expires on its own", SHUTDOWN_TIMEOUT);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        leaseExecutor.shutdownNow();
+        jobExecutor = null;
+        leaseExecutor = null;
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return jobExecutor != null && !jobExecutor.isShutdown();
+    }
+
+    private void requireRunning() {
+        if (!isRunning()) {
+            throw new IllegalStateException("Ingestion jobs are stopped");
+        }
+    }
+
+    private void claim(String jobId) {
+        if (!jobStore.claim(jobId, owner, jobProperties.getLease())) {
+            throw new IllegalStateException("Ingestion job %s is running on another instance".formatted(jobId));
+        }
+    }
+
+    private CompletableFuture<IngestionJobProgress> run(IngestionJob job) {
+        final var runningJob = new RunningJob(job.jobId());
+        current = runningJob;
+        // The lease is renewed well before it expires, so a slow batch never lets another instance take over
+        final var renewalPeriod = Math.max(jobProperties.getLease().toMillis() / 3, 1);
+        final var leaseRenewal = leaseExecutor.scheduleAtFixedRate(
+                () -> renewLease(runningJob),
+                renewalPeriod,
+                renewalPeriod,
+                TimeUnit.MILLISECONDS
+        );
+        jobExecutor.execute(() -> {
+            // A job never runs alongside a full ingestion or a sync; if it is stopped while waiting, it ends without work
+            try (final var ignored = ingestionLock.acquire("ingestion job " + job.jobId(), runningJob::stopped).orElse(null)) {
+                runningJob.completion().complete(execute(job, runningJob));
+            } catch (RuntimeException e) {
+                log.error("⚙️ Ingestion job {} failed", job.jobId(), e);
+                jobStore.updateStatus(job.jobId(), IngestionJobStatus.FAILED);
+                runningJob.status(IngestionJobStatus.FAILED);
+                runningJob.completion().completeExceptionally(e);
+            } finally {
+                leaseRenewal.cancel(false);
+                jobStore.release(job.jobId(), owner);
+            }
+        });
+        return runningJob.completion();
+    }
+
+    private void renewLease(RunningJob runningJob) {
+        try {
+            if (!jobStore.claim(runningJob.jobId(), owner, jobProperties.getLease())) {
+                log.warn("⚙️ Lost the lease on ingestion job {}, stopping it after its current batch", runningJob.jobId());
+                runningJob.interrupted().set(true);
+            }
+        } catch (RuntimeException e) {
+            // A failed renewal is retried next period, the lease only lapses if the database stays unreachable
+            log.warn("⚙️ Could not renew the lease on ingestion job {}", runningJob.jobId(), e);
+        }
+    }
+
+    private IngestionJobProgress execute(IngestionJob job, RunningJob runningJob) {
+        if (!job.enumerated() && !runningJob.stopped()) {
+            enumerate(job);
+        }
+
+        log.info("⚙️ Running ingestion job {} for spaces {}", job.jobId(), job.spaces());
+        var remaining = jobStore.findRemaining(job.jobId(), jobProperties.getMaxAttempts());
+        while (!remaining.isEmpty() && !runningJob.stopped()) {
+            runningJob.beginPass(jobStore.countPages(job.jobId()), remaining);
+            final var processedBefore = runningJob.pagesProcessed().sum();
+            ingest(job, remaining, runningJob);
+            if (runningJob.pagesProcessed().sum() == processedBefore && !runningJob.stopped()) {
+                // Without a single page outcome no attempt was counted either, retrying would loop forever
+                throw new IllegalStateException("Ingestion job %s made no progress".formatted(job.jobId()));
+            }
+            // Pages that failed this pass are retried in the next one until they run out of attempts
+            remaining = jobStore.findRemaining(job.jobId(), jobProperties.getMaxAttempts());
+        }
+
+        final var counts = jobStore.countPages(job.jobId());
+        runningJob.beginPass(counts, List.of());
+        if (runningJob.interrupted().get() && !runningJob.cancelled().get()) {
+            final var progress = runningJob.progress();
+            log.info("⚙️ Ingestion job {} stopped with {} of {} pages done, it resumes on the next start", job.jobId(), progress.pagesDone(), progress.pagesTotal());
+            return progress;
+        }
+
+        final var status = runningJob.cancelled().get()
+                ? IngestionJobStatus.CANCELLED
+                : counts.get(IngestionPageStatus.FAILED) > 0 ? IngestionJobStatus.FAILED : IngestionJobStatus.COMPLETED;
+        jobStore.updateStatus(job.jobId(), status);
+        runningJob.status(status);
+
+        final var progress = runningJob.progress();
+        log.info(
+                "⚙️ Ingestion job {} {} after {}: {} of {} pages done, {} failed",
+                job.jobId(), status, progress.elapsed(), progress.pagesDone(), progress.pagesTotal(), progress.pagesFailed()
+        );
+        return progress;
+    }
+
+    private void enumerate(IngestionJob job) {
+        log.info("⚙️ Enumerating pages of spaces {} for ingestion job {}", job.spaces(), job.jobId());
+        final var throughput = new IngestionThroughput();
+        for (final var spaceKey : job.spaces()) {
+            final var batch = new ArrayList<IngestionJobPage>();
+            spaceCrawler.crawl(spaceKey, throughput, page -> {
+                batch.add(IngestionJobPage.pending(spaceKey, page));
+                if (batch.size() >= jobProperties.getBatchSize()) {
+                    jobStore.addPages(job.jobId(), batch);
+                    batch.clear();
+                }
+            });
+            jobStore.addPages(job.jobId(), batch);
+        }
+
+        jobStore.markEnumerated(job.jobId());
+    }
+
+    private void ingest(IngestionJob job, List<IngestionJobPage> pages, RunningJob runningJob) {
+        final var pagesBySpace = new LinkedHashMap<String, List<ConfluenceDtos.PageSummary>>();
+        pages.forEach(page -> pagesBySpace.computeIfAbsent(page.spaceKey(), ignored -> new ArrayList<>()).add(page.toPageSummary()));
+
+        final var pageListener = new JobPageListener(job.jobId(), runningJob);
+        for (final var spaceEntry : pagesBySpace.entrySet()) {
+            final var spacePages = spaceEntry.getValue();
+            for (var from = 0; from < spacePages.size(); from += jobProperties.getBatchSize()) {
+                if (runningJob.stopped()) {
+                    return;
+                }
+
+                final var batch = spacePages.subList(from, Math.min(from + jobProperties.getBatchSize(), spacePages.size()));
+                try {
+                    confluenceIngestor.ingestPages(spaceEntry.getKey(), batch, pageListener).join();
+                } catch (CompletionException e) {
+                    // Failed pages are already recorded by the listener and retried in the next pass
+                    log.warn("⚙️ Ingestion job {}: {}", job.jobId(), e.getCause() == null ? e.getMessage() : e.getCause().getMessage());
+                }
+            }
+        }
+    }
+
+    @RequiredArgsConstructor
+    private class JobPageListener implements ConfluenceIngestionListener {
+        private final String jobId;
+        private final RunningJob runningJob;
+
+        @Override
+        public void onSegmentsStored(@NonNull String spaceKey, @NonNull String pageId, int segments) {
+            runningJob.chunks().add(segments);
+        }
+
+        @Override
+        public void onPageIngested(@NonNull String spaceKey, @NonNull String pageId) {
+            jobStore.updatePage(jobId, pageId, IngestionPageStatus.INGESTED, null);
+            runningJob.onPageDone(pageId, false);
+        }
+
+        @Override
+        public void onPageSkipped(@NonNull String spaceKey, @NonNull String pageId) {
+            jobStore.updatePage(jobId, pageId, IngestionPageStatus.SKIPPED, null);
+            runningJob.onPageDone(pageId, false);
+        }
+
+        @Override
+        public void onPageFailed(@NonNull String spaceKey, @NonNull String pageId, @NonNull Throwable error) {
+            jobStore.updatePage(jobId, pageId, IngestionPageStatus.FAILED, String.valueOf(error));
+            runningJob.onPageDone(pageId, true);
+        }
+    }
+
+    private static final class RunningJob {
+        private final String jobId;
+        private final CompletableFuture<IngestionJobProgress> completion = new CompletableFuture<>();
+        private final AtomicBoolean cancelled = new AtomicBoolean();
+        private final AtomicBoolean interrupted = new AtomicBoolean();
+        private final long startedAtNanos = System.nanoTime();
+        private final LongAdder pagesProcessed = new LongAdder();
+        private final LongAdder chunks = new LongAdder();
+        private volatile IngestionJobStatus status = IngestionJobStatus.RUNNING;
+
+        // Counts at the start of the current pass, plus what the pass changed so far
+        private volatile Map<IngestionPageStatus, Long> passCounts = Map.of();
+        private volatile Set<String> retrying = Set.of();
+        private final LongAdder passDone = new LongAdder();
+        private final LongAdder passFailed = new LongAdder();
+        private final LongAdder passRetried = new LongAdder();
+
+        private RunningJob(String jobId) {
+            this.jobId = jobId;
+        }
+
+        private void beginPass(Map<IngestionPageStatus, Long> counts, List<IngestionJobPage> remaining) {
+            final var retryingPages = ConcurrentHashMap.<String>newKeySet();
+            remaining.stream()
+                    .filter(page -> page.status() == IngestionPageStatus.FAILED)
+                    .forEach(page -> retryingPages.add(page.pageId()));
+            passDone.reset();
+            passFailed.reset();
+            passRetried.reset();
+            retrying = retryingPages;
+            passCounts = counts;
+        }
+
+        private void onPageDone(String pageId, boolean failed) {
+            pagesProcessed.increment();
+            // A retried page already counts as failed until this attempt settles it
+            if (retrying.remove(pageId)) {
+                passRetried.increment();
+            }
+            (failed ? passFailed : passDone).increment();
+        }
+
+        private IngestionJobProgress progress() {
+            final var counts = passCounts;
+            final var elapsed = Duration.ofNanos(System.nanoTime() - startedAtNanos);
+            final var seconds = Math.max(elapsed.toMillis() / 1_000.0, 0.001);
+            final var pagesPerSecond = pagesProcessed.sum() / seconds;
+
+            final var pagesTotal = counts.values().stream().mapToLong(Long::longValue).sum();
+            final var pagesDone = counts.getOrDefault(IngestionPageStatus.INGESTED, 0L)
+                    + counts.getOrDefault(IngestionPageStatus.SKIPPED, 0L)
+                    + passDone.sum();
+            final var pagesFailed = counts.getOrDefault(IngestionPageStatus.FAILED, 0L) - passRetried.sum() + passFailed.sum();
+            final var pagesRemaining = Math.max(pagesTotal - pagesDone - pagesFailed, 0);
+            final var eta = status != IngestionJobStatus.RUNNING || pagesPerSecond == 0
+                    ? null
+                    : Duration.ofMillis((long) (pagesRemaining / pagesPerSecond * 1_000));
+
+            return new IngestionJobProgress(
+                    jobId,
+                    status,
+                    pagesTotal,
+                    pagesDone,
+                    pagesFailed,
+                    chunks.sum(),
+                    elapsed,
+                    pagesPerSecond,
+                    chunks.sum() / seconds,
+                    eta
+            );
+        }
+
+        private String jobId() {
+            return jobId;
+        }
+
+        private CompletableFuture<IngestionJobProgress> completion() {
+            return completion;
+        }
+
+        private AtomicBoolean cancelled() {
+            return cancelled;
+        }
+
+        private AtomicBoolean interrupted() {
+            return interrupted;
+        }
+
+        private boolean stopped() {
+            return cancelled.get() || interrupted.get();
+        }
+
+        private LongAdder pagesProcessed() {
+            return pagesProcessed;
+        }
+
+        private LongAdder chunks() {
+            return chunks;
+        }
+
+        private void status(IngestionJobStatus status) {
+            this.status = status;
+        }
+    }
+}
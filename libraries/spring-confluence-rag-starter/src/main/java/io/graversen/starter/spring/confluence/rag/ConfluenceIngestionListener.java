@@ -0,0 +1,33 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+public interface ConfluenceIngestionListener {
+    default void onPageIngested(@NonNull String spaceKey, @NonNull String pageId) {
+
+    }
+
+    default void onSegmentsStored(@NonNull String spaceKey, @NonNull String pageId, int segments) {
+
+    }
+
+    default void onPageSkipped(@NonNull String spaceKey, @NonNull String pageId) {
+
+    }
+
+    default void onPageFailed(@NonNull String spaceKey, @NonNull String pageId, @NonNull Throwable error) {
+
+    }
+
+    default void onPageRemoved(@NonNull String spaceKey, @NonNull String pageId) {
+
+    }
+
+    default void onSpaceIngested(@NonNull String spaceKey) {
+
+    }
+
+    default void onIngestionCompleted() {
+
+    }
+}
@@ -1,64 +1,412 @@
 package io.graversen.starter.spring.confluence.rag;
 
 import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
 import dev.langchain4j.data.document.Metadata;
-import dev.langchain4j.store.embedding.EmbeddingStoreIngestor;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static io.graversen.starter.spring.confluence.rag.IngestionThroughput.Stage;
 
 @Slf4j
 @RequiredArgsConstructor
-public class ConfluenceIngestor {
+public class ConfluenceIngestor implements AutoCloseable {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+    private static final ConfluenceIngestionListener NO_PAGE_LISTENER = new ConfluenceIngestionListener() {
+    };
+
+    // Ingestion runs block on their spaces and pages, which must not tie up the common ForkJoinPool
+    private final ExecutorService ingestionExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
     private final @NonNull ConfluenceApi confluenceApi;
-    private final @NonNull EmbeddingStoreIngestor embeddingStoreIngestor;
+    private final @NonNull ConfluenceSpaceCrawler spaceCrawler;
+    private final @NonNull EmbeddingModel embeddingModel;
+    private final @NonNull EmbeddingStore<TextSegment> embeddingStore;
+    private final @NonNull DocumentSplitter documentSplitter;
+    private final @NonNull String splitterConfiguration;
+    private final @NonNull TokenCountEstimator tokenCountEstimator;
+    private final @NonNull ConfluencePageStateStore pageStateStore;
     private final @NonNull ConfluenceProperties confluenceProperties;
+    private final @NonNull IngestionProperties ingestionProperties;
     private final @NonNull ConfluenceContentFormatter contentFormatter;
     private final @NonNull ConfluenceMetadataExtractor metadataExtractor;
+    private final @NonNull List<ConfluenceIngestionListener> ingestionListeners;
+    private final @NonNull ConfluenceRagObservability observability;
+    private final @NonNull PostgresIngestionLock ingestionLock;
+    private final ConfluenceAttachmentIngestor attachmentIngestor;
 
+    /**
+     * Ingests all configured spaces. A sync or job that is in progress on any instance is waited for first.
+     */
     public CompletableFuture<Void> ingest() {
         return CompletableFuture.runAsync(() -> {
-            final var startedAt = Instant.now();
-            log.info("⚙️ Starting ingestion of Confluence spaces {} at {}", confluenceProperties.getSpaces(), confluenceProperties.getBaseUrl());
-            confluenceProperties.getSpaces().forEach(ingestConfluenceSpace());
-            log.info("⚙️ Ingestion complete after {} ms", Duration.between(startedAt, Instant.now()).toMillis());
+            try (final var ignored = ingestionLock.acquire("full ingestion", ingestionExecutor::isShutdown)
+                    .orElseThrow(() -> new CancellationException("Ingestion was stopped before it started"))) {
+                log.info("⚙️ Starting ingestion of Confluence spaces {} at {}", confluenceProperties.getSpaces(), confluenceProperties.getBaseUrl());
+                ingestSpaces(confluenceProperties.getSpaces(), spaceCrawler::crawl, NO_PAGE_LISTENER);
+            }
+        }, ingestionExecutor);
+    }
+
+    /**
+     * Ingests the given pages of a space, e.g. the pages a change feed reported as modified. Unchanged pages are still
+     * skipped by their fingerprint. Completes exceptionally if any page could not be ingested. This does not take the
+     * ingestion lock, the change feed and ingestion jobs hold it around their calls.
+     */
+    public CompletableFuture<Void> ingestPages(@NonNull String spaceKey, @NonNull List<ConfluenceDtos.PageSummary> pages) {
+        return ingestPages(spaceKey, pages, NO_PAGE_LISTENER);
+    }
+
+    /**
+     * Like {@link #ingestPages(String, List)}, additionally reporting the outcome of every page to {@code pageListener}.
+     */
+    public CompletableFuture<Void> ingestPages(
+            @NonNull String spaceKey,
+            @NonNull List<ConfluenceDtos.PageSummary> pages,
+            @NonNull ConfluenceIngestionListener pageListener
+    ) {
+        return CompletableFuture.runAsync(() -> {
+            log.info("⚙️ Starting ingestion of {} Confluence pages from space: {}", pages.size(), spaceKey);
+            final PageSource pageSource = (ignored, throughput, pageConsumer) -> {
+                pages.forEach(pageConsumer);
+                return pages.size();
+            };
+            final var failures = ingestSpaces(List.of(spaceKey), pageSource, pageListener);
+            if (failures > 0) {
+                throw new IllegalStateException("Failed to ingest %d of %d pages from space '%s'".formatted(failures, pages.size(), spaceKey));
+            }
+        }, ingestionExecutor);
+    }
+
+    public void removePages(@NonNull String spaceKey, @NonNull Collection<String> pageIds) {
+        if (pageIds.isEmpty()) {
+            return;
+        }
+
+        embeddingStore.removeAll(metadataKey("pageId").isIn(pageIds));
+        pageIds.forEach(pageId -> {
+            pageStateStore.delete(pageId);
+            notifyListeners(listener -> listener.onPageRemoved(spaceKey, pageId));
         });
+        log.info("⚙️ Removed {} pages from space '{}'", pageIds.size(), spaceKey);
     }
 
-    private Consumer<String> ingestConfluenceSpace() {
-        return spaceKey -> {
-            log.info("⚙️ Starting ingestion of Confluence pages from space: {}", spaceKey);
-            final var pagesResponse = confluenceApi.getPages(spaceKey, 100, 0);
-            if (pagesResponse.results().isEmpty()) {
-                log.warn("⚙️ No pages found in space '{}'. Skipping ingestion.", spaceKey);
+    /**
+     * Removes all segments of a space, e.g. before re-ingesting it from scratch. With space partitioning this drops the
+     * space's partition instead of deleting its rows one by one.
+     */
+    public void removeSpace(@NonNull String spaceKey) {
+        final var pageIds = pageStateStore.findBySpace(spaceKey).keySet();
+        embeddingStore.removeAll(metadataKey("spaceKey").isEqualTo(spaceKey));
+        pageIds.forEach(pageId -> {
+            pageStateStore.delete(pageId);
+            notifyListeners(listener -> listener.onPageRemoved(spaceKey, pageId));
+        });
+        log.info("⚙️ Removed space '{}' ({} known pages)", spaceKey, pageIds.size());
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        // Running ingestions get a moment to finish their pages, anything left is interrupted rather than outliving the context
+        ingestionExecutor.shutdown();
+        if (!ingestionExecutor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("⚙️ Interrupting ingestion that did not finish within {}", SHUTDOWN_TIMEOUT);
+            ingestionExecutor.shutdownNow();
+        }
+    }
+
+    private long ingestSpaces(List<String> spaceKeys, PageSource pageSource, ConfluenceIngestionListener pageListener) {
+        final var startedAt = Instant.now();
+        final var throughput = new IngestionThroughput();
+        final var failures = new LongAdder();
+
+        try (final var spaceExecutor = newExecutor("confluence-space-", ingestionProperties.getSpaceConcurrency());
+             final var pageExecutor = newExecutor("confluence-page-", ingestionProperties.getConcurrency());
+             final var embeddingPipeline = new SegmentEmbeddingPipeline(embeddingModel, embeddingStore, tokenCountEstimator, ingestionProperties, throughput, observability)) {
+            final var spaceIngestions = spaceKeys.stream()
+                    .map(spaceKey -> CompletableFuture.runAsync(
+                            () -> failures.add(ingestConfluenceSpace(spaceKey, pageSource, pageListener, pageExecutor, embeddingPipeline, throughput)),
+                            spaceExecutor
+                    ))
+                    .toArray(CompletableFuture[]::new);
+            CompletableFuture.allOf(spaceIngestions).join();
+        }
+
+        notifyListeners(ConfluenceIngestionListener::onIngestionCompleted);
+
+        log.info("⚙️ Ingestion complete after {} ms", Duration.between(startedAt, Instant.now()).toMillis());
+        log.info("⚙️ Ingestion throughput: {}", throughput.summary());
+        return failures.sum();
+    }
+
+    private long ingestConfluenceSpace(
+            String spaceKey,
+            PageSource pageSource,
+            ConfluenceIngestionListener pageListener,
+            ExecutorService pageExecutor,
+            SegmentEmbeddingPipeline embeddingPipeline,
+            IngestionThroughput throughput
+    ) {
+        log.info("⚙️ Starting ingestion of Confluence pages from space: {}", spaceKey);
+        final var pageSubmissions = new ArrayList<CompletableFuture<CompletableFuture<Void>>>();
+        final var pageIngestions = new ArrayList<CompletableFuture<Void>>();
+        final var failures = new LongAdder();
+        final var unchanged = new LongAdder();
+        final Map<String, PageFingerprint> fingerprints = ingestionProperties.getIncremental()
+                ? pageStateStore.findBySpace(spaceKey)
+                : Map.of();
+
+        final var crawled = pageSource.pages(spaceKey, throughput, page -> {
+            final var fingerprint = fingerprints.get(page.id());
+            if (fingerprint != null && fingerprint.isCurrent(page, configurationHash())) {
+                log.debug("⚙️ Skipping unchanged Confluence page: {} ({})", page.title(), page.id());
+                unchanged.increment();
+                notifyListeners(pageListener, listener -> listener.onPageSkipped(spaceKey, page.id()));
+
+                if (attachmentIngestor != null && attachmentIngestor.checksUnchangedPages()) {
+                    final Supplier<Metadata> pageMetadata = () -> throughput.measure(
+                            Stage.FETCH,
+                            () -> pageMetadata(spaceKey, confluenceApi.getPage(page.id()))
+                    );
+                    final var attachmentSubmission = CompletableFuture.supplyAsync(
+                            () -> ingestAttachmentsOfSkippedPage(spaceKey, page.id(), pageMetadata, embeddingPipeline, throughput),
+                            pageExecutor
+                    );
+                    pageSubmissions.add(attachmentSubmission);
+                    pageIngestions.add(
+                            attachmentSubmission.thenCompose(Function.identity())
+                                    .exceptionally(throwable -> {
+                                        // The page itself is unchanged, its attachments are checked again on the next run
+                                        log.warn("⚙️ Failed to ingest attachments of Confluence page: {} ({})", page.title(), page.id(), throwable);
+                                        return null;
+                                    })
+                    );
+                }
+                return;
             }
-            pagesResponse.results().forEach(ingestConfluencePage());
-        };
+
+            // Pages are handed to the embedding pipeline without waiting for their batch, so a worker never blocks on a
+            // batch that can only fill up once other pages have been submitted
+            final var pageSubmission = CompletableFuture.supplyAsync(
+                    () -> ingestConfluencePage(spaceKey, page, fingerprint, unchanged, pageListener, embeddingPipeline, throughput),
+                    pageExecutor
+            );
+            pageSubmissions.add(pageSubmission);
+            pageIngestions.add(
+                    pageSubmission.thenCompose(Function.identity())
+                            .exceptionally(throwable -> {
+                                failures.increment();
+                                log.error("⚙️ Failed to ingest Confluence page: {} ({})", page.title(), page.id(), throwable);
+                                final var cause = throwable instanceof CompletionException && throwable.getCause() != null
+                                        ? throwable.getCause()
+                                        : throwable;
+                                notifyListeners(pageListener, listener -> listener.onPageFailed(spaceKey, page.id(), cause));
+                                return null;
+                            })
+            );
+        });
+
+        if (crawled == 0) {
+            log.warn("⚙️ No pages found in space '{}'. Skipping ingestion.", spaceKey);
+            return 0;
+        }
+
+        CompletableFuture.allOf(pageSubmissions.toArray(CompletableFuture[]::new))
+                .handle((ignored, throwable) -> null)
+                .join();
+        embeddingPipeline.flush();
+        CompletableFuture.allOf(pageIngestions.toArray(CompletableFuture[]::new)).join();
+        notifyListeners(listener -> listener.onSpaceIngested(spaceKey));
+
+        log.info(
+                "⚙️ Ingested {} of {} pages from space '{}' ({} unchanged, {} failed)",
+                crawled - failures.sum() - unchanged.sum(), crawled, spaceKey, unchanged.sum(), failures.sum()
+        );
+        return failures.sum();
     }
 
-    private Consumer<ConfluenceDtos.PageSummary> ingestConfluencePage() {
-        return page -> {
-            log.info("⚙️ Ingesting Confluence page: {} ({})", page.title(), page.id());
-            final var pageResponse = confluenceApi.getPage(page.id());
+    private CompletableFuture<Void> ingestConfluencePage(
+            String spaceKey,
+            ConfluenceDtos.PageSummary page,
+            PageFingerprint fingerprint,
+            LongAdder unchanged,
+            ConfluenceIngestionListener pageListener,
+            SegmentEmbeddingPipeline embeddingPipeline,
+            IngestionThroughput throughput
+    ) {
+        log.info("⚙️ Ingesting Confluence page: {} ({})", page.title(), page.id());
+        final var pageResponse = throughput.measure(Stage.FETCH, () -> confluenceApi.getPage(page.id()));
+
+        final var pageBody = pageResponse.body().storage().value();
+
+        if (pageBody != null && !pageBody.isBlank()) {
+            final var pageBodyFormatted = throughput.measure(Stage.FORMAT, () -> contentFormatter.formatContent(pageBody));
+            final var metadata = pageMetadata(spaceKey, pageResponse);
+            // Segments carry the page's metadata and are cut by the splitter, so a change to either re-ingests the page
+            // just like a change to its content
+            final var contentHash = ContentHashes.sha256Hex(String.join(
+                    "\n",
+                    pageBodyFormatted,
+                    new TreeMap<>(metadata.toMap()).toString(),
+                    splitterConfiguration
+            ));
+            final var pageVersion = pageResponse.version() == null || pageResponse.version().number() == null
+                    ? 0
+                    : pageResponse.version().number();
+            final var newFingerprint = new PageFingerprint(
+                    pageResponse.id(),
+                    spaceKey,
+                    pageVersion,
+                    contentHash,
+                    configurationHash(),
+                    PageFingerprint.metadataHash(pageResponse.ancestors(), pageResponse.metadata())
+            );
+
+            if (ingestionProperties.getIncremental() && fingerprint != null && fingerprint.contentHash().equals(contentHash)) {
+                log.debug("⚙️ Content of Confluence page {} ({}) is unchanged at version {}", page.title(), page.id(), pageVersion);
+                pageStateStore.save(newFingerprint);
+                unchanged.increment();
+                notifyListeners(pageListener, listener -> listener.onPageSkipped(spaceKey, pageResponse.id()));
+                return ingestAttachmentsOfSkippedPage(spaceKey, pageResponse.id(), () -> metadata, embeddingPipeline, throughput);
+            }
+
+            final var revision = UUID.randomUUID().toString();
+            final var document = Document.from(pageBodyFormatted, metadata.copy().put("revision", revision));
+            final var segments = throughput.measure(Stage.SPLIT, () -> documentSplitter.split(document));
 
-            final var pageBody = pageResponse.body().storage().value();
+            final var pageStored = embeddingPipeline.submit(segments)
+                    .whenComplete((ignored, throwable) -> {
+                        if (throwable != null) {
+                            removeRevision(pageResponse.id(), revision);
+                        }
+                    })
+                    .thenRun(() -> {
+                        // The previous revision is only replaced once the new one is stored, so the page stays
+                        // searchable throughout and keeps its old segments if the new ones fail. The page's
+                        // attachments are replaced on their own versions, not on the page's
+                        if (ingestionProperties.getIncremental()) {
+                            embeddingStore.removeAll(metadataKey("pageId").isEqualTo(pageResponse.id())
+                                    .and(metadataKey("contentType").isNotEqualTo("attachment"))
+                                    .and(metadataKey("revision").isNotEqualTo(revision)));
+                        }
+                    });
+            final var attachmentsStored = attachmentIngestor == null
+                    ? CompletableFuture.completedFuture(0)
+                    : attachmentIngestor.ingestAttachments(pageResponse.id(), () -> metadata, embeddingPipeline, throughput);
+            return CompletableFuture.allOf(pageStored, attachmentsStored).thenRun(() -> {
+                if (ingestionProperties.getIncremental()) {
+                    pageStateStore.save(newFingerprint);
+                }
+                notifyListeners(pageListener, listener -> listener.onSegmentsStored(spaceKey, pageResponse.id(), segments.size()));
+                notifyListeners(pageListener, listener -> listener.onPageIngested(spaceKey, pageResponse.id()));
+            });
+        } else {
+            log.warn("⚙️ No content found for page: {}", pageResponse.title());
+            notifyListeners(pageListener, listener -> listener.onPageSkipped(spaceKey, pageResponse.id()));
+            return ingestAttachmentsOfSkippedPage(spaceKey, pageResponse.id(), () -> pageMetadata(spaceKey, pageResponse), embeddingPipeline, throughput);
+        }
+    }
 
-            if (pageBody != null && !pageBody.isBlank()) {
-                final var pageBodyFormatted = contentFormatter.formatContent(pageBody);
+    private void removeRevision(String pageId, String revision) {
+        try {
+            embeddingStore.removeAll(metadataKey("pageId").isEqualTo(pageId)
+                    .and(metadataKey("contentType").isNotEqualTo("attachment"))
+                    .and(metadataKey("revision").isEqualTo(revision)));
+        } catch (RuntimeException e) {
+            log.warn("⚙️ Could not remove the partially stored segments of page {}", pageId, e);
+        }
+    }
 
-                final var metadataMap = metadataExtractor.extractMetadata(pageResponse);
-                final var metadata = Metadata.from(metadataMap);
+    private String configurationHash() {
+        return ContentHashes.sha256Hex(splitterConfiguration);
+    }
+
+    private Metadata pageMetadata(String spaceKey, ConfluenceDtos.PageResponse pageResponse) {
+        final var metadata = Metadata.from(metadataExtractor.extractMetadata(pageResponse));
+        // Space filters and partitions rely on the space key, whichever metadata extractor is used
+        if (!metadata.containsKey("spaceKey")) {
+            metadata.put("spaceKey", spaceKey);
+        }
+        return metadata;
+    }
 
-                final var document = Document.from(pageBodyFormatted, metadata);
-                embeddingStoreIngestor.ingest(document);
-            } else {
-                log.warn("⚙️ No content found for page: {}", pageResponse.title());
+    private CompletableFuture<Void> ingestAttachmentsOfSkippedPage(
+            String spaceKey,
+            String pageId,
+            Supplier<Metadata> pageMetadata,
+            SegmentEmbeddingPipeline embeddingPipeline,
+            IngestionThroughput throughput
+    ) {
+        if (attachmentIngestor == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        // Attachments can be added or updated without a new version of their page. The page's metadata is only
+        // needed, and for unchanged pages only fetched, if one of them has changed
+        final var lazyPageMetadata = new AtomicReference<Metadata>();
+        final Supplier<Metadata> memoizedPageMetadata = () -> {
+            if (lazyPageMetadata.get() == null) {
+                lazyPageMetadata.set(pageMetadata.get());
             }
+            return lazyPageMetadata.get();
         };
+        return attachmentIngestor.ingestAttachments(pageId, memoizedPageMetadata, embeddingPipeline, throughput).thenAccept(changed -> {
+            // The page was reported as skipped, only the listeners caching its content need to know
+            if (changed > 0) {
+                notifyListeners(listener -> listener.onPageIngested(spaceKey, pageId));
+            }
+        });
+    }
+
+    private void notifyListeners(Consumer<ConfluenceIngestionListener> notification) {
+        ingestionListeners.forEach(listener -> notifyListener(listener, notification));
+    }
+
+    private void notifyListeners(ConfluenceIngestionListener pageListener, Consumer<ConfluenceIngestionListener> notification) {
+        notifyListeners(notification);
+        notifyListener(pageListener, notification);
+    }
+
+    private void notifyListener(ConfluenceIngestionListener listener, Consumer<ConfluenceIngestionListener> notification) {
+        try {
+            notification.accept(listener);
+        } catch (RuntimeException e) {
+            log.warn("⚙️ Ingestion listener {} failed", listener.getClass().getSimpleName(), e);
+        }
+    }
+
+    private ExecutorService newExecutor(String threadNamePrefix, int concurrency) {
+        return Executors.newFixedThreadPool(Math.max(concurrency, 1), Thread.ofVirtual().name(threadNamePrefix, 0).factory());
+    }
+
+    @FunctionalInterface
+    private interface PageSource {
+        int pages(String spaceKey, IngestionThroughput throughput, Consumer<ConfluenceDtos.PageSummary> pageConsumer);
     }
 }
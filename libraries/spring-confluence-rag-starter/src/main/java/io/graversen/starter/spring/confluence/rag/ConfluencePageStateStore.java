@@ -0,0 +1,27 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+import java.util.Map;
+
+public interface ConfluencePageStateStore {
+    Map<String, PageFingerprint> findBySpace(@NonNull String spaceKey);
+
+    void save(@NonNull PageFingerprint pageFingerprint);
+
+    /**
+     * Deletes the state of a page, including the state of its attachments.
+     */
+    void delete(@NonNull String pageId);
+
+    // Stores without attachment state treat every attachment as new, like pages without incremental ingestion
+    default Map<String, AttachmentFingerprint> findAttachments(@NonNull String pageId) {
+        return Map.of();
+    }
+
+    default void saveAttachment(@NonNull AttachmentFingerprint attachmentFingerprint) {
+    }
+
+    default void deleteAttachment(@NonNull String attachmentId) {
+    }
+}
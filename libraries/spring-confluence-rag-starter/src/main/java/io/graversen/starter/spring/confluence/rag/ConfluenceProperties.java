@@ -2,6 +2,7 @@ package io.graversen.starter.spring.confluence.rag;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 import java.util.List;
 
@@ -12,4 +13,7 @@ public class ConfluenceProperties {
     private String username;
     private String apiKey;
     private List<String> spaces;
+
+    @NestedConfigurationProperty
+    private ConfluenceClientProperties client = new ConfluenceClientProperties();
 }
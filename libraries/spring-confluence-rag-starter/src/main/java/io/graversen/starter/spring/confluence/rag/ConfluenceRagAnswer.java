@@ -0,0 +1,6 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import java.util.List;
+
+public record ConfluenceRagAnswer(String answer, List<ConfluenceCitation> citations, boolean cached) {
+}
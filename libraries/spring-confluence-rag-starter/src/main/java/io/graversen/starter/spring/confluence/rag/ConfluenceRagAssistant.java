@@ -0,0 +1,81 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.chain.ConversationalRetrievalChain;
+import dev.langchain4j.data.message.AiMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.chat.ChatModel;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.query.Metadata;
+import dev.langchain4j.rag.query.Query;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+@RequiredArgsConstructor
+public class ConfluenceRagAssistant {
+    private final @NonNull ChatModel chatModel;
+    private final @NonNull RetrievalAugmentor retrievalAugmentor;
+    private final @NonNull ConversationChatMemoryProvider chatMemoryProvider;
+    private final AnswerCache answerCache;
+
+    public String ask(@NonNull Object conversationId, @NonNull String question) {
+        return answer(conversationId, question).answer();
+    }
+
+    public ConfluenceRagAnswer answer(@NonNull Object conversationId, @NonNull String question) {
+        final var turn = chatMemoryProvider.turn(conversationId);
+        turn.acquireUninterruptibly();
+        try {
+            return answerInTurn(conversationId, question);
+        } finally {
+            turn.release();
+        }
+    }
+
+    public void forget(@NonNull Object conversationId) {
+        chatMemoryProvider.forget(conversationId);
+    }
+
+    private ConfluenceRagAnswer answerInTurn(Object conversationId, String question) {
+        final var memory = chatMemoryProvider.get(conversationId);
+        if (answerCache == null) {
+            return generate(memory, question);
+        }
+
+        // A follow-up question means whatever the earlier turns established, so only opening questions share answers
+        if (memory.messages().stream().anyMatch(UserMessage.class::isInstance)) {
+            answerCache.recordBypass();
+            return generate(memory, question);
+        }
+
+        final var userMessage = UserMessage.from(question);
+        final var key = answerCache.key(Query.from(question, Metadata.from(userMessage, conversationId, memory.messages())));
+        final var answer = answerCache.answer(key, () -> generate(memory, question));
+        if (answer.cached()) {
+            // Generated answers went through the chain, which already added the turn to the memory
+            memory.add(userMessage);
+            memory.add(AiMessage.from(answer.answer()));
+        }
+        return answer;
+    }
+
+    private ConfluenceRagAnswer generate(ChatMemory memory, String question) {
+        final var contents = new AtomicReference<List<Content>>(List.of());
+        // Chains are cheap to assemble; the conversation state lives in the memory provided for this conversation
+        final var chain = ConversationalRetrievalChain.builder()
+                .chatModel(chatModel)
+                .chatMemory(memory)
+                .retrievalAugmentor(augmentationRequest -> {
+                    final var augmentationResult = retrievalAugmentor.augment(augmentationRequest);
+                    contents.set(augmentationResult.contents());
+                    return augmentationResult;
+                })
+                .build();
+        final var answer = chain.execute(question);
+        return new ConfluenceRagAnswer(answer, ConfluenceCitation.from(contents.get()), false);
+    }
+}
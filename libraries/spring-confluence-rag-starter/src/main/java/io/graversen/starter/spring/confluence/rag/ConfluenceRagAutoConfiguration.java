@@ -1,12 +1,29 @@
 package io.graversen.starter.spring.confluence.rag;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 
+@Slf4j
 @Configuration
 @EnableConfigurationProperties({SpringConfluenceRagProperties.class})
 @Import({ConfluenceConfiguration.class, AiRagConfiguration.class})
 public class ConfluenceRagAutoConfiguration {
+    @Bean
+    @ConditionalOnMissingBean
+    public ConfluenceRagObservability confluenceRagObservability(
+            ObjectProvider<ObservationRegistry> observationRegistry,
+            ObjectProvider<MeterRegistry> meterRegistry
+    ) {
+        final var observability = ConfluenceRagObservability.of(observationRegistry.getIfAvailable(), meterRegistry.getIfAvailable());
 
+        log.info("✅ Initialized Confluence RAG Observability");
+        return observability;
+    }
 }
@@ -0,0 +1,42 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import javax.sql.DataSource;
+
+@Slf4j
+@Getter
+@RequiredArgsConstructor
+public class ConfluenceRagDataSource implements AutoCloseable {
+    private final @NonNull DataSource dataSource;
+    private final @NonNull DataSource queryDataSource;
+
+    public ConfluenceRagDataSource(@NonNull DataSource dataSource) {
+        this(dataSource, dataSource);
+    }
+
+    public boolean hasSeparateQueryDataSource() {
+        return dataSource != queryDataSource;
+    }
+
+    @Override
+    public void close() {
+        close(dataSource);
+        if (hasSeparateQueryDataSource()) {
+            close(queryDataSource);
+        }
+    }
+
+    private void close(DataSource pool) {
+        if (pool instanceof AutoCloseable closeable) {
+            try {
+                closeable.close();
+            } catch (Exception e) {
+                log.warn("Could not close data source {}", pool, e);
+            }
+        }
+    }
+}
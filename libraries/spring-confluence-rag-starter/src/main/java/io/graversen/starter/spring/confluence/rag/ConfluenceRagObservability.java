@@ -0,0 +1,68 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import io.micrometer.common.KeyValues;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.observation.DefaultMeterObservationHandler;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.function.Supplier;
+
+@Getter
+@RequiredArgsConstructor
+public class ConfluenceRagObservability {
+    public static final String PREFIX = "confluence.rag";
+
+    private final @NonNull ObservationRegistry observationRegistry;
+    private final @NonNull MeterRegistry meterRegistry;
+
+    public static ConfluenceRagObservability noop() {
+        return new ConfluenceRagObservability(ObservationRegistry.NOOP, new CompositeMeterRegistry());
+    }
+
+    public static ConfluenceRagObservability of(ObservationRegistry observationRegistry, MeterRegistry meterRegistry) {
+        if (meterRegistry == null) {
+            return new ConfluenceRagObservability(observationRegistry == null ? ObservationRegistry.NOOP : observationRegistry, new CompositeMeterRegistry());
+        }
+
+        if (observationRegistry == null) {
+            // Without an application wide registry the observations only feed timers, there is nothing to export spans to
+            final var meterOnlyRegistry = ObservationRegistry.create();
+            meterOnlyRegistry.observationConfig().observationHandler(new DefaultMeterObservationHandler(meterRegistry));
+            return new ConfluenceRagObservability(meterOnlyRegistry, meterRegistry);
+        }
+
+        return new ConfluenceRagObservability(observationRegistry, meterRegistry);
+    }
+
+    public <T> T observe(@NonNull String name, @NonNull Supplier<T> operation, String... lowCardinalityKeyValues) {
+        return observation(name, lowCardinalityKeyValues).observe(operation);
+    }
+
+    public void observe(@NonNull String name, @NonNull Runnable operation, String... lowCardinalityKeyValues) {
+        observation(name, lowCardinalityKeyValues).observe(operation);
+    }
+
+    public Observation observation(@NonNull String name, String... lowCardinalityKeyValues) {
+        return Observation.createNotStarted(metricName(name), observationRegistry)
+                .lowCardinalityKeyValues(KeyValues.of(lowCardinalityKeyValues));
+    }
+
+    public Counter counter(@NonNull String name, String... tags) {
+        return meterRegistry.counter(metricName(name), tags);
+    }
+
+    public DistributionSummary summary(@NonNull String name, String... tags) {
+        return meterRegistry.summary(metricName(name), tags);
+    }
+
+    public static String metricName(String name) {
+        return PREFIX + "." + name;
+    }
+}
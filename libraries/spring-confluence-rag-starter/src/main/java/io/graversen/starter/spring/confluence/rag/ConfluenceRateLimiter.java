@@ -0,0 +1,47 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import feign.RequestInterceptor;
+import feign.RequestTemplate;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Token bucket shared by all Confluence requests, including retries. Pacing requests on our side keeps parallel
+ * crawling under the tenant's rate limit, instead of finding the limit through 429s and backing off.
+ */
+public class ConfluenceRateLimiter implements RequestInterceptor {
+    private final double permitsPerNano;
+    private final double capacity;
+    private double tokens;
+    private long refilledAtNanos;
+
+    public ConfluenceRateLimiter(double requestsPerSecond, int burst) {
+        if (requestsPerSecond <= 0) {
+            throw new IllegalArgumentException("Requests per second must be positive: " + requestsPerSecond);
+        }
+        this.permitsPerNano = requestsPerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.capacity = Math.max(burst, 1);
+        this.tokens = capacity;
+        this.refilledAtNanos = System.nanoTime();
+    }
+
+    @Override
+    public void apply(RequestTemplate template) {
+        final var waitNanos = reserve();
+        if (waitNanos > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+    }
+
+    private synchronized long reserve() {
+        final var now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - refilledAtNanos) * permitsPerNano);
+        refilledAtNanos = now;
+
+        // Taking the token up front, even into debt, queues concurrent callers behind each other instead of having
+        // them all wake up and race for the same token
+        tokens -= 1;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens / permitsPerNano);
+    }
+}
@@ -0,0 +1,317 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.document.splitter.DocumentSplitters;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Splits formatted Confluence pages along their structure: a segment never spans two sections, and tables and code
+ * blocks are only cut when they alone exceed the segment size (tables by rows, repeating the header). Overlap is only
+ * added between segments of a section that does not fit into one segment. Each segment carries its section path, e.g.
+ * "Page &gt; Heading &gt; Subheading", as {@code sectionPath} metadata.
+ */
+public class ConfluenceSectionSplitter implements DocumentSplitter {
+    public static final String SECTION_PATH = "sectionPath";
+
+    private static final Pattern ATX_HEADING = Pattern.compile("^ {0,3}(#{1,6})\\s+(.*?)\\s*#*\\s*$");
+    private static final Pattern SETEXT_H1 = Pattern.compile("^ {0,3}=+\\s*$");
+    private static final Pattern SETEXT_H2 = Pattern.compile("^ {0,3}-+\\s*$");
+    private static final Pattern TABLE_SEPARATOR = Pattern.compile("^\\s*\\|?\\s*:?-{3,}.*$");
+    private static final String SEPARATOR = "\n\n";
+
+    private final int maxSegmentSize;
+    private final int maxOverlapSize;
+    // One splitter per block size, which differs with the length of the heading each segment repeats
+    private final Map<Integer, DocumentSplitter> oversizedBlockSplitters = new ConcurrentHashMap<>();
+
+    public ConfluenceSectionSplitter(int maxSegmentSize, int maxOverlapSize) {
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxOverlapSize = maxOverlapSize;
+    }
+
+    @Override
+    public List<TextSegment> split(@NonNull Document document) {
+        final var pageTitle = document.metadata().getString("pageTitle");
+        final var headings = new ArrayDeque<Heading>();
+        final var segments = new ArrayList<TextSegment>();
+        var chunk = new Chunk(null);
+
+        for (final var block : blocks(document.text())) {
+            if (block.kind() == BlockKind.HEADING) {
+                emit(chunk, document, pageTitle, headings, segments);
+                while (!headings.isEmpty() && headings.peek().level() >= block.level()) {
+                    headings.pop();
+                }
+                headings.push(new Heading(block.level(), block.heading()));
+                chunk = new Chunk(block.text());
+                continue;
+            }
+
+            // Every segment of a section starts with its heading, which leaves less room for the block itself
+            final var maxBlockSize = Math.max(maxSegmentSize - chunk.headingSize(), maxSegmentSize / 2);
+            final var oversized = block.text().length() > maxBlockSize;
+            for (final var piece : oversized ? splitOversized(block, maxBlockSize) : List.of(block.text())) {
+                if (chunk.hasContent() && chunk.size() + SEPARATOR.length() + piece.length() > maxSegmentSize) {
+                    emit(chunk, document, pageTitle, headings, segments);
+                    chunk = chunk.continuation(maxOverlapSize, maxSegmentSize - piece.length());
+                }
+                chunk.add(piece, !oversized);
+            }
+        }
+
+        emit(chunk, document, pageTitle, headings, segments);
+        return segments;
+    }
+
+    private void emit(Chunk chunk, Document document, String pageTitle, Deque<Heading> headings, List<TextSegment> segments) {
+        if (!chunk.hasContent()) {
+            return;
+        }
+
+        final var sectionPath = new ArrayList<String>();
+        if (pageTitle != null && !pageTitle.isBlank()) {
+            sectionPath.add(pageTitle);
+        }
+        headings.descendingIterator().forEachRemaining(heading -> sectionPath.add(heading.text()));
+
+        final var metadata = document.metadata().copy()
+                .put("index", String.valueOf(segments.size()))
+                .put(SECTION_PATH, String.join(" > ", sectionPath));
+        segments.add(TextSegment.from(chunk.text(), metadata));
+    }
+
+    private List<String> splitOversized(Block block, int maxSize) {
+        return switch (block.kind()) {
+            case TABLE -> splitTable(block.text(), maxSize);
+            case CODE -> splitCode(block.text(), maxSize);
+            default -> splitText(block.text(), maxSize);
+        };
+    }
+
+    private List<String> splitTable(String table, int maxSize) {
+        final var lines = table.split("\n");
+        final var headerLines = lines.length > 1 && TABLE_SEPARATOR.matcher(lines[1]).matches() ? 2 : 1;
+        final var header = String.join("\n", List.of(lines).subList(0, headerLines));
+
+        final var pieces = new ArrayList<String>();
+        final var piece = new StringBuilder(header);
+        for (var i = headerLines; i < lines.length; i++) {
+            if (piece.length() > header.length() && piece.length() + 1 + lines[i].length() > maxSize) {
+                pieces.add(piece.toString());
+                piece.setLength(0);
+                piece.append(header);
+            }
+            if (header.length() + 1 + lines[i].length() > maxSize) {
+                // A single row larger than a segment cannot keep its header, cut it like any other text
+                pieces.addAll(splitText(lines[i], maxSize));
+                continue;
+            }
+            piece.append('\n').append(lines[i]);
+        }
+        if (piece.length() > header.length()) {
+            pieces.add(piece.toString());
+        }
+        return pieces;
+    }
+
+    private List<String> splitCode(String code, int maxSize) {
+        final var lines = code.split("\n");
+        final var opening = lines[0];
+        final var fence = opening.strip().substring(0, 3);
+        // A block left open at the end of the page has no closing fence, its last line is code like any other
+        final var closed = lines.length > 1 && closesFence(lines[lines.length - 1], fence);
+        final var closing = closed ? lines[lines.length - 1] : fence;
+        final var lastCodeLine = closed ? lines.length - 1 : lines.length;
+        final var budget = maxSize - opening.length() - closing.length() - 2;
+
+        final var pieces = new ArrayList<String>();
+        final var piece = new StringBuilder();
+        for (var i = 1; i < lastCodeLine; i++) {
+            if (!piece.isEmpty() && piece.length() + 1 + lines[i].length() > budget) {
+                pieces.add(opening + "\n" + piece + "\n" + closing);
+                piece.setLength(0);
+            }
+            if (!piece.isEmpty()) {
+                piece.append('\n');
+            }
+            piece.append(lines[i]);
+        }
+        if (!piece.isEmpty()) {
+            pieces.add(opening + "\n" + piece + "\n" + closing);
+        }
+        return pieces.isEmpty() ? splitText(code, maxSize) : pieces;
+    }
+
+    private List<String> splitText(String text, int maxSize) {
+        final var splitter = oversizedBlockSplitters.computeIfAbsent(
+                maxSize,
+                size -> DocumentSplitters.recursive(size, Math.min(maxOverlapSize, size / 2))
+        );
+        return splitter.split(Document.from(text)).stream()
+                .map(TextSegment::text)
+                .toList();
+    }
+
+    private static boolean closesFence(String line, String fence) {
+        final var stripped = line.strip();
+        return stripped.startsWith(fence) && stripped.chars().allMatch(c -> c == fence.charAt(0));
+    }
+
+    static List<Block> blocks(String markdown) {
+        final var blocks = new ArrayList<Block>();
+        final var lines = markdown.split("\n", -1);
+        final var paragraph = new ArrayList<String>();
+
+        for (var i = 0; i < lines.length; i++) {
+            final var line = lines[i];
+            final var stripped = line.strip();
+
+            if (stripped.startsWith("```") || stripped.startsWith("~~~")) {
+                flushParagraph(paragraph, blocks);
+                final var fence = stripped.substring(0, 3);
+                final var code = new StringBuilder(line);
+                while (++i < lines.length) {
+                    code.append('\n').append(lines[i]);
+                    if (closesFence(lines[i], fence)) {
+                        break;
+                    }
+                }
+                blocks.add(new Block(BlockKind.CODE, code.toString(), 0, null));
+                continue;
+            }
+
+            final var atxHeading = ATX_HEADING.matcher(line);
+            if (atxHeading.matches()) {
+                flushParagraph(paragraph, blocks);
+                blocks.add(new Block(BlockKind.HEADING, line.strip(), atxHeading.group(1).length(), atxHeading.group(2)));
+                continue;
+            }
+
+            // Flexmark renders h1 and h2 as setext headings: the underline turns the preceding paragraph into a heading
+            final var setextLevel = SETEXT_H1.matcher(line).matches() ? 1 : SETEXT_H2.matcher(line).matches() ? 2 : 0;
+            if (setextLevel > 0 && !paragraph.isEmpty()) {
+                final var heading = String.join(" ", paragraph.stream().map(String::strip).toList());
+                paragraph.clear();
+                blocks.add(new Block(BlockKind.HEADING, "#".repeat(setextLevel) + " " + heading, setextLevel, heading));
+                continue;
+            }
+
+            if (stripped.startsWith("|")) {
+                flushParagraph(paragraph, blocks);
+                final var table = new StringBuilder(line);
+                while (i + 1 < lines.length && lines[i + 1].strip().startsWith("|")) {
+                    table.append('\n').append(lines[++i]);
+                }
+                blocks.add(new Block(BlockKind.TABLE, table.toString(), 0, null));
+                continue;
+            }
+
+            if (stripped.isEmpty()) {
+                flushParagraph(paragraph, blocks);
+            } else {
+                paragraph.add(line);
+            }
+        }
+
+        flushParagraph(paragraph, blocks);
+        return blocks;
+    }
+
+    private static void flushParagraph(List<String> paragraph, List<Block> blocks) {
+        if (!paragraph.isEmpty()) {
+            blocks.add(new Block(BlockKind.TEXT, String.join("\n", paragraph), 0, null));
+            paragraph.clear();
+        }
+    }
+
+    enum BlockKind {
+        HEADING,
+        TEXT,
+        TABLE,
+        CODE
+    }
+
+    record Block(BlockKind kind, String text, int level, String heading) {
+
+    }
+
+    private record Heading(int level, String text) {
+
+    }
+
+    private record Part(String text, boolean overlappable) {
+
+    }
+
+    private static class Chunk {
+        private final String headingLine;
+        private final List<Part> parts = new ArrayList<>();
+        private int size;
+
+        private Chunk(String headingLine) {
+            this.headingLine = headingLine;
+            this.size = headingLine == null ? 0 : headingLine.length();
+        }
+
+        private boolean hasContent() {
+            return !parts.isEmpty();
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private int headingSize() {
+            return headingLine == null ? 0 : headingLine.length() + SEPARATOR.length();
+        }
+
+        private void add(String text, boolean overlappable) {
+            size += (size == 0 ? 0 : SEPARATOR.length()) + text.length();
+            parts.add(new Part(text, overlappable));
+        }
+
+        private Chunk continuation(int maxOverlapSize, int remainingSize) {
+            // The next segment of the same section repeats the heading, plus trailing whole blocks as overlap as long
+            // as they leave room for the block that did not fit
+            final var next = new Chunk(headingLine);
+            final var overlapBudget = Math.min(maxOverlapSize, remainingSize - next.size() - SEPARATOR.length());
+            final var overlap = new ArrayDeque<Part>();
+            var overlapSize = 0;
+            for (var i = parts.size() - 1; i > 0; i--) {
+                final var part = parts.get(i);
+                final var partSize = part.text().length() + SEPARATOR.length();
+                if (!part.overlappable() || overlapSize + partSize > overlapBudget) {
+                    break;
+                }
+                overlap.push(part);
+                overlapSize += partSize;
+            }
+            overlap.forEach(part -> next.add(part.text(), part.overlappable()));
+            return next;
+        }
+
+        private String text() {
+            final var text = new StringBuilder(size);
+            if (headingLine != null) {
+                text.append(headingLine);
+            }
+            for (final var part : parts) {
+                if (!text.isEmpty()) {
+                    text.append(SEPARATOR);
+                }
+                text.append(part.text());
+            }
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import static io.graversen.starter.spring.confluence.rag.ConfluenceDtos.PageListResponse;
+import static io.graversen.starter.spring.confluence.rag.ConfluenceDtos.PageSummary;
+
+@Slf4j
+@RequiredArgsConstructor
+public class ConfluenceSpaceCrawler {
+    private final @NonNull ConfluenceApi confluenceApi;
+    private final @NonNull IngestionProperties ingestionProperties;
+
+    public int crawl(@NonNull String spaceKey, @NonNull IngestionThroughput throughput, @NonNull Consumer<PageSummary> pageConsumer) {
+        final var pageSize = ingestionProperties.getPageSize();
+        return paginate(
+                "space '%s'".formatted(spaceKey),
+                start -> confluenceApi.getPages(spaceKey, pageSize, start),
+                cursor -> confluenceApi.getPagesAfter(spaceKey, pageSize, cursor),
+                throughput,
+                pageConsumer
+        );
+    }
+
+    public int crawlTrash(@NonNull String spaceKey, @NonNull IngestionThroughput throughput, @NonNull Consumer<PageSummary> pageConsumer) {
+        final var pageSize = ingestionProperties.getPageSize();
+        return paginate(
+                "trash of space '%s'".formatted(spaceKey),
+                start -> confluenceApi.getPagesByStatus(spaceKey, "trashed", pageSize, start),
+                null,
+                throughput,
+                pageConsumer
+        );
+    }
+
+    public int search(@NonNull String cql, @NonNull IngestionThroughput throughput, @NonNull Consumer<PageSummary> pageConsumer) {
+        final var pageSize = ingestionProperties.getPageSize();
+        return paginate(
+                "search '%s'".formatted(cql),
+                start -> confluenceApi.searchContent(cql, pageSize, start),
+                cursor -> confluenceApi.searchContentAfter(cql, pageSize, cursor),
+                throughput,
+                pageConsumer
+        );
+    }
+
+    private int paginate(
+            String description,
+            IntFunction<PageListResponse> pagesFrom,
+            Function<String, PageListResponse> pagesAfter,
+            IngestionThroughput throughput,
+            Consumer<PageSummary> pageConsumer
+    ) {
+        var start = 0;
+        var crawled = 0;
+        var pagesResponse = listPages(throughput, () -> pagesFrom.apply(0));
+
+        while (true) {
+            final var results = pagesResponse.results();
+            if (results == null || results.isEmpty()) {
+                break;
+            }
+
+            results.forEach(pageConsumer);
+            crawled += results.size();
+            start += results.size();
+
+            if (!pagesResponse.hasNext()) {
+                break;
+            }
+
+            final var cursor = pagesAfter == null ? Optional.<String>empty() : nextCursor(pagesResponse);
+            final var nextStart = start;
+            log.debug("⚙️ Crawled {} pages from {}, fetching next batch", crawled, description);
+            pagesResponse = cursor
+                    .map(value -> listPages(throughput, () -> pagesAfter.apply(value)))
+                    .orElseGet(() -> listPages(throughput, () -> pagesFrom.apply(nextStart)));
+        }
+
+        return crawled;
+    }
+
+    private PageListResponse listPages(IngestionThroughput throughput, Supplier<PageListResponse> listing) {
+        final var startedAtNanos = System.nanoTime();
+        final var pagesResponse = listing.get();
+        final var listed = pagesResponse.results() == null ? 0 : pagesResponse.results().size();
+        throughput.record(IngestionThroughput.Stage.LIST, listed, System.nanoTime() - startedAtNanos);
+        return pagesResponse;
+    }
+
+    private Optional<String> nextCursor(PageListResponse pagesResponse) {
+        if (pagesResponse.nextCursor() != null) {
+            return Optional.of(pagesResponse.nextCursor());
+        }
+
+        final var next = pagesResponse.links().next();
+        final var queryIndex = next.indexOf('?');
+        if (queryIndex < 0) {
+            return Optional.empty();
+        }
+
+        return Arrays.stream(next.substring(queryIndex + 1).split("&"))
+                .filter(parameter -> parameter.startsWith("cursor="))
+                .map(parameter -> URLDecoder.decode(parameter.substring("cursor=".length()), StandardCharsets.UTF_8))
+                .findFirst();
+    }
+}
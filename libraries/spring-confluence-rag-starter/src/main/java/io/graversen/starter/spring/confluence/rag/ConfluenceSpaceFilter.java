@@ -0,0 +1,14 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.rag.query.Query;
+import lombok.NonNull;
+
+import java.util.List;
+
+/**
+ * Restricts retrieval to the segments of some spaces, e.g. per team or per user from the query's metadata. An empty
+ * list searches all spaces.
+ */
+public interface ConfluenceSpaceFilter {
+    List<String> spaceKeys(@NonNull Query query);
+}
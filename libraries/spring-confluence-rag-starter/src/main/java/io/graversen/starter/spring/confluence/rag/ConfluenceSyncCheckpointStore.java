@@ -0,0 +1,11 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+import java.util.Optional;
+
+public interface ConfluenceSyncCheckpointStore {
+    Optional<SyncCheckpoint> find(@NonNull String spaceKey);
+
+    void save(@NonNull SyncCheckpoint syncCheckpoint);
+}
@@ -0,0 +1,59 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.SmartLifecycle;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+@Slf4j
+@RequiredArgsConstructor
+public class ConfluenceSyncScheduler implements SmartLifecycle {
+    private final @NonNull ConfluenceChangeFeed changeFeed;
+    private final @NonNull SyncProperties syncProperties;
+
+    private ScheduledExecutorService scheduler;
+
+    @Override
+    public synchronized void start() {
+        if (isRunning()) {
+            return;
+        }
+
+        // A dedicated thread keeps syncs off the application's task scheduler, and fixed delay keeps them from overlapping
+        scheduler = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("confluence-sync").daemon().factory());
+        scheduler.scheduleWithFixedDelay(
+                this::sync,
+                syncProperties.getInitialDelay().toMillis(),
+                syncProperties.getInterval().toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+        log.info("⚙️ Scheduled Confluence sync every {}", syncProperties.getInterval());
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (scheduler != null) {
+            // A sync in progress is left to finish on its daemon thread; checkpoints only advance per completed space
+            scheduler.shutdown();
+            scheduler = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean isRunning() {
+        return scheduler != null && !scheduler.isShutdown();
+    }
+
+    private void sync() {
+        try {
+            changeFeed.sync();
+        } catch (RuntimeException e) {
+            // An exception escaping a scheduled task would cancel all future runs
+            log.error("⚙️ Confluence sync failed", e);
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+@UtilityClass
+public class ContentHashes {
+    public String sha256Hex(@NonNull String content) {
+        return HexFormat.of().formatHex(sha256(content));
+    }
+
+    public byte[] sha256(@NonNull String content) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+}
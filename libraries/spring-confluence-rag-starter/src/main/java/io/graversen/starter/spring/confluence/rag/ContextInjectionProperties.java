@@ -0,0 +1,11 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ContextInjectionProperties {
+    private Boolean groupByPage = false;
+    private Integer tokenBudget = 3_000;
+}
@@ -0,0 +1,69 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.memory.chat.ChatMemoryProvider;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import lombok.NonNull;
+
+import java.util.concurrent.Semaphore;
+
+public class ConversationChatMemoryProvider implements ChatMemoryProvider {
+    private final ChatModelProperties chatModelProperties;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final ChatMemoryStore chatMemoryStore;
+    private final Cache<Object, TokenCountingChatMemory> memories;
+    // Weak values keep a conversation's turn only while a request holds or waits for it
+    private final Cache<Object, Semaphore> turns = Caffeine.newBuilder().weakValues().build();
+
+    public ConversationChatMemoryProvider(
+            @NonNull ChatModelProperties chatModelProperties,
+            @NonNull TokenCountEstimator tokenCountEstimator,
+            ChatMemoryStore chatMemoryStore
+    ) {
+        this.chatModelProperties = chatModelProperties;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.chatMemoryStore = chatMemoryStore;
+        this.memories = Caffeine.newBuilder()
+                .maximumSize(chatModelProperties.getMaxConversations())
+                .expireAfterAccess(chatModelProperties.getConversationIdleTimeout())
+                .build();
+    }
+
+    @Override
+    public TokenCountingChatMemory get(Object memoryId) {
+        return memories.get(memoryId, this::createMemory);
+    }
+
+    /**
+     * The permit a request holds while it reads and updates a conversation, so concurrent questions in the same
+     * conversation take turns instead of both answering from the same history and overwriting each other's messages.
+     */
+    public Semaphore turn(@NonNull Object memoryId) {
+        return turns.get(memoryId, ignored -> new Semaphore(1));
+    }
+
+    public void forget(@NonNull Object memoryId) {
+        final var memory = memories.getIfPresent(memoryId);
+        if (memory != null) {
+            memory.clear();
+        } else if (chatMemoryStore != null) {
+            chatMemoryStore.deleteMessages(memoryId);
+        }
+        memories.invalidate(memoryId);
+    }
+
+    public long activeConversations() {
+        return memories.estimatedSize();
+    }
+
+    private TokenCountingChatMemory createMemory(Object memoryId) {
+        final var memory = new TokenCountingChatMemory(memoryId, chatModelProperties.getMemoryTokens(), tokenCountEstimator, chatMemoryStore);
+        if (memory.messages().isEmpty()) {
+            memory.add(SystemMessage.from(chatModelProperties.getSystemPrompt()));
+        }
+        return memory;
+    }
+}
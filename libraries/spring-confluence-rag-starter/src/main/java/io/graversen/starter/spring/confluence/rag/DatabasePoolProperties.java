@@ -0,0 +1,17 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class DatabasePoolProperties {
+    private Integer maximumPoolSize = 10;
+    private Integer minimumIdle = 2;
+    private Duration connectionTimeout = Duration.ofSeconds(30);
+    private Duration statementTimeout = Duration.ofSeconds(30);
+    private Boolean separateQueryPool = false;
+    private Integer queryMaximumPoolSize = 10;
+}
@@ -2,6 +2,7 @@ package io.graversen.starter.spring.confluence.rag;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
 @Getter
 @Setter
@@ -12,4 +13,13 @@ public class DatabaseProperties {
     private String username;
     private String password;
     private String table = "confluence_vector_store";
+
+    @NestedConfigurationProperty
+    private DatabasePoolProperties pool = new DatabasePoolProperties();
+
+    @NestedConfigurationProperty
+    private VectorIndexProperties index = new VectorIndexProperties();
+
+    @NestedConfigurationProperty
+    private VectorStorageProperties storage = new VectorStorageProperties();
 }
@@ -0,0 +1,54 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import org.springframework.util.ClassUtils;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.function.Consumer;
+
+/**
+ * Reads plain text attachments directly, and leaves PDF, Office and other formats to Apache Tika when it is on the
+ * classpath.
+ */
+public class DefaultAttachmentTextExtractor implements ConfluenceAttachmentTextExtractor {
+    private static final Set<String> PLAIN_TEXT_TYPES = Set.of("text/plain", "text/markdown", "text/csv");
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ConfluenceAttachmentTextExtractor tikaExtractor;
+
+    public DefaultAttachmentTextExtractor() {
+        this.tikaExtractor = ClassUtils.isPresent("org.apache.tika.parser.AutoDetectParser", getClass().getClassLoader())
+                ? new TikaAttachmentTextExtractor()
+                : null;
+    }
+
+    @Override
+    public boolean supports(@NonNull String mediaType) {
+        return PLAIN_TEXT_TYPES.contains(mediaType) || (tikaExtractor != null && tikaExtractor.supports(mediaType));
+    }
+
+    @Override
+    public void extractText(@NonNull Path file, @NonNull String mediaType, @NonNull Consumer<String> textConsumer) throws IOException {
+        if (!PLAIN_TEXT_TYPES.contains(mediaType)) {
+            if (tikaExtractor == null) {
+                throw new IllegalArgumentException("Extracting text from %s requires org.apache.tika:tika-parsers-standard-package".formatted(mediaType));
+            }
+            tikaExtractor.extractText(file, mediaType, textConsumer);
+            return;
+        }
+
+        // Malformed input is replaced rather than failing the attachment, as not every text upload is UTF-8
+        try (final var reader = new InputStreamReader(Files.newInputStream(file), StandardCharsets.UTF_8)) {
+            final var buffer = new char[BUFFER_SIZE];
+            int read;
+            while ((read = reader.read(buffer)) != -1) {
+                textConsumer.accept(new String(buffer, 0, read));
+            }
+        }
+    }
+}
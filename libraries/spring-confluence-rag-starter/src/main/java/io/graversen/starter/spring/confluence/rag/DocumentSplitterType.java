@@ -0,0 +1,6 @@
+package io.graversen.starter.spring.confluence.rag;
+
+public enum DocumentSplitterType {
+    RECURSIVE,
+    SECTIONS
+}
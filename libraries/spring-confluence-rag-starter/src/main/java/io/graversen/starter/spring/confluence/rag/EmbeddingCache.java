@@ -0,0 +1,19 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+import java.util.Collection;
+import java.util.Map;
+
+public interface EmbeddingCache extends AutoCloseable {
+    String name();
+
+    Map<String, float[]> getAll(@NonNull Collection<String> textHashes);
+
+    void putAll(@NonNull Map<String, float[]> embeddingsByTextHash);
+
+    @Override
+    default void close() {
+
+    }
+}
@@ -0,0 +1,12 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class EmbeddingCacheProperties {
+    private Boolean enabled = false;
+    private String directory;
+    private Boolean postgres = false;
+}
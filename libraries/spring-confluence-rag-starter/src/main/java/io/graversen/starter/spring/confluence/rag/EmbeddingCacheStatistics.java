@@ -0,0 +1,14 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import java.util.Map;
+
+public record EmbeddingCacheStatistics(Map<String, Long> hitsByTier, long misses) {
+    public long hits() {
+        return hitsByTier.values().stream().mapToLong(Long::longValue).sum();
+    }
+
+    public double hitRate() {
+        final var lookups = hits() + misses;
+        return lookups == 0 ? 0.0 : (double) hits() / lookups;
+    }
+}
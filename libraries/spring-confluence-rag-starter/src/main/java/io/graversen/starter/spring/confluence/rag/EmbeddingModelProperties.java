@@ -2,13 +2,37 @@ package io.graversen.starter.spring.confluence.rag;
 
 import lombok.Getter;
 import lombok.Setter;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
+
+import java.util.List;
 
 @Getter
 @Setter
 public class EmbeddingModelProperties {
     private Integer chunkSize = 512;
     private Double overlapFraction = 0.25;
+    private DocumentSplitterType splitter = DocumentSplitterType.RECURSIVE;
+    private EmbeddingModelProvider provider = EmbeddingModelProvider.OPENAI;
     private String model = "text-embedding-3-small";
+    private Integer dimensions;
     private Integer topK = 5;
     private Double similarityThreshold = 0.5;
+    private RetrievalMode retrievalMode = RetrievalMode.VECTOR;
+    private Integer hybridCandidates = 40;
+    private Integer rrfK = 60;
+    private String textSearchConfig = "english";
+    private Boolean hybridMigrateExistingTable = false;
+    private List<String> retrievalSpaces = List.of();
+
+    @NestedConfigurationProperty
+    private OnnxEmbeddingModelProperties onnx = new OnnxEmbeddingModelProperties();
+
+    @NestedConfigurationProperty
+    private EmbeddingCacheProperties cache = new EmbeddingCacheProperties();
+
+    @NestedConfigurationProperty
+    private RetrievalCacheProperties retrievalCache = new RetrievalCacheProperties();
+
+    @NestedConfigurationProperty
+    private RerankingProperties reranking = new RerankingProperties();
 }
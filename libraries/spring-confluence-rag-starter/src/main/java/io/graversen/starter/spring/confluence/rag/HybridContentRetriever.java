@@ -0,0 +1,157 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Retrieves segments by fusing pgvector similarity with Postgres full-text search using reciprocal rank fusion. Both
+ * candidate lists are ranked and fused inside a single statement, so a question costs one round trip, the same as a
+ * vector-only search. Exact identifiers such as "Protocol Theta-9" are found by the lexical side even when their
+ * embedding is not close to the question's. A space filter applies to both candidate lists.
+ */
+@Slf4j
+public class HybridContentRetriever implements ContentRetriever {
+    private static final Pattern TEXT_SEARCH_CONFIG = Pattern.compile("[a-z_]+");
+
+    private final JdbcTemplate ingestionJdbcTemplate;
+    private final JdbcTemplate queryJdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final ConfluenceSpaceFilter spaceFilter;
+    private final VectorSearchQuery vectorSearchQuery;
+    private final SegmentContentRowMapper rowMapper;
+    private final String table;
+    private final String textSearchConfig;
+    private final boolean migrateExistingTable;
+    private final int maxResults;
+    private final int candidates;
+    private final int rrfK;
+    private final String query;
+    private final String spaceFilteredQuery;
+
+    public HybridContentRetriever(
+            @NonNull ConfluenceRagDataSource dataSource,
+            @NonNull DatabaseProperties databaseProperties,
+            @NonNull EmbeddingModel embeddingModel,
+            @NonNull EmbeddingModelProperties embeddingModelProperties,
+            @NonNull ConfluenceSpaceFilter spaceFilter,
+            int maxResults
+    ) {
+        if (!TEXT_SEARCH_CONFIG.matcher(embeddingModelProperties.getTextSearchConfig()).matches()) {
+            throw new IllegalArgumentException("Invalid text search configuration: " + embeddingModelProperties.getTextSearchConfig());
+        }
+
+        this.ingestionJdbcTemplate = new JdbcTemplate(dataSource.getDataSource());
+        this.queryJdbcTemplate = new JdbcTemplate(dataSource.getQueryDataSource());
+        this.embeddingModel = embeddingModel;
+        this.spaceFilter = spaceFilter;
+        this.vectorSearchQuery = new VectorSearchQuery(databaseProperties, embeddingModel.dimension());
+        this.rowMapper = new SegmentContentRowMapper(databaseProperties.getTable());
+        this.table = databaseProperties.getTable();
+        this.textSearchConfig = embeddingModelProperties.getTextSearchConfig();
+        this.migrateExistingTable = embeddingModelProperties.getHybridMigrateExistingTable();
+        this.maxResults = maxResults;
+        this.candidates = Math.max(embeddingModelProperties.getHybridCandidates(), maxResults);
+        this.rrfK = embeddingModelProperties.getRrfK();
+        this.query = query(false);
+        this.spaceFilteredQuery = query(true);
+    }
+
+    public void initialize() {
+        // Adding the stored column rewrites the table under an ACCESS EXCLUSIVE lock, blocking ingestion and retrieval
+        // until every row is re-written; on an empty table that is instant, on a loaded one it has to be asked for
+        final var columnExists = Boolean.TRUE.equals(ingestionJdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM pg_attribute WHERE attrelid = ?::regclass AND attname = 'text_tsv' AND NOT attisdropped)",
+                Boolean.class,
+                table
+        ));
+        if (!columnExists && !migrateExistingTable
+                && Boolean.TRUE.equals(ingestionJdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM %s)".formatted(table), Boolean.class))) {
+            throw new IllegalStateException(("Hybrid retrieval needs a full-text search column on '%s', and adding it rewrites the whole table "
+                    + "while blocking all reads and writes. Set ai.spring.confluence.rag.embedding-model.hybrid-migrate-existing-table "
+                    + "to true to run the migration during startup").formatted(table));
+        }
+
+        ingestionJdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (final var statement = connection.createStatement()) {
+                // The rewrite can take far longer than a regular query
+                statement.execute("SET statement_timeout = 0");
+                try {
+                    statement.execute("""
+                            ALTER TABLE %s ADD COLUMN IF NOT EXISTS text_tsv tsvector
+                            GENERATED ALWAYS AS (to_tsvector('%s'::regconfig, coalesce(text, ''))) STORED
+                            """.formatted(table, textSearchConfig));
+                    statement.execute("CREATE INDEX IF NOT EXISTS %s_text_tsv_idx ON %s USING gin (text_tsv)".formatted(table, table));
+                } finally {
+                    // Pooled connections keep session settings
+                    statement.execute("RESET statement_timeout");
+                }
+            }
+            return null;
+        });
+        log.debug("Initialized full-text search column on '{}' ({})", table, textSearchConfig);
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        final var spaceKeys = spaceFilter.spaceKeys(query);
+        final var queryEmbedding = embeddingModel.embed(query.text()).content();
+        return queryJdbcTemplate.query(
+                spaceKeys.isEmpty() ? this.query : spaceFilteredQuery,
+                statement -> {
+                    var index = vectorSearchQuery.bind(statement, 1, queryEmbedding.vector(), candidates, spaceKeys);
+                    statement.setString(index++, query.text());
+                    if (!spaceKeys.isEmpty()) {
+                        index = VectorSearchQuery.bindSpaceKeys(statement, index, spaceKeys);
+                    }
+                    statement.setInt(index++, candidates);
+                    statement.setInt(index++, rrfK);
+                    statement.setInt(index++, rrfK);
+                    statement.setInt(index, maxResults);
+                },
+                rowMapper
+        );
+    }
+
+    private String query(boolean spaceFiltered) {
+        return """
+                WITH semantic AS (
+                    SELECT embedding_id, row_number() OVER (ORDER BY distance) AS rank
+                    FROM (%3$s) nearest
+                ),
+                lexical AS (
+                    SELECT embedding_id, row_number() OVER (ORDER BY text_rank DESC) AS rank
+                    FROM (
+                        SELECT embedding_id, ts_rank_cd(text_tsv, text_query) AS text_rank
+                        FROM %1$s, websearch_to_tsquery('%2$s', ?) text_query
+                        WHERE text_tsv @@ text_query %4$s
+                        ORDER BY text_rank DESC
+                        LIMIT ?
+                    ) matching
+                ),
+                fused AS (
+                    SELECT coalesce(semantic.embedding_id, lexical.embedding_id) AS embedding_id,
+                           coalesce(1.0 / (? + semantic.rank), 0.0) + coalesce(1.0 / (? + lexical.rank), 0.0) AS score
+                    FROM semantic FULL OUTER JOIN lexical ON semantic.embedding_id = lexical.embedding_id
+                    ORDER BY score DESC
+                    LIMIT ?
+                )
+                SELECT fused.embedding_id, fused.score, store.text, store.metadata
+                FROM fused JOIN %1$s store ON store.embedding_id = fused.embedding_id
+                ORDER BY fused.score DESC
+                """.formatted(
+                table,
+                textSearchConfig,
+                vectorSearchQuery.sql(spaceFiltered),
+                spaceFiltered ? "AND %s = ANY(?)".formatted(vectorSearchQuery.spaceColumn()) : ""
+        );
+    }
+}
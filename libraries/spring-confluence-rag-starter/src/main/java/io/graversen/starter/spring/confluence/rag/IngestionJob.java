@@ -0,0 +1,16 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+import java.time.Instant;
+import java.util.List;
+
+public record IngestionJob(
+        @NonNull String jobId,
+        @NonNull IngestionJobStatus status,
+        @NonNull List<String> spaces,
+        boolean enumerated,
+        @NonNull Instant createdAt
+) {
+
+}
@@ -0,0 +1,30 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+@RequiredArgsConstructor
+@Endpoint(id = "confluenceIngestion")
+public class IngestionJobEndpoint {
+    private final @NonNull ConfluenceIngestionJobs ingestionJobs;
+
+    @ReadOperation
+    public IngestionJobProgress progress() {
+        return ingestionJobs.progress().orElse(null);
+    }
+
+    @WriteOperation
+    public IngestionJobProgress submit() {
+        ingestionJobs.submit();
+        return progress();
+    }
+
+    @DeleteOperation
+    public boolean cancel() {
+        return ingestionJobs.cancel();
+    }
+}
@@ -0,0 +1,22 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+public record IngestionJobPage(
+        @NonNull String pageId,
+        @NonNull String spaceKey,
+        String title,
+        Integer version,
+        @NonNull IngestionPageStatus status,
+        int attempts,
+        String lastError
+) {
+    public static IngestionJobPage pending(@NonNull String spaceKey, @NonNull ConfluenceDtos.PageSummary page) {
+        final var version = page.version() == null ? null : page.version().number();
+        return new IngestionJobPage(page.id(), spaceKey, page.title(), version, IngestionPageStatus.PENDING, 0, null);
+    }
+
+    public ConfluenceDtos.PageSummary toPageSummary() {
+        return new ConfluenceDtos.PageSummary(pageId, title, version == null ? null : new ConfluenceDtos.Version(version, null));
+    }
+}
@@ -0,0 +1,20 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import java.time.Duration;
+
+public record IngestionJobProgress(
+        String jobId,
+        IngestionJobStatus status,
+        long pagesTotal,
+        long pagesDone,
+        long pagesFailed,
+        long chunks,
+        Duration elapsed,
+        double pagesPerSecond,
+        double chunksPerSecond,
+        Duration eta
+) {
+    public double fractionDone() {
+        return pagesTotal == 0 ? 0.0 : (double) pagesDone / pagesTotal;
+    }
+}
@@ -0,0 +1,16 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class IngestionJobProperties {
+    private Boolean enabled = false;
+    private Boolean resumeOnStartup = true;
+    private Integer batchSize = 200;
+    private Integer maxAttempts = 3;
+    private Duration lease = Duration.ofMinutes(2);
+}
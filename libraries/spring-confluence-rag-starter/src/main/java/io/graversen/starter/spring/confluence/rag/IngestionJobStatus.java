@@ -0,0 +1,8 @@
+package io.graversen.starter.spring.confluence.rag;
+
+public enum IngestionJobStatus {
+    RUNNING,
+    COMPLETED,
+    FAILED,
+    CANCELLED
+}
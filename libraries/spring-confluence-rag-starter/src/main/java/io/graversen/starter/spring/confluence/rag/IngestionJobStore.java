@@ -0,0 +1,35 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+public interface IngestionJobStore {
+    IngestionJob create(@NonNull List<String> spaces);
+
+    Optional<IngestionJob> find(@NonNull String jobId);
+
+    Optional<IngestionJob> findLatestRunning();
+
+    /**
+     * Takes or renews the lease on a job for {@code owner}. Fails while another owner holds a lease that has not expired.
+     */
+    boolean claim(@NonNull String jobId, @NonNull String owner, @NonNull Duration lease);
+
+    void release(@NonNull String jobId, @NonNull String owner);
+
+    void updateStatus(@NonNull String jobId, @NonNull IngestionJobStatus status);
+
+    void markEnumerated(@NonNull String jobId);
+
+    void addPages(@NonNull String jobId, @NonNull List<IngestionJobPage> pages);
+
+    List<IngestionJobPage> findRemaining(@NonNull String jobId, int maxAttempts);
+
+    void updatePage(@NonNull String jobId, @NonNull String pageId, @NonNull IngestionPageStatus status, String error);
+
+    Map<IngestionPageStatus, Long> countPages(@NonNull String jobId);
+}
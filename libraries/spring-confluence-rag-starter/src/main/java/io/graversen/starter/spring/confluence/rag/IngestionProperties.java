@@ -0,0 +1,28 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.NestedConfigurationProperty;
+
+@Getter
+@Setter
+public class IngestionProperties {
+    private Integer pageSize = 100;
+    private Integer concurrency = 8;
+    private Integer spaceConcurrency = 2;
+    private Boolean incremental = true;
+    private Integer embeddingBatchMaxTokens = 100_000;
+    private Integer embeddingBatchMaxSegments = 2048;
+    private Integer embeddingConcurrency = 4;
+    private Integer storeBatchSize = 500;
+    private ContentFormatterType contentFormatter = ContentFormatterType.HTML2MARKDOWN;
+
+    @NestedConfigurationProperty
+    private SyncProperties sync = new SyncProperties();
+
+    @NestedConfigurationProperty
+    private IngestionJobProperties jobs = new IngestionJobProperties();
+
+    @NestedConfigurationProperty
+    private AttachmentProperties attachments = new AttachmentProperties();
+}
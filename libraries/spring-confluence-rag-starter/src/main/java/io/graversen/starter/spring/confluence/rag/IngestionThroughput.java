@@ -0,0 +1,80 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+public class IngestionThroughput {
+    private final Instant startedAt = Instant.now();
+    private final Map<Stage, LongAdder> items = new EnumMap<>(Stage.class);
+    private final Map<Stage, LongAdder> nanos = new EnumMap<>(Stage.class);
+
+    public IngestionThroughput() {
+        Arrays.stream(Stage.values()).forEach(stage -> {
+            items.put(stage, new LongAdder());
+            nanos.put(stage, new LongAdder());
+        });
+    }
+
+    public <T> T measure(Stage stage, Supplier<T> work) {
+        return measure(stage, 1, work);
+    }
+
+    public <T> T measure(Stage stage, int itemCount, Supplier<T> work) {
+        final var startedAtNanos = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            record(stage, itemCount, System.nanoTime() - startedAtNanos);
+        }
+    }
+
+    public void record(Stage stage, int itemCount, long elapsedNanos) {
+        items.get(stage).add(itemCount);
+        nanos.get(stage).add(elapsedNanos);
+    }
+
+    public long count(Stage stage) {
+        return items.get(stage).sum();
+    }
+
+    public Duration elapsed() {
+        return Duration.between(startedAt, Instant.now());
+    }
+
+    public String summary() {
+        final var elapsedSeconds = Math.max(elapsed().toNanos(), 1) / 1e9;
+        return Arrays.stream(Stage.values())
+                .filter(stage -> count(stage) > 0)
+                .map(stage -> {
+                    final var count = count(stage);
+                    final var busySeconds = Math.max(nanos.get(stage).sum(), 1) / 1e9;
+                    return "%s: %d %s, %.1f %s/s (%.1f %s/s per worker)".formatted(
+                            stage, count, stage.unit, count / elapsedSeconds, stage.unit, count / busySeconds, stage.unit
+                    );
+                })
+                .collect(Collectors.joining(", "));
+    }
+
+    public enum Stage {
+        LIST("pages"),
+        FETCH("pages"),
+        FORMAT("pages"),
+        SPLIT("pages"),
+        DOWNLOAD("attachments"),
+        EXTRACT("attachments"),
+        EMBED("chunks"),
+        STORE("chunks");
+
+        private final String unit;
+
+        Stage(String unit) {
+            this.unit = unit;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.scoring.ScoringModel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * BM25 over the candidate segments themselves: term statistics come from the candidates rather than the whole corpus,
+ * which is enough to tell which of a few dozen semantically similar chunks actually contain the question's terms.
+ */
+public class LexicalScoringModel implements ScoringModel {
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    @Override
+    public Response<List<Double>> scoreAll(List<TextSegment> segments, String query) {
+        final var queryTerms = new LinkedHashSet<>(terms(query));
+        final var segmentTerms = new ArrayList<SegmentTerms>(segments.size());
+        final var documentFrequencies = new HashMap<String, Integer>();
+        var totalLength = 0L;
+
+        for (final var segment : segments) {
+            final var terms = terms(segment.text());
+            totalLength += terms.size();
+
+            final var frequencies = new HashMap<String, Integer>();
+            terms.stream().filter(queryTerms::contains).forEach(term -> frequencies.merge(term, 1, Integer::sum));
+            frequencies.keySet().forEach(term -> documentFrequencies.merge(term, 1, Integer::sum));
+            segmentTerms.add(new SegmentTerms(frequencies, terms.size()));
+        }
+
+        final var documents = segments.size();
+        final var averageLength = documents == 0 ? 0.0 : (double) totalLength / documents;
+        final var scores = segmentTerms.stream()
+                .map(terms -> bm25(queryTerms, terms, documentFrequencies, documents, averageLength))
+                .toList();
+        return Response.from(scores);
+    }
+
+    private static double bm25(
+            Iterable<String> queryTerms,
+            SegmentTerms segmentTerms,
+            Map<String, Integer> documentFrequencies,
+            int documents,
+            double averageLength
+    ) {
+        var score = 0.0;
+        for (final var term : queryTerms) {
+            final var frequency = segmentTerms.frequencies().getOrDefault(term, 0);
+            if (frequency == 0) {
+                continue;
+            }
+            final var documentFrequency = documentFrequencies.get(term);
+            final var idf = Math.log(1 + (documents - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            final var lengthNorm = averageLength == 0 ? 1.0 : 1 - B + B * segmentTerms.length() / averageLength;
+            score += idf * frequency * (K1 + 1) / (frequency + K1 * lengthNorm);
+        }
+        return score;
+    }
+
+    private static List<String> terms(String text) {
+        final var terms = new ArrayList<String>();
+        for (final var term : NON_WORD.split(text.toLowerCase(Locale.ROOT))) {
+            if (!term.isEmpty()) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    private record SegmentTerms(Map<String, Integer> frequencies, int length) {
+
+    }
+}
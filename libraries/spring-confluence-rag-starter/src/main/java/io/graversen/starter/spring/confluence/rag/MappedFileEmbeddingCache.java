@@ -0,0 +1,189 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Append-only cache file of fixed-size records (SHA-256 of the text followed by the embedding as floats), mapped into
+ * memory in fixed-size regions. Embeddings live off-heap in the page cache; only the hash-to-record index is on-heap.
+ * The file is locked by the process using it, and the record count in its header is only advanced once the records it
+ * covers are on disk, so a crash can lose the last embeddings but never expose a half written one.
+ */
+@Slf4j
+public class MappedFileEmbeddingCache implements EmbeddingCache {
+    private static final int MAGIC = 0x43524543;
+    private static final int HEADER_BYTES = 16;
+    private static final int HASH_BYTES = 32;
+    private static final long REGION_BYTES = 64L * 1024 * 1024;
+
+    private final Path file;
+    private final int dimensions;
+    private final int recordBytes;
+    private final int recordsPerRegion;
+    private final FileChannel channel;
+    private final FileLock lock;
+    private final MappedByteBuffer header;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private final Map<String, Integer> index = new ConcurrentHashMap<>();
+    private final HexFormat hexFormat = HexFormat.of();
+    private int count;
+
+    public MappedFileEmbeddingCache(@NonNull Path directory, @NonNull String modelName, int dimensions) {
+        this.file = directory.resolve("%s-%d.embeddings".formatted(modelName.replaceAll("[^A-Za-z0-9._-]", "_"), dimensions));
+        this.dimensions = dimensions;
+        this.recordBytes = HASH_BYTES + dimensions * Float.BYTES;
+        this.recordsPerRegion = (int) Math.max(1, REGION_BYTES / recordBytes);
+
+        try {
+            Files.createDirectories(directory);
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.lock = lock(channel, file);
+            this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open embedding cache file " + file, e);
+        }
+
+        if (header.getInt(0) != MAGIC || header.getInt(4) != dimensions) {
+            header.putInt(0, MAGIC);
+            header.putInt(4, dimensions);
+            header.putLong(8, 0);
+            header.force();
+        }
+
+        this.count = (int) header.getLong(8);
+        loadIndex();
+        log.debug("Opened embedding cache file {} with {} embeddings", file, count);
+    }
+
+    @Override
+    public String name() {
+        return "local";
+    }
+
+    @Override
+    public Map<String, float[]> getAll(@NonNull Collection<String> textHashes) {
+        final var embeddings = new HashMap<String, float[]>();
+        for (final var textHash : textHashes) {
+            final var record = index.get(textHash);
+            if (record != null) {
+                embeddings.put(textHash, readEmbedding(record));
+            }
+        }
+        return embeddings;
+    }
+
+    @Override
+    public synchronized void putAll(@NonNull Map<String, float[]> embeddingsByTextHash) {
+        final var firstRecord = count;
+        final var written = new HashMap<String, Integer>();
+        embeddingsByTextHash.forEach((textHash, embedding) -> {
+            if (embedding.length != dimensions || index.containsKey(textHash) || written.containsKey(textHash)) {
+                return;
+            }
+
+            final var record = firstRecord + written.size();
+            final var region = region(record);
+            final var offset = (record % recordsPerRegion) * recordBytes;
+            region.put(offset, hexFormat.parseHex(textHash));
+            for (var i = 0; i < dimensions; i++) {
+                region.putFloat(offset + HASH_BYTES + i * Float.BYTES, embedding[i]);
+            }
+            written.put(textHash, record);
+        });
+        if (written.isEmpty()) {
+            return;
+        }
+
+        // The records are flushed before the header counts them; the count is a single aligned write, so after a crash
+        // it covers either all of this batch or none of it
+        force(firstRecord, firstRecord + written.size());
+        count = firstRecord + written.size();
+        header.putLong(8, count);
+        header.force();
+        index.putAll(written);
+    }
+
+    @Override
+    public synchronized void close() {
+        regions.forEach(MappedByteBuffer::force);
+        header.force();
+        try {
+            // Closing the channel also releases its lock
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Could not close embedding cache file {}", file, e);
+        }
+    }
+
+    private static FileLock lock(FileChannel channel, Path file) throws IOException {
+        try {
+            final var lock = channel.tryLock();
+            if (lock != null) {
+                return lock;
+            }
+        } catch (OverlappingFileLockException e) {
+            // Held by another cache instance in this JVM
+        }
+        channel.close();
+        throw new IllegalStateException("Embedding cache file %s is in use by another cache".formatted(file));
+    }
+
+    private void force(int fromRecord, int toRecord) {
+        for (var record = fromRecord; record < toRecord; ) {
+            final var regionStart = record % recordsPerRegion;
+            final var regionEnd = Math.min(recordsPerRegion, regionStart + toRecord - record);
+            region(record).force(regionStart * recordBytes, (regionEnd - regionStart) * recordBytes);
+            record += regionEnd - regionStart;
+        }
+    }
+
+    private void loadIndex() {
+        final var hash = new byte[HASH_BYTES];
+        for (var record = 0; record < count; record++) {
+            region(record).get((record % recordsPerRegion) * recordBytes, hash);
+            index.put(hexFormat.formatHex(hash), record);
+        }
+    }
+
+    private float[] readEmbedding(int record) {
+        final var region = region(record);
+        final var offset = (record % recordsPerRegion) * recordBytes + HASH_BYTES;
+        final var embedding = new float[dimensions];
+        for (var i = 0; i < dimensions; i++) {
+            embedding[i] = region.getFloat(offset + i * Float.BYTES);
+        }
+        return embedding;
+    }
+
+    private MappedByteBuffer region(int record) {
+        final var regionIndex = record / recordsPerRegion;
+        synchronized (regions) {
+            while (regions.size() <= regionIndex) {
+                final var position = HEADER_BYTES + (long) regions.size() * recordsPerRegion * recordBytes;
+                try {
+                    regions.add(channel.map(FileChannel.MapMode.READ_WRITE, position, (long) recordsPerRegion * recordBytes));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not map embedding cache file " + file, e);
+                }
+            }
+            return regions.get(regionIndex);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.model.chat.listener.ChatModelErrorContext;
+import dev.langchain4j.model.chat.listener.ChatModelListener;
+import dev.langchain4j.model.chat.listener.ChatModelRequestContext;
+import dev.langchain4j.model.chat.listener.ChatModelResponseContext;
+import io.micrometer.observation.Observation;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Objects;
+
+@RequiredArgsConstructor
+public class ObservedChatModelListener implements ChatModelListener {
+    // The request and response contexts of one chat call share the same attributes map
+    private static final String OBSERVATION_ATTRIBUTE = ObservedChatModelListener.class.getName() + ".observation";
+
+    private final @NonNull ConfluenceRagObservability observability;
+    private final @NonNull String modelName;
+    private final boolean streaming;
+
+    @Override
+    public void onRequest(ChatModelRequestContext requestContext) {
+        final var observation = observability.observation(
+                "chat",
+                "model", modelName,
+                "streaming", Boolean.toString(streaming)
+        ).start();
+        requestContext.attributes().put(OBSERVATION_ATTRIBUTE, observation);
+    }
+
+    @Override
+    public void onResponse(ChatModelResponseContext responseContext) {
+        final var tokenUsage = responseContext.chatResponse().tokenUsage();
+        if (tokenUsage != null) {
+            observability.counter("chat.tokens", "model", modelName, "type", "prompt")
+                    .increment(Objects.requireNonNullElse(tokenUsage.inputTokenCount(), 0));
+            observability.counter("chat.tokens", "model", modelName, "type", "completion")
+                    .increment(Objects.requireNonNullElse(tokenUsage.outputTokenCount(), 0));
+        }
+
+        if (responseContext.attributes().remove(OBSERVATION_ATTRIBUTE) instanceof Observation observation) {
+            observation.stop();
+        }
+    }
+
+    @Override
+    public void onError(ChatModelErrorContext errorContext) {
+        if (errorContext.attributes().remove(OBSERVATION_ATTRIBUTE) instanceof Observation observation) {
+            observation.error(errorContext.error());
+            observation.stop();
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+@RequiredArgsConstructor
+public class ObservedContentFormatter implements ConfluenceContentFormatter {
+    private final @NonNull ConfluenceContentFormatter delegate;
+    private final @NonNull ConfluenceRagObservability observability;
+
+    @Override
+    public String formatContent(@NonNull String pageContent) {
+        observability.summary("format.input.bytes").record(pageContent.length());
+        return observability.observe(
+                "format",
+                () -> delegate.formatContent(pageContent),
+                "formatter", delegate.getClass().getSimpleName()
+        );
+    }
+}
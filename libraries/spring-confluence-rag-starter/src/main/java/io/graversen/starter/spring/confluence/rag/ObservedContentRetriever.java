@@ -0,0 +1,34 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class ObservedContentRetriever implements ContentRetriever {
+    private final @NonNull ContentRetriever delegate;
+    private final @NonNull ConfluenceRagObservability observability;
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        final var contents = observability.observe("retrieval", () -> delegate.retrieve(query));
+
+        observability.summary("retrieval.hits").record(contents.size());
+        if (contents.isEmpty()) {
+            observability.counter("retrieval.empty").increment();
+        }
+
+        final var scores = observability.summary("retrieval.score");
+        contents.stream()
+                .map(content -> content.metadata().get(ContentMetadata.SCORE))
+                .filter(Number.class::isInstance)
+                .map(Number.class::cast)
+                .forEach(score -> scores.record(score.doubleValue()));
+        return contents;
+    }
+}
@@ -0,0 +1,26 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.DocumentSplitter;
+import dev.langchain4j.data.segment.TextSegment;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+import java.util.List;
+
+@RequiredArgsConstructor
+public class ObservedDocumentSplitter implements DocumentSplitter {
+    private final @NonNull DocumentSplitter delegate;
+    private final @NonNull ConfluenceRagObservability observability;
+
+    @Override
+    public List<TextSegment> split(Document document) {
+        final var segments = observability.observe(
+                "split",
+                () -> delegate.split(document),
+                "splitter", delegate.getClass().getSimpleName()
+        );
+        observability.summary("split.segments").record(segments.size());
+        return segments;
+    }
+}
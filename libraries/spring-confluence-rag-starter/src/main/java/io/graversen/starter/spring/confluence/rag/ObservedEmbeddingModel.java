@@ -0,0 +1,49 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import lombok.NonNull;
+
+import java.util.List;
+
+public class ObservedEmbeddingModel implements EmbeddingModel, AutoCloseable {
+    private final EmbeddingModel delegate;
+    private final ConfluenceRagObservability observability;
+    private final String modelName;
+
+    public ObservedEmbeddingModel(@NonNull EmbeddingModel delegate, @NonNull ConfluenceRagObservability observability, @NonNull String modelName) {
+        this.delegate = delegate;
+        this.observability = observability;
+        this.modelName = modelName;
+    }
+
+    @Override
+    public Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        final var response = observability.observe(
+                "embedding",
+                () -> delegate.embedAll(textSegments),
+                "model", modelName
+        );
+
+        observability.counter("embedding.segments", "model", modelName).increment(textSegments.size());
+        if (response.tokenUsage() != null && response.tokenUsage().inputTokenCount() != null) {
+            observability.counter("embedding.tokens", "model", modelName).increment(response.tokenUsage().inputTokenCount());
+        }
+        return response;
+    }
+
+    @Override
+    public int dimension() {
+        return delegate.dimension();
+    }
+
+    @Override
+    public void close() throws Exception {
+        // In-process models hold native sessions, remote ones have nothing to release
+        if (delegate instanceof AutoCloseable closeable) {
+            closeable.close();
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import ai.djl.huggingface.tokenizers.Encoding;
+import ai.djl.huggingface.tokenizers.HuggingFaceTokenizer;
+import ai.onnxruntime.OnnxTensor;
+import ai.onnxruntime.OrtEnvironment;
+import ai.onnxruntime.OrtException;
+import ai.onnxruntime.OrtSession;
+import ai.onnxruntime.TensorInfo;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.model.output.TokenUsage;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Embeds text in-process with a sentence-transformers style model exported to ONNX (e.g. bge-small or all-MiniLM),
+ * using the model's Hugging Face tokenizer. The session and tokenizer are created once, and the input tensors are
+ * written into direct buffers that are reused across calls, so a call only allocates its output. Inputs are sorted by
+ * token length before they are cut into batches, which keeps the padding of every batch small.
+ */
+@Slf4j
+public class OnnxEmbeddingModel implements EmbeddingModel, AutoCloseable {
+    private final OrtEnvironment environment = OrtEnvironment.getEnvironment();
+    private final OrtSession session;
+    private final HuggingFaceTokenizer tokenizer;
+    private final OnnxPoolingMode pooling;
+    private final boolean normalize;
+    private final int maxBatchSize;
+    private final boolean tokenTypeIds;
+    private final String modelName;
+    private final int dimension;
+
+    private LongBuffer inputIdsBuffer = LongBuffer.allocate(0);
+    private LongBuffer attentionMaskBuffer = LongBuffer.allocate(0);
+    private LongBuffer tokenTypeIdsBuffer = LongBuffer.allocate(0);
+
+    public OnnxEmbeddingModel(@NonNull OnnxEmbeddingModelProperties properties) {
+        if (properties.getModelPath() == null || properties.getTokenizerPath() == null) {
+            throw new IllegalArgumentException("The ONNX embedding model requires a model path and a tokenizer path");
+        }
+
+        final var modelPath = Path.of(properties.getModelPath());
+        final var threads = properties.getThreads() == null ? Runtime.getRuntime().availableProcessors() : properties.getThreads();
+        try (final var sessionOptions = new OrtSession.SessionOptions()) {
+            // One inference at a time uses all cores inside its operators; parallel sessions would only contend for them
+            sessionOptions.setIntraOpNumThreads(threads);
+            sessionOptions.setInterOpNumThreads(1);
+            sessionOptions.setExecutionMode(OrtSession.SessionOptions.ExecutionMode.SEQUENTIAL);
+            sessionOptions.setOptimizationLevel(OrtSession.SessionOptions.OptLevel.ALL_OPT);
+            this.session = environment.createSession(modelPath.toString(), sessionOptions);
+        } catch (OrtException e) {
+            throw new IllegalStateException("Could not load ONNX embedding model '%s'".formatted(modelPath), e);
+        }
+
+        try {
+            this.tokenizer = HuggingFaceTokenizer.builder()
+                    .optTokenizerPath(Path.of(properties.getTokenizerPath()))
+                    .optMaxLength(properties.getMaxSequenceLength())
+                    .optTruncation(true)
+                    .optPadding(false)
+                    .build();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load tokenizer '%s'".formatted(properties.getTokenizerPath()), e);
+        }
+
+        this.pooling = properties.getPooling();
+        this.normalize = properties.getNormalize();
+        this.maxBatchSize = properties.getMaxBatchSize();
+        this.tokenTypeIds = session.getInputNames().contains("token_type_ids");
+        this.modelName = modelName(modelPath);
+        this.dimension = outputDimension();
+        log.debug("Loaded ONNX embedding model '{}' ({} dimensions, {} threads)", modelName, dimension, threads);
+    }
+
+    public String modelName() {
+        return modelName;
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public synchronized Response<List<Embedding>> embedAll(List<TextSegment> textSegments) {
+        if (textSegments.isEmpty()) {
+            return Response.from(List.of());
+        }
+
+        final var encodings = tokenizer.batchEncode(textSegments.stream().map(TextSegment::text).toList());
+        final var order = IntStream.range(0, encodings.length).boxed()
+                .sorted(Comparator.comparingInt(index -> encodings[index].getIds().length))
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        final var embeddings = new Embedding[encodings.length];
+        var tokens = 0;
+        for (var from = 0; from < order.length; from += maxBatchSize) {
+            final var batch = Arrays.copyOfRange(order, from, Math.min(from + maxBatchSize, order.length));
+            tokens += embedBatch(encodings, batch, embeddings);
+        }
+        return Response.from(Arrays.asList(embeddings), new TokenUsage(tokens));
+    }
+
+    @Override
+    public void close() throws OrtException {
+        session.close();
+        tokenizer.close();
+    }
+
+    private int embedBatch(Encoding[] encodings, int[] batch, Embedding[] embeddings) {
+        // Batches hold inputs of similar length, padding to the longest one costs little
+        final var sequenceLength = encodings[batch[batch.length - 1]].getIds().length;
+        final var size = batch.length * sequenceLength;
+        inputIdsBuffer = reuse(inputIdsBuffer, size);
+        attentionMaskBuffer = reuse(attentionMaskBuffer, size);
+        tokenTypeIdsBuffer = reuse(tokenTypeIdsBuffer, size);
+
+        var tokens = 0;
+        for (final var index : batch) {
+            final var encoding = encodings[index];
+            final var length = encoding.getIds().length;
+            inputIdsBuffer.put(encoding.getIds());
+            attentionMaskBuffer.put(encoding.getAttentionMask());
+            tokenTypeIdsBuffer.put(encoding.getTypeIds());
+            for (var i = length; i < sequenceLength; i++) {
+                inputIdsBuffer.put(0L);
+                attentionMaskBuffer.put(0L);
+                tokenTypeIdsBuffer.put(0L);
+            }
+            tokens += length;
+        }
+        inputIdsBuffer.flip();
+        attentionMaskBuffer.flip();
+        tokenTypeIdsBuffer.flip();
+
+        final var shape = new long[]{batch.length, sequenceLength};
+        final var inputs = new HashMap<String, OnnxTensor>();
+        try {
+            inputs.put("input_ids", OnnxTensor.createTensor(environment, inputIdsBuffer, shape));
+            inputs.put("attention_mask", OnnxTensor.createTensor(environment, attentionMaskBuffer, shape));
+            if (tokenTypeIds) {
+                inputs.put("token_type_ids", OnnxTensor.createTensor(environment, tokenTypeIdsBuffer, shape));
+            }
+
+            try (final var result = session.run(inputs)) {
+                final var output = (OnnxTensor) result.get(0);
+                final var pooled = output.getInfo().getShape().length == 2;
+                final var hidden = output.getFloatBuffer();
+                for (var row = 0; row < batch.length; row++) {
+                    final var vector = pooled
+                            ? row(hidden, row)
+                            : pool(hidden, row, sequenceLength, encodings[batch[row]].getIds().length);
+                    embeddings[batch[row]] = Embedding.from(normalize ? normalized(vector) : vector);
+                }
+            }
+        } catch (OrtException e) {
+            throw new IllegalStateException("ONNX embedding model '%s' failed".formatted(modelName), e);
+        } finally {
+            inputs.values().forEach(OnnxTensor::close);
+        }
+        return tokens;
+    }
+
+    private float[] row(FloatBuffer hidden, int row) {
+        final var vector = new float[dimension];
+        hidden.get(row * dimension, vector);
+        return vector;
+    }
+
+    private float[] pool(FloatBuffer hidden, int row, int sequenceLength, int length) {
+        final var vector = new float[dimension];
+        final var rowOffset = row * sequenceLength * dimension;
+        if (pooling == OnnxPoolingMode.CLS) {
+            hidden.get(rowOffset, vector);
+            return vector;
+        }
+
+        // Padding positions are masked out, so only the input's own tokens are averaged
+        for (var token = 0; token < length; token++) {
+            final var tokenOffset = rowOffset + token * dimension;
+            for (var i = 0; i < dimension; i++) {
+                vector[i] += hidden.get(tokenOffset + i);
+            }
+        }
+        for (var i = 0; i < dimension; i++) {
+            vector[i] /= Math.max(length, 1);
+        }
+        return vector;
+    }
+
+    private int outputDimension() {
+        try {
+            final var shape = ((TensorInfo) session.getOutputInfo().values().iterator().next().getInfo()).getShape();
+            final var outputDimension = shape[shape.length - 1];
+            if (outputDimension <= 0) {
+                throw new IllegalStateException("ONNX embedding model '%s' has no fixed output dimension".formatted(modelName));
+            }
+            return (int) outputDimension;
+        } catch (OrtException e) {
+            throw new IllegalStateException("Could not read the output of ONNX embedding model '%s'".formatted(modelName), e);
+        }
+    }
+
+    private static float[] normalized(float[] vector) {
+        var norm = 0.0;
+        for (final var value : vector) {
+            norm += value * value;
+        }
+        if (norm > 0) {
+            final var scale = (float) (1 / Math.sqrt(norm));
+            for (var i = 0; i < vector.length; i++) {
+                vector[i] *= scale;
+            }
+        }
+        return vector;
+    }
+
+    private static LongBuffer reuse(LongBuffer buffer, int size) {
+        if (buffer.capacity() >= size) {
+            return buffer.clear();
+        }
+        // ONNX Runtime reads direct buffers in native order without copying them
+        final var capacity = Math.max(size, buffer.capacity() * 2);
+        return ByteBuffer.allocateDirect(capacity * Long.BYTES).order(ByteOrder.nativeOrder()).asLongBuffer();
+    }
+
+    static String modelName(Path modelPath) {
+        // Exported models are usually all called model.onnx, the directory tells them apart
+        final var parent = modelPath.toAbsolutePath().getParent();
+        final var fileName = modelPath.getFileName().toString();
+        return parent == null || parent.getFileName() == null ? fileName : parent.getFileName() + "-" + fileName;
+    }
+}
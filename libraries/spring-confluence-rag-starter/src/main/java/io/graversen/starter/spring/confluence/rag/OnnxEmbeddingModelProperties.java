@@ -0,0 +1,19 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class OnnxEmbeddingModelProperties {
+    private String modelPath;
+    private String tokenizerPath;
+    private OnnxPoolingMode pooling = OnnxPoolingMode.MEAN;
+    private Boolean normalize = true;
+    private Integer maxSequenceLength = 512;
+    private Integer threads;
+    private Integer maxBatchSize = 32;
+    private Duration batchWait = Duration.ofMillis(2);
+}
@@ -0,0 +1,52 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+/**
+ * What a page was last ingested from: its version, the hash of the content its segments were built from, the hash of
+ * the splitter configuration that cut them, and the hash of its ancestors and labels. Only a page whose version,
+ * configuration and (when listed) ancestors and labels are all unchanged is skipped without being fetched.
+ */
+public record PageFingerprint(
+        @NonNull String pageId,
+        @NonNull String spaceKey,
+        int version,
+        @NonNull String contentHash,
+        @NonNull String configurationHash,
+        String metadataHash
+) {
+    public boolean isVersion(ConfluenceDtos.Version pageVersion) {
+        return pageVersion != null && pageVersion.number() != null && pageVersion.number() == version;
+    }
+
+    public boolean isCurrent(@NonNull ConfluenceDtos.PageSummary page, @NonNull String currentConfigurationHash) {
+        if (!isVersion(page.version()) || !configurationHash.equals(currentConfigurationHash)) {
+            return false;
+        }
+        // Pages listed without ancestors and labels, such as those of a job, can only be compared by version
+        final var pageMetadataHash = metadataHash(page.ancestors(), page.metadata());
+        return pageMetadataHash == null || pageMetadataHash.equals(metadataHash);
+    }
+
+    public static String metadataHash(List<ConfluenceDtos.Ancestor> ancestors, ConfluenceDtos.PageMetadata metadata) {
+        if (ancestors == null && metadata == null) {
+            return null;
+        }
+
+        final var ancestorIds = ancestors == null
+                ? ""
+                : ancestors.stream().map(ConfluenceDtos.Ancestor::id).filter(Objects::nonNull).collect(Collectors.joining(","));
+        final var labels = metadata == null || metadata.labels() == null || metadata.labels().results() == null
+                ? ""
+                : metadata.labels().results().stream()
+                        .map(ConfluenceDtos.Label::name)
+                        .filter(Objects::nonNull)
+                        .sorted()
+                        .collect(Collectors.joining(","));
+        return ContentHashes.sha256Hex(ancestorIds + "\n" + labels);
+    }
+}
@@ -0,0 +1,233 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.injector.ContentInjector;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+/**
+ * Injects retrieved content grouped by page: segments of the same page are ordered by their position in the page,
+ * the overlap between neighbouring segments is written once, and the page metadata appears once as a citation header
+ * instead of after every segment. Segments are taken in retrieval order for as long as they fit the token budget.
+ */
+@Slf4j
+public class PageGroupingContentInjector implements ContentInjector {
+    private static final String PROMPT_TEMPLATE = "%s\n\nAnswer using the following information:\n%s";
+    private static final String PAGE_SEPARATOR = "\n\n";
+    private static final String GAP = "\n\n[...]\n\n";
+
+    // Shorter matches between a segment's end and the next one's start are more likely coincidence than overlap
+    private static final int MIN_OVERLAP = 16;
+
+    private final List<String> metadataKeys;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final int tokenBudget;
+    private final ConfluenceRagObservability observability;
+
+    public PageGroupingContentInjector(
+            @NonNull List<String> metadataKeys,
+            @NonNull TokenCountEstimator tokenCountEstimator,
+            int tokenBudget,
+            @NonNull ConfluenceRagObservability observability
+    ) {
+        this.metadataKeys = List.copyOf(metadataKeys);
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.tokenBudget = tokenBudget;
+        this.observability = observability;
+    }
+
+    @Override
+    public ChatMessage inject(List<Content> contents, ChatMessage chatMessage) {
+        if (contents.isEmpty() || !(chatMessage instanceof UserMessage userMessage)) {
+            return chatMessage;
+        }
+
+        final var packed = pack(contents);
+        final var context = packed.pages().stream().map(this::render).collect(Collectors.joining(PAGE_SEPARATOR));
+        final var text = PROMPT_TEMPLATE.formatted(userMessage.singleText(), context);
+        final var injected = userMessage.name() == null ? UserMessage.from(text) : UserMessage.from(userMessage.name(), text);
+
+        report(packed, text);
+        return injected;
+    }
+
+    private Packed pack(List<Content> contents) {
+        final var pages = new LinkedHashMap<String, Page>();
+        var tokens = 0;
+        var segments = 0;
+        var savedTokens = 0;
+        for (var rank = 0; rank < contents.size(); rank++) {
+            final var segment = contents.get(rank).textSegment();
+            final var pageId = segment.metadata().getString("pageId");
+            final var attachmentId = segment.metadata().getString("attachmentId");
+            // Segments without a page cannot be merged with anything and get a group of their own. Attachments are
+            // numbered apart from the body of their page, so they are grouped apart as well
+            final var pageKey = attachmentId != null ? pageId + "/" + attachmentId : pageId == null ? "#" + rank : pageId;
+            final var page = pages.get(pageKey);
+            final var chunk = new Chunk(index(segment.metadata()), segment.text());
+
+            // Only the part not already covered by a selected neighbour counts against the budget
+            var novelText = chunk.text();
+            var headerTokens = 0;
+            // What injecting the segment on its own would have repeated: the page header and the overlap
+            var repeatedTokens = 0;
+            if (page == null) {
+                headerTokens = tokenCountEstimator.estimateTokenCountInText(header(segment.metadata()));
+            } else {
+                repeatedTokens = page.headerTokens();
+                final var previous = page.neighbour(chunk.index(), -1);
+                final var next = page.neighbour(chunk.index(), 1);
+                if (previous.isPresent()) {
+                    final var start = continuationStart(previous.get().text(), novelText);
+                    repeatedTokens += start == 0 ? 0 : tokenCountEstimator.estimateTokenCountInText(novelText.substring(0, start));
+                    novelText = novelText.substring(start);
+                }
+                if (next.isPresent()) {
+                    final var nextText = next.get().text();
+                    final var nextStart = nextText.substring(repeatedHeading(chunk.text(), nextText));
+                    final var end = novelText.length() - overlap(novelText, nextStart);
+                    repeatedTokens += end == novelText.length() ? 0 : tokenCountEstimator.estimateTokenCountInText(novelText.substring(end));
+                    novelText = novelText.substring(0, end);
+                }
+            }
+
+            final var chunkTokens = headerTokens + tokenCountEstimator.estimateTokenCountInText(novelText);
+            // Always keep the best match, even if it alone exceeds the budget
+            if (!pages.isEmpty() && tokens + chunkTokens > tokenBudget) {
+                continue;
+            }
+
+            tokens += chunkTokens;
+            segments++;
+            savedTokens += repeatedTokens;
+            final var tokensOfHeader = headerTokens;
+            pages.computeIfAbsent(pageKey, ignored -> new Page(segment.metadata(), tokensOfHeader)).chunks().add(chunk);
+        }
+        return new Packed(List.copyOf(pages.values()), segments, savedTokens);
+    }
+
+    private String render(Page page) {
+        final var chunks = page.chunks().stream()
+                .sorted(Comparator.comparing(Chunk::index, Comparator.nullsLast(Comparator.naturalOrder())))
+                .toList();
+
+        final var text = new StringBuilder(header(page.metadata()));
+        Chunk previous = null;
+        for (final var chunk : chunks) {
+            if (previous == null) {
+                text.append('\n').append(chunk.text());
+            } else if (previous.precedes(chunk)) {
+                final var start = continuationStart(previous.text(), chunk.text());
+                final var overlapping = start > repeatedHeading(previous.text(), chunk.text());
+                text.append(overlapping ? "" : "\n\n").append(chunk.text(), start, chunk.text().length());
+            } else {
+                text.append(GAP).append(chunk.text());
+            }
+            previous = chunk;
+        }
+        return text.toString();
+    }
+
+    private String header(Metadata metadata) {
+        return metadataKeys.stream()
+                .filter(key -> !"index".equals(key) && metadata.containsKey(key))
+                .map(key -> key + ": " + metadata.toMap().get(key))
+                .collect(Collectors.joining("\n"));
+    }
+
+    private void report(Packed packed, String text) {
+        final var tokens = tokenCountEstimator.estimateTokenCountInText(text);
+
+        // Saved tokens are the headers and overlaps that grouping left out, counted while packing, rather than a
+        // second, ungrouped injection of the same segments
+        observability.summary("context.tokens").record(tokens);
+        observability.summary("context.tokens.saved").record(packed.savedTokens());
+        log.debug("Injected {} segments as {} tokens, {} tokens less than injecting them one by one", packed.segments(), tokens, packed.savedTokens());
+    }
+
+    private static Integer index(Metadata metadata) {
+        final var index = metadata.getString("index");
+        try {
+            return index == null ? null : Integer.valueOf(index);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    static int continuationStart(String previous, String next) {
+        // The section splitter starts every segment of a section with its heading, which sits before the overlap
+        final var heading = repeatedHeading(previous, next);
+        return heading + overlap(previous, next.substring(heading));
+    }
+
+    /**
+     * Length of the longest suffix of {@code first} that is also a prefix of {@code second}, found with the KMP prefix
+     * function over {@code second + separator + tail of first}.
+     */
+    static int overlap(String first, String second) {
+        final var tail = first.substring(first.length() - Math.min(first.length(), second.length()));
+        final var text = second + '\u0000' + tail;
+
+        final var prefix = new int[text.length()];
+        for (var i = 1; i < text.length(); i++) {
+            var length = prefix[i - 1];
+            while (length > 0 && text.charAt(i) != text.charAt(length)) {
+                length = prefix[length - 1];
+            }
+            if (text.charAt(i) == text.charAt(length)) {
+                length++;
+            }
+            prefix[i] = length;
+        }
+
+        final var overlap = prefix[text.length() - 1];
+        return overlap >= MIN_OVERLAP ? overlap : 0;
+    }
+
+    private static int repeatedHeading(String first, String second) {
+        final var headingEnd = second.indexOf('\n');
+        if (!second.startsWith("#") || headingEnd < 0 || !first.startsWith(second.substring(0, headingEnd + 1))) {
+            return 0;
+        }
+        var end = headingEnd + 1;
+        while (end < second.length() && second.charAt(end) == '\n') {
+            end++;
+        }
+        return end;
+    }
+
+    private record Chunk(Integer index, String text) {
+        private boolean precedes(Chunk other) {
+            return index != null && other.index() != null && index + 1 == other.index();
+        }
+    }
+
+    private record Packed(List<Page> pages, int segments, int savedTokens) {
+
+    }
+
+    private record Page(Metadata metadata, int headerTokens, List<Chunk> chunks) {
+        private Page(Metadata metadata, int headerTokens) {
+            this(metadata, headerTokens, new ArrayList<>());
+        }
+
+        private Optional<Chunk> neighbour(Integer index, int offset) {
+            if (index == null) {
+                return Optional.empty();
+            }
+            return chunks.stream().filter(chunk -> Objects.equals(chunk.index(), index + offset)).findFirst();
+        }
+    }
+}
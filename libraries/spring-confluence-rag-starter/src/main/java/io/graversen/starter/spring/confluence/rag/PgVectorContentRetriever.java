@@ -0,0 +1,71 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.retriever.ContentRetriever;
+import dev.langchain4j.rag.query.Query;
+import lombok.NonNull;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.List;
+
+/**
+ * Vector-only retrieval for reduced-footprint storage. The embedding store's own search reads every matched
+ * embedding back as a {@code vector}, which fails for {@code halfvec} columns and cannot express the binary
+ * quantized prefilter, so this retriever only selects the text and metadata of the nearest segments. Scores follow
+ * the embedding store's definition, {@code (2 - cosine distance) / 2}. It also serves space filtered searches on
+ * partitioned storage, as the embedding store cannot filter on the partition key.
+ */
+public class PgVectorContentRetriever implements ContentRetriever {
+    private final JdbcTemplate queryJdbcTemplate;
+    private final EmbeddingModel embeddingModel;
+    private final ConfluenceSpaceFilter spaceFilter;
+    private final VectorSearchQuery vectorSearchQuery;
+    private final SegmentContentRowMapper rowMapper;
+    private final int maxResults;
+    private final double minScore;
+    private final String query;
+    private final String spaceFilteredQuery;
+
+    public PgVectorContentRetriever(
+            @NonNull ConfluenceRagDataSource dataSource,
+            @NonNull DatabaseProperties databaseProperties,
+            @NonNull EmbeddingModel embeddingModel,
+            @NonNull ConfluenceSpaceFilter spaceFilter,
+            int maxResults,
+            double minScore
+    ) {
+        this.queryJdbcTemplate = new JdbcTemplate(dataSource.getQueryDataSource());
+        this.embeddingModel = embeddingModel;
+        this.spaceFilter = spaceFilter;
+        this.vectorSearchQuery = new VectorSearchQuery(databaseProperties, embeddingModel.dimension());
+        this.rowMapper = new SegmentContentRowMapper(databaseProperties.getTable());
+        this.maxResults = maxResults;
+        this.minScore = minScore;
+        this.query = query(databaseProperties, false);
+        this.spaceFilteredQuery = query(databaseProperties, true);
+    }
+
+    @Override
+    public List<Content> retrieve(Query query) {
+        final var spaceKeys = spaceFilter.spaceKeys(query);
+        final var queryEmbedding = embeddingModel.embed(query.text()).content();
+        return queryJdbcTemplate.query(
+                spaceKeys.isEmpty() ? this.query : spaceFilteredQuery,
+                statement -> {
+                    final var index = vectorSearchQuery.bind(statement, 1, queryEmbedding.vector(), maxResults, spaceKeys);
+                    statement.setDouble(index, minScore);
+                },
+                rowMapper
+        );
+    }
+
+    private String query(DatabaseProperties databaseProperties, boolean spaceFiltered) {
+        return """
+                SELECT nearest.embedding_id, (2 - nearest.distance) / 2 AS score, store.text, store.metadata
+                FROM (%s) nearest JOIN %s store ON store.embedding_id = nearest.embedding_id
+                WHERE (2 - nearest.distance) / 2 >= ?
+                ORDER BY nearest.distance
+                """.formatted(vectorSearchQuery.sql(spaceFiltered), databaseProperties.getTable());
+    }
+}
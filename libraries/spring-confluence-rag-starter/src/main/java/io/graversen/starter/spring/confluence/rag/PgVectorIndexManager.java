@@ -0,0 +1,358 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Stream;
+
+@Slf4j
+public class PgVectorIndexManager implements ConfluenceIngestionListener {
+    private final JdbcTemplate jdbcTemplate;
+    private final VectorIndexProperties indexProperties;
+    private final VectorStorageProperties storageProperties;
+    private final String table;
+    private final int dimension;
+    private final SpacePartitionManager partitionManager;
+    private final String stateTable;
+
+    public PgVectorIndexManager(
+            @NonNull ConfluenceRagDataSource dataSource,
+            @NonNull DatabaseProperties databaseProperties,
+            int dimension,
+            SpacePartitionManager partitionManager
+    ) {
+        this.partitionManager = partitionManager;
+        this.jdbcTemplate = new JdbcTemplate(dataSource.getDataSource());
+        this.indexProperties = databaseProperties.getIndex();
+        this.storageProperties = databaseProperties.getStorage();
+        this.table = databaseProperties.getTable();
+        this.stateTable = databaseProperties.getTable() + "_index_state";
+        this.dimension = dimension;
+    }
+
+    public static String sessionOptions(@NonNull DatabaseProperties databaseProperties) {
+        final var indexProperties = databaseProperties.getIndex();
+        final var storageProperties = databaseProperties.getStorage();
+        // An HNSW scan returns at most ef_search rows, which would silently cap the candidates that get rescored
+        final var efSearch = storageProperties.getBinaryQuantization()
+                ? Math.max(indexProperties.getEfSearch(), storageProperties.getRescoreCandidates())
+                : indexProperties.getEfSearch();
+        // Iterative scans keep searching the index until a space filtered query has its limit, rather than filtering
+        // an unfiltered top ef_search and returning fewer rows
+        return "-c hnsw.ef_search=%d -c ivfflat.probes=%d -c hnsw.iterative_scan=strict_order -c ivfflat.iterative_scan=relaxed_order"
+                .formatted(efSearch, indexProperties.getProbes());
+    }
+
+    public static String columnType(@NonNull VectorStorageType storageType) {
+        return switch (storageType) {
+            case VECTOR -> "vector";
+            case HALFVEC -> "halfvec";
+        };
+    }
+
+    public void initialize() {
+        final var column = embeddingColumn();
+        if (column.dimension() > 0 && column.dimension() != dimension) {
+            // Vectors of different models are not comparable, the table has to be re-created and re-ingested
+            throw new IllegalStateException(
+                    "Table '%s' stores %d-dimensional embeddings, but the embedding model produces %d; configure another table or drop it to re-ingest"
+                            .formatted(table, column.dimension(), dimension)
+            );
+        }
+
+        // Rows inserted since an index was last built, per indexed table or partition, so IVFFlat rebuilds are decided
+        // on the changes of all runs, also across restarts
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    relation TEXT PRIMARY KEY,
+                    changed_rows BIGINT NOT NULL DEFAULT 0,
+                    built_at TIMESTAMPTZ
+                )
+                """.formatted(stateTable));
+
+        dropOtherIndexes();
+        dropInvalidIndexes();
+        ensureColumnType(column.type());
+
+        // Deferring the build to after the first bulk load avoids maintaining the graph on every insert, and gives
+        // IVFFlat real data to pick its list centroids from
+        if (!indexProperties.getBuildAfterBulkLoad() || hasRows()) {
+            ensureIndex();
+        }
+    }
+
+    @Override
+    public void onSegmentsStored(@NonNull String spaceKey, @NonNull String pageId, int segments) {
+        // Only IVFFlat is rebuilt; HNSW stays balanced on its own
+        if (indexProperties.getType() != VectorIndexType.IVFFLAT || segments == 0) {
+            return;
+        }
+
+        final var relation = partitionManager == null ? table : partitionManager.partitionName(spaceKey);
+        jdbcTemplate.update("""
+                        INSERT INTO %1$s (relation, changed_rows) VALUES (?, ?)
+                        ON CONFLICT (relation) DO UPDATE SET changed_rows = %1$s.changed_rows + EXCLUDED.changed_rows
+                        """.formatted(stateTable),
+                relation,
+                segments
+        );
+    }
+
+    @Override
+    public void onIngestionCompleted() {
+        if (indexProperties.getType() == VectorIndexType.NONE) {
+            return;
+        }
+        if (!indexExists()) {
+            ensureIndex();
+            return;
+        }
+        if (indexProperties.getType() != VectorIndexType.IVFFLAT) {
+            return;
+        }
+
+        // IVFFlat lists are fixed at build time and degrade as content is added, but a rebuild rescans the whole table
+        // or partition, so it waits until a sizeable part of it has changed rather than following every small sync
+        final var changes = jdbcTemplate.query(
+                "SELECT relation, changed_rows FROM %s WHERE changed_rows > 0".formatted(stateTable),
+                (resultSet, rowNumber) -> Map.entry(resultSet.getString("relation"), resultSet.getLong("changed_rows"))
+        );
+        dropInvalidIndexes();
+        changes.forEach(change -> {
+            final var relation = change.getKey();
+            final var changedRows = change.getValue();
+            final var rows = rowCount(relation);
+            if (rows < 0 || changedRows < indexProperties.getRebuildChangedFraction() * rows) {
+                return;
+            }
+
+            final var index = relation.equals(table) ? indexName() : partitionIndexName(relation);
+            if (index == null) {
+                return;
+            }
+            log.info("Rebuilding IVFFlat index '{}' after {} of {} rows of '{}' changed", index, changedRows, rows, relation);
+            if (execute("REINDEX INDEX CONCURRENTLY %s".formatted(index))) {
+                // Changes recorded during the rebuild are kept for the next decision
+                jdbcTemplate.update(
+                        "UPDATE %s SET changed_rows = changed_rows - ?, built_at = now() WHERE relation = ?".formatted(stateTable),
+                        changedRows,
+                        relation
+                );
+            }
+        });
+    }
+
+    public void ensureIndex() {
+        final var indexType = indexProperties.getType();
+        if (indexType == VectorIndexType.NONE || indexExists()) {
+            return;
+        }
+        dropInvalidIndexes();
+
+        // With binary quantization only the sign bits are indexed, the stored vectors are just read for rescoring
+        final var indexedExpression = storageProperties.getBinaryQuantization()
+                ? "(binary_quantize(embedding)::bit(%d)) bit_hamming_ops".formatted(dimension)
+                : "embedding %s_cosine_ops".formatted(columnType(storageProperties.getType()));
+        final var method = switch (indexType) {
+            case HNSW -> "hnsw (%s) WITH (m = %d, ef_construction = %d)"
+                    .formatted(indexedExpression, indexProperties.getM(), indexProperties.getEfConstruction());
+            case IVFFLAT -> "ivfflat (%s) WITH (lists = %d)".formatted(indexedExpression, indexProperties.getLists());
+            case NONE -> throw new IllegalStateException();
+        };
+
+        final var startedAt = System.currentTimeMillis();
+        log.info("Building {} index '{}' on '{}'", indexType, indexName(), table);
+        // Built concurrently, so ingestion can keep writing to the table while a bulk load is indexed
+        final var built = partitionManager == null
+                ? execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS %s ON %s USING %s".formatted(indexName(), table, method))
+                : buildPartitionedIndex(method);
+        if (built) {
+            jdbcTemplate.update("UPDATE %s SET changed_rows = 0, built_at = now()".formatted(stateTable));
+            log.info("Built {} index '{}' in {} ms", indexType, indexName(), System.currentTimeMillis() - startedAt);
+        }
+    }
+
+    private boolean buildPartitionedIndex(String method) {
+        // A partitioned table cannot be indexed concurrently. Its index is created on the parent alone, which is
+        // instant, and every partition is then indexed concurrently and attached; the parent index becomes valid once
+        // all partitions are attached, and partitions created later are indexed on creation
+        if (!execute("CREATE INDEX IF NOT EXISTS %s ON ONLY %s USING %s".formatted(indexName(), table, method))) {
+            return false;
+        }
+
+        final var partitions = jdbcTemplate.queryForList(
+                "SELECT inhrelid::regclass::text FROM pg_inherits WHERE inhparent = ?::regclass",
+                String.class,
+                table
+        );
+        var built = true;
+        for (final var partition : partitions) {
+            if (partitionIndexName(partition) != null) {
+                continue;
+            }
+            final var partitionIndex = "%s_%08x".formatted(
+                    indexName().substring(0, Math.min(indexName().length(), 54)),
+                    (partition + indexName()).hashCode()
+            );
+            built &= execute("CREATE INDEX CONCURRENTLY IF NOT EXISTS %s ON %s USING %s".formatted(partitionIndex, partition, method))
+                    && execute("ALTER INDEX %s ATTACH PARTITION %s".formatted(indexName(), partitionIndex));
+        }
+        return built;
+    }
+
+    private String partitionIndexName(String partition) {
+        // The partition's index attached to the table's index, whichever name it was created with
+        final var indexNames = jdbcTemplate.queryForList(
+                """
+                        SELECT pg_inherits.inhrelid::regclass::text FROM pg_inherits
+                        JOIN pg_index ON pg_index.indexrelid = pg_inherits.inhrelid
+                        WHERE pg_inherits.inhparent = to_regclass(?) AND pg_index.indrelid = ?::regclass
+                        """,
+                String.class,
+                indexName(),
+                partition
+        );
+        return indexNames.isEmpty() ? null : indexNames.getFirst();
+    }
+
+    private long rowCount(String relation) {
+        // The planner's estimate is plenty for a threshold, and free; it is negative until the table is first analyzed
+        final var estimate = jdbcTemplate.queryForObject(
+                "SELECT (SELECT reltuples::bigint FROM pg_class WHERE oid = to_regclass(?))",
+                Long.class,
+                relation
+        );
+        if (estimate == null) {
+            return -1;
+        }
+        return estimate >= 0 ? estimate : jdbcTemplate.queryForObject("SELECT count(*) FROM %s".formatted(relation), Long.class);
+    }
+
+    private EmbeddingColumn embeddingColumn() {
+        // pgvector stores the declared dimension of vector and halfvec columns as their type modifier
+        return jdbcTemplate.queryForObject(
+                """
+                        SELECT format_type(atttypid, atttypmod) AS type, atttypmod AS dimension FROM pg_attribute
+                        WHERE attrelid = ?::regclass AND attname = 'embedding' AND NOT attisdropped
+                        """,
+                (resultSet, rowNumber) -> new EmbeddingColumn(resultSet.getString("type"), resultSet.getInt("dimension")),
+                table
+        );
+    }
+
+    private void ensureColumnType(String currentType) {
+        final var columnType = "%s(%d)".formatted(columnType(storageProperties.getType()), dimension);
+        if (columnType.equals(currentType)) {
+            return;
+        }
+
+        // Rewrites the table once; indexes of the previous storage were dropped before, as their opclass cannot convert
+        final var startedAt = System.currentTimeMillis();
+        log.info("Converting embedding column of '{}' from {} to {}", table, currentType, columnType);
+        maintain("ALTER TABLE %s ALTER COLUMN embedding TYPE %s USING embedding::%s".formatted(table, columnType, columnType));
+        log.info("Converted embedding column of '{}' in {} ms", table, System.currentTimeMillis() - startedAt);
+    }
+
+    private boolean execute(String statement) {
+        try {
+            maintain(statement);
+            return true;
+        } catch (DataAccessException e) {
+            log.warn("Could not maintain vector index on '{}', similarity search falls back to a sequential scan", table, e);
+            return false;
+        }
+    }
+
+    private void maintain(String statement) {
+        jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+            try (final var sql = connection.createStatement()) {
+                // Index builds run far longer than the pool's statement timeout allows for regular queries. Concurrent
+                // builds cannot run in a transaction, so the settings are session wide and reset before the connection
+                // goes back to the pool, also when the build failed
+                sql.execute("SET statement_timeout = 0");
+                try {
+                    if (indexProperties.getMaintenanceWorkMem() != null) {
+                        sql.execute("SET maintenance_work_mem = '%s'".formatted(indexProperties.getMaintenanceWorkMem()));
+                    }
+                    sql.execute(statement);
+                } finally {
+                    sql.execute("RESET maintenance_work_mem");
+                    sql.execute("RESET statement_timeout");
+                }
+            }
+            return null;
+        });
+    }
+
+    private void dropOtherIndexes() {
+        final var currentIndex = indexName();
+        Arrays.stream(VectorIndexType.values())
+                .filter(indexType -> indexType != VectorIndexType.NONE)
+                .flatMap(indexType -> Stream.of("", "_halfvec", "_bq").map(variant -> indexName(indexType, variant)))
+                .filter(indexName -> !indexName.equals(currentIndex))
+                .forEach(indexName -> jdbcTemplate.execute("DROP INDEX IF EXISTS %s".formatted(indexName)));
+    }
+
+    private void dropInvalidIndexes() {
+        // A failed concurrent rebuild leaves its new copy behind as an invalid *_ccnew index, which is maintained on
+        // every write but never used by a query, and a failed concurrent build leaves the index itself invalid.
+        // Indexes of a partitioned table are left alone, they only become valid once all partitions are indexed
+        final var invalidIndexes = jdbcTemplate.queryForList(
+                """
+                        SELECT index_class.oid::regclass::text FROM pg_index
+                        JOIN pg_class index_class ON index_class.oid = pg_index.indexrelid
+                        WHERE NOT pg_index.indisvalid
+                          AND index_class.relkind = 'i'
+                          AND pg_index.indrelid IN (SELECT ?::regclass UNION ALL SELECT inhrelid FROM pg_inherits WHERE inhparent = ?::regclass)
+                        """,
+                String.class,
+                table,
+                table
+        );
+        invalidIndexes.forEach(indexName -> {
+            log.warn("Dropping invalid index '{}' left behind by a failed index build", indexName);
+            execute("DROP INDEX CONCURRENTLY IF EXISTS %s".formatted(indexName));
+        });
+    }
+
+    private boolean indexExists() {
+        final var exists = jdbcTemplate.queryForObject(
+                """
+                        SELECT EXISTS (
+                            SELECT 1 FROM pg_index
+                            JOIN pg_class index_class ON index_class.oid = pg_index.indexrelid
+                            WHERE pg_index.indrelid = ?::regclass AND index_class.relname = ? AND pg_index.indisvalid
+                        )
+                        """,
+                Boolean.class,
+                table,
+                indexName()
+        );
+        return Boolean.TRUE.equals(exists);
+    }
+
+    private boolean hasRows() {
+        final var hasRows = jdbcTemplate.queryForObject("SELECT EXISTS (SELECT 1 FROM %s)".formatted(table), Boolean.class);
+        return Boolean.TRUE.equals(hasRows);
+    }
+
+    private String indexName() {
+        // Every storage variant has its own index name, so switching storage replaces the index rather than keeping it
+        final var variant = storageProperties.getBinaryQuantization()
+                ? "_bq"
+                : storageProperties.getType() == VectorStorageType.HALFVEC ? "_halfvec" : "";
+        return indexName(indexProperties.getType(), variant);
+    }
+
+    private String indexName(VectorIndexType indexType, String variant) {
+        return "%s_embedding_%s%s_idx".formatted(table, indexType.name().toLowerCase(), variant);
+    }
+
+    private record EmbeddingColumn(String type, int dimension) {
+    }
+}
@@ -0,0 +1,152 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+@Slf4j
+public class PostgresAnswerCacheStore implements AnswerCacheStore {
+    private static final TypeReference<List<ConfluenceCitation>> CITATIONS_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final JdbcTemplate jdbcTemplate;
+    private final String cacheTable;
+    private final int dimensions;
+
+    public PostgresAnswerCacheStore(@NonNull ConfluenceRagDataSource dataSource, @NonNull DatabaseProperties databaseProperties, int dimensions) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource.getDataSource());
+        this.cacheTable = databaseProperties.getTable() + "_answer_cache";
+        this.dimensions = dimensions;
+    }
+
+    public void initialize() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    id UUID PRIMARY KEY,
+                    scope TEXT NOT NULL,
+                    question TEXT NOT NULL,
+                    embedding REAL[] NOT NULL,
+                    answer TEXT NOT NULL,
+                    citations JSON NOT NULL,
+                    page_ids TEXT[] NOT NULL,
+                    created_at TIMESTAMPTZ NOT NULL DEFAULT now()
+                )
+                """.formatted(cacheTable));
+        // Re-ingesting a page deletes every answer citing it
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS %s_page_ids_idx ON %s USING gin (page_ids)".formatted(cacheTable, cacheTable));
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS %s_created_at_idx ON %s (created_at)".formatted(cacheTable, cacheTable));
+        log.debug("Initialized answer cache table '{}'", cacheTable);
+    }
+
+    @Override
+    public List<CachedAnswer> findRecent(@NonNull Instant createdAfter, int limit) {
+        // Answers embedded by a model of another dimension cannot be compared with new questions
+        return jdbcTemplate.query(
+                """
+                        SELECT id, scope, question, embedding, answer, citations, created_at FROM %s
+                        WHERE created_at > ? AND cardinality(embedding) = ?
+                        ORDER BY created_at DESC
+                        LIMIT ?
+                        """.formatted(cacheTable),
+                (resultSet, rowNumber) -> cachedAnswer(resultSet),
+                Timestamp.from(createdAfter),
+                dimensions,
+                limit
+        );
+    }
+
+    @Override
+    public void save(@NonNull CachedAnswer cachedAnswer) {
+        final var embedding = cachedAnswer.embedding();
+        final var boxed = new Float[embedding.length];
+        for (var i = 0; i < embedding.length; i++) {
+            boxed[i] = embedding[i];
+        }
+        final var pageIds = cachedAnswer.citations().stream().map(ConfluenceCitation::pageId).toArray();
+
+        jdbcTemplate.update(
+                connection -> {
+                    final var statement = connection.prepareStatement("""
+                            INSERT INTO %s (id, scope, question, embedding, answer, citations, page_ids, created_at)
+                            VALUES (?, ?, ?, ?, ?, ?::json, ?, ?)
+                            ON CONFLICT (id) DO NOTHING
+                            """.formatted(cacheTable));
+                    statement.setObject(1, cachedAnswer.id());
+                    statement.setString(2, cachedAnswer.scope());
+                    statement.setString(3, cachedAnswer.question());
+                    statement.setArray(4, connection.createArrayOf("float4", boxed));
+                    statement.setString(5, cachedAnswer.answer());
+                    statement.setString(6, json(cachedAnswer.citations()));
+                    statement.setArray(7, connection.createArrayOf("text", pageIds));
+                    statement.setTimestamp(8, Timestamp.from(cachedAnswer.createdAt()));
+                    return statement;
+                }
+        );
+    }
+
+    @Override
+    public void deleteCiting(@NonNull String pageId) {
+        jdbcTemplate.update("DELETE FROM %s WHERE page_ids @> ARRAY[?::text]".formatted(cacheTable), pageId);
+    }
+
+    @Override
+    public void deleteUncited() {
+        jdbcTemplate.update("DELETE FROM %s WHERE cardinality(page_ids) = 0".formatted(cacheTable));
+    }
+
+    @Override
+    public void delete(@NonNull UUID id) {
+        jdbcTemplate.update("DELETE FROM %s WHERE id = ?".formatted(cacheTable), id);
+    }
+
+    @Override
+    public void prune(@NonNull Instant createdBefore, int maxEntries) {
+        // Every instance saves its own answers, so the table is capped as a whole rather than relying on each ring buffer
+        jdbcTemplate.update("DELETE FROM %s WHERE created_at < ?".formatted(cacheTable), Timestamp.from(createdBefore));
+        jdbcTemplate.update(
+                "DELETE FROM %1$s WHERE id IN (SELECT id FROM %1$s ORDER BY created_at DESC OFFSET ?)".formatted(cacheTable),
+                maxEntries
+        );
+    }
+
+    private CachedAnswer cachedAnswer(ResultSet resultSet) throws SQLException {
+        final var values = (Float[]) resultSet.getArray("embedding").getArray();
+        final var embedding = new float[values.length];
+        for (var i = 0; i < values.length; i++) {
+            embedding[i] = values[i];
+        }
+
+        try {
+            return new CachedAnswer(
+                    resultSet.getObject("id", UUID.class),
+                    resultSet.getString("scope"),
+                    resultSet.getString("question"),
+                    embedding,
+                    resultSet.getString("answer"),
+                    objectMapper.readValue(resultSet.getString("citations"), CITATIONS_TYPE),
+                    resultSet.getTimestamp("created_at").toInstant()
+            );
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read cached answer citations from '%s'".formatted(cacheTable), e);
+        }
+    }
+
+    private String json(List<ConfluenceCitation> citations) {
+        try {
+            return objectMapper.writeValueAsString(citations);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not write cached answer citations", e);
+        }
+    }
+}
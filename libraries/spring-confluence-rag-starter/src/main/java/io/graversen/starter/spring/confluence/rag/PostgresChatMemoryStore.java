@@ -0,0 +1,95 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.ChatMessageDeserializer;
+import dev.langchain4j.data.message.ChatMessageSerializer;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Slf4j
+public class PostgresChatMemoryStore implements ChatMemoryStore {
+    private static final Duration PRUNE_INTERVAL = Duration.ofHours(1);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String memoryTable;
+    private final Duration retention;
+    private final AtomicLong nextPruneAtMillis = new AtomicLong();
+
+    public PostgresChatMemoryStore(
+            @NonNull ConfluenceRagDataSource dataSource,
+            @NonNull DatabaseProperties databaseProperties,
+            @NonNull Duration retention
+    ) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource.getDataSource());
+        this.memoryTable = databaseProperties.getTable() + "_chat_memory";
+        this.retention = retention;
+    }
+
+    public void initialize() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    memory_id TEXT PRIMARY KEY,
+                    messages JSONB NOT NULL,
+                    updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
+                )
+                """.formatted(memoryTable));
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS %s_updated_at_idx ON %s (updated_at)".formatted(memoryTable, memoryTable));
+        log.debug("Initialized chat memory table '{}'", memoryTable);
+        prune();
+    }
+
+    /**
+     * Deletes conversations that were not updated within the retention.
+     */
+    public int prune() {
+        nextPruneAtMillis.set(System.currentTimeMillis() + PRUNE_INTERVAL.toMillis());
+        final var deleted = jdbcTemplate.update(
+                "DELETE FROM %s WHERE updated_at < now() - ? * interval '1 second'".formatted(memoryTable),
+                retention.toSeconds()
+        );
+        if (deleted > 0) {
+            log.debug("Pruned {} conversations older than {} from '{}'", deleted, retention, memoryTable);
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<ChatMessage> getMessages(@NonNull Object memoryId) {
+        return jdbcTemplate.query(
+                        "SELECT messages FROM %s WHERE memory_id = ?".formatted(memoryTable),
+                        (resultSet, rowNumber) -> ChatMessageDeserializer.messagesFromJson(resultSet.getString("messages")),
+                        memoryId.toString()
+                ).stream()
+                .findFirst()
+                .orElse(List.of());
+    }
+
+    @Override
+    public void updateMessages(@NonNull Object memoryId, @NonNull List<ChatMessage> messages) {
+        jdbcTemplate.update("""
+                        INSERT INTO %s (memory_id, messages, updated_at)
+                        VALUES (?, ?::jsonb, now())
+                        ON CONFLICT (memory_id) DO UPDATE SET messages = EXCLUDED.messages, updated_at = EXCLUDED.updated_at
+                        """.formatted(memoryTable),
+                memoryId.toString(),
+                ChatMessageSerializer.messagesToJson(messages)
+        );
+
+        // Writes are frequent, so abandoned conversations are pruned along with them at most once per interval
+        final var nextPruneAt = nextPruneAtMillis.get();
+        if (System.currentTimeMillis() >= nextPruneAt && nextPruneAtMillis.compareAndSet(nextPruneAt, Long.MAX_VALUE)) {
+            prune();
+        }
+    }
+
+    @Override
+    public void deleteMessages(@NonNull Object memoryId) {
+        jdbcTemplate.update("DELETE FROM %s WHERE memory_id = ?".formatted(memoryTable), memoryId.toString());
+    }
+}
@@ -0,0 +1,110 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Array;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+@Slf4j
+public class PostgresEmbeddingCache implements EmbeddingCache {
+    private final JdbcTemplate jdbcTemplate;
+    private final String cacheTable;
+    private final String modelName;
+    private final int dimensions;
+
+    public PostgresEmbeddingCache(
+            @NonNull ConfluenceRagDataSource dataSource,
+            @NonNull DatabaseProperties databaseProperties,
+            @NonNull String modelName,
+            int dimensions
+    ) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource.getDataSource());
+        this.cacheTable = databaseProperties.getTable() + "_embedding_cache";
+        this.modelName = modelName;
+        this.dimensions = dimensions;
+    }
+
+    public void initialize() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    model TEXT NOT NULL,
+                    dimensions INTEGER NOT NULL,
+                    text_hash TEXT NOT NULL,
+                    embedding REAL[] NOT NULL,
+                    created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                    PRIMARY KEY (model, dimensions, text_hash)
+                )
+                """.formatted(cacheTable));
+        log.debug("Initialized embedding cache table '{}'", cacheTable);
+    }
+
+    @Override
+    public String name() {
+        return "postgres";
+    }
+
+    @Override
+    public Map<String, float[]> getAll(@NonNull Collection<String> textHashes) {
+        final var embeddings = new HashMap<String, float[]>();
+        if (textHashes.isEmpty()) {
+            return embeddings;
+        }
+
+        jdbcTemplate.query(
+                connection -> {
+                    final var statement = connection.prepareStatement(
+                            "SELECT text_hash, embedding FROM %s WHERE model = ? AND dimensions = ? AND text_hash = ANY(?)".formatted(cacheTable)
+                    );
+                    statement.setString(1, modelName);
+                    statement.setInt(2, dimensions);
+                    statement.setArray(3, connection.createArrayOf("text", textHashes.toArray()));
+                    return statement;
+                },
+                resultSet -> {
+                    embeddings.put(resultSet.getString("text_hash"), toFloats(resultSet.getArray("embedding")));
+                }
+        );
+        return embeddings;
+    }
+
+    @Override
+    public void putAll(@NonNull Map<String, float[]> embeddingsByTextHash) {
+        final var entries = new ArrayList<>(embeddingsByTextHash.entrySet());
+        jdbcTemplate.batchUpdate(
+                """
+                        INSERT INTO %s (model, dimensions, text_hash, embedding)
+                        VALUES (?, ?, ?, ?)
+                        ON CONFLICT DO NOTHING
+                        """.formatted(cacheTable),
+                entries,
+                entries.size(),
+                (statement, entry) -> {
+                    final var embedding = entry.getValue();
+                    final var boxed = new Float[embedding.length];
+                    for (var i = 0; i < embedding.length; i++) {
+                        boxed[i] = embedding[i];
+                    }
+
+                    statement.setString(1, modelName);
+                    statement.setInt(2, dimensions);
+                    statement.setString(3, entry.getKey());
+                    statement.setArray(4, statement.getConnection().createArrayOf("float4", boxed));
+                }
+        );
+    }
+
+    private float[] toFloats(Array array) throws SQLException {
+        final var values = (Float[]) array.getArray();
+        final var embedding = new float[values.length];
+        for (var i = 0; i < values.length; i++) {
+            embedding[i] = values[i];
+        }
+        return embedding;
+    }
+}
@@ -0,0 +1,213 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+@Slf4j
+public class PostgresIngestionJobStore implements IngestionJobStore {
+    // Errors are kept for diagnosis, a full stack trace per failed page would bloat the table
+    private static final int MAX_ERROR_LENGTH = 2_000;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String jobTable;
+    private final String pageTable;
+
+    public PostgresIngestionJobStore(@NonNull ConfluenceRagDataSource dataSource, @NonNull DatabaseProperties databaseProperties) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource.getDataSource());
+        this.jobTable = databaseProperties.getTable() + "_ingestion_job";
+        this.pageTable = databaseProperties.getTable() + "_ingestion_job_page";
+    }
+
+    public void initialize() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    job_id TEXT PRIMARY KEY,
+                    status TEXT NOT NULL,
+                    spaces TEXT NOT NULL,
+                    enumerated BOOLEAN NOT NULL DEFAULT FALSE,
+                    created_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                    updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
+                )
+                """.formatted(jobTable));
+        // Jobs of earlier versions had no lease, nullable columns are added without rewriting the table
+        jdbcTemplate.execute("ALTER TABLE %s ADD COLUMN IF NOT EXISTS owner TEXT".formatted(jobTable));
+        jdbcTemplate.execute("ALTER TABLE %s ADD COLUMN IF NOT EXISTS lease_until TIMESTAMPTZ".formatted(jobTable));
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    job_id TEXT NOT NULL REFERENCES %s (job_id) ON DELETE CASCADE,
+                    page_id TEXT NOT NULL,
+                    space_key TEXT NOT NULL,
+                    title TEXT,
+                    version INTEGER,
+                    status TEXT NOT NULL,
+                    attempts INTEGER NOT NULL DEFAULT 0,
+                    last_error TEXT,
+                    updated_at TIMESTAMPTZ NOT NULL DEFAULT now(),
+                    PRIMARY KEY (job_id, page_id)
+                )
+                """.formatted(pageTable, jobTable));
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS %s_status_idx ON %s (job_id, status)".formatted(pageTable, pageTable));
+        log.debug("Initialized ingestion job tables '{}' and '{}'", jobTable, pageTable);
+    }
+
+    @Override
+    public IngestionJob create(@NonNull List<String> spaces) {
+        final var job = new IngestionJob(UUID.randomUUID().toString(), IngestionJobStatus.RUNNING, List.copyOf(spaces), false, Instant.now());
+        jdbcTemplate.update(
+                "INSERT INTO %s (job_id, status, spaces) VALUES (?, ?, ?)".formatted(jobTable),
+                job.jobId(),
+                job.status().name(),
+                String.join(",", job.spaces())
+        );
+        return job;
+    }
+
+    @Override
+    public Optional<IngestionJob> find(@NonNull String jobId) {
+        return jdbcTemplate.query(
+                "SELECT job_id, status, spaces, enumerated, created_at FROM %s WHERE job_id = ?".formatted(jobTable),
+                jobMapper(),
+                jobId
+        ).stream().findFirst();
+    }
+
+    @Override
+    public Optional<IngestionJob> findLatestRunning() {
+        return jdbcTemplate.query(
+                "SELECT job_id, status, spaces, enumerated, created_at FROM %s WHERE status = ? ORDER BY created_at DESC LIMIT 1".formatted(jobTable),
+                jobMapper(),
+                IngestionJobStatus.RUNNING.name()
+        ).stream().findFirst();
+    }
+
+    @Override
+    public boolean claim(@NonNull String jobId, @NonNull String owner, @NonNull Duration lease) {
+        // The database clock decides expiry, so instances with skewed clocks cannot steal each other's jobs
+        return jdbcTemplate.update(
+                """
+                        UPDATE %s SET owner = ?, lease_until = now() + ? * interval '1 millisecond', updated_at = now()
+                        WHERE job_id = ? AND (owner IS NULL OR owner = ? OR lease_until IS NULL OR lease_until < now())
+                        """.formatted(jobTable),
+                owner,
+                lease.toMillis(),
+                jobId,
+                owner
+        ) > 0;
+    }
+
+    @Override
+    public void release(@NonNull String jobId, @NonNull String owner) {
+        jdbcTemplate.update("UPDATE %s SET owner = NULL, lease_until = NULL WHERE job_id = ? AND owner = ?".formatted(jobTable), jobId, owner);
+    }
+
+    @Override
+    public void updateStatus(@NonNull String jobId, @NonNull IngestionJobStatus status) {
+        jdbcTemplate.update("UPDATE %s SET status = ?, updated_at = now() WHERE job_id = ?".formatted(jobTable), status.name(), jobId);
+    }
+
+    @Override
+    public void markEnumerated(@NonNull String jobId) {
+        jdbcTemplate.update("UPDATE %s SET enumerated = TRUE, updated_at = now() WHERE job_id = ?".formatted(jobTable), jobId);
+    }
+
+    @Override
+    public void addPages(@NonNull String jobId, @NonNull List<IngestionJobPage> pages) {
+        if (pages.isEmpty()) {
+            return;
+        }
+
+        // Enumeration that was interrupted is simply repeated, pages already recorded keep their status
+        jdbcTemplate.batchUpdate(
+                """
+                        INSERT INTO %s (job_id, page_id, space_key, title, version, status)
+                        VALUES (?, ?, ?, ?, ?, ?)
+                        ON CONFLICT (job_id, page_id) DO NOTHING
+                        """.formatted(pageTable),
+                pages,
+                pages.size(),
+                (statement, page) -> {
+                    statement.setString(1, jobId);
+                    statement.setString(2, page.pageId());
+                    statement.setString(3, page.spaceKey());
+                    statement.setString(4, page.title());
+                    if (page.version() == null) {
+                        statement.setNull(5, Types.INTEGER);
+                    } else {
+                        statement.setInt(5, page.version());
+                    }
+                    statement.setString(6, page.status().name());
+                }
+        );
+    }
+
+    @Override
+    public List<IngestionJobPage> findRemaining(@NonNull String jobId, int maxAttempts) {
+        return jdbcTemplate.query(
+                """
+                        SELECT page_id, space_key, title, version, status, attempts, last_error FROM %s
+                        WHERE job_id = ? AND (status = ? OR (status = ? AND attempts < ?))
+                        ORDER BY space_key, page_id
+                        """.formatted(pageTable),
+                (resultSet, rowNumber) -> new IngestionJobPage(
+                        resultSet.getString("page_id"),
+                        resultSet.getString("space_key"),
+                        resultSet.getString("title"),
+                        resultSet.getObject("version", Integer.class),
+                        IngestionPageStatus.valueOf(resultSet.getString("status")),
+                        resultSet.getInt("attempts"),
+                        resultSet.getString("last_error")
+                ),
+                jobId,
+                IngestionPageStatus.PENDING.name(),
+                IngestionPageStatus.FAILED.name(),
+                maxAttempts
+        );
+    }
+
+    @Override
+    public void updatePage(@NonNull String jobId, @NonNull String pageId, @NonNull IngestionPageStatus status, String error) {
+        jdbcTemplate.update(
+                "UPDATE %s SET status = ?, attempts = attempts + 1, last_error = ?, updated_at = now() WHERE job_id = ? AND page_id = ?".formatted(pageTable),
+                status.name(),
+                error == null || error.length() <= MAX_ERROR_LENGTH ? error : error.substring(0, MAX_ERROR_LENGTH),
+                jobId,
+                pageId
+        );
+    }
+
+    @Override
+    public Map<IngestionPageStatus, Long> countPages(@NonNull String jobId) {
+        final var counts = new EnumMap<IngestionPageStatus, Long>(IngestionPageStatus.class);
+        Arrays.stream(IngestionPageStatus.values()).forEach(status -> counts.put(status, 0L));
+        jdbcTemplate.query(
+                "SELECT status, count(*) AS pages FROM %s WHERE job_id = ? GROUP BY status".formatted(pageTable),
+                resultSet -> {
+                    counts.put(IngestionPageStatus.valueOf(resultSet.getString("status")), resultSet.getLong("pages"));
+                },
+                jobId
+        );
+        return counts;
+    }
+
+    private static RowMapper<IngestionJob> jobMapper() {
+        return (resultSet, rowNumber) -> new IngestionJob(
+                resultSet.getString("job_id"),
+                IngestionJobStatus.valueOf(resultSet.getString("status")),
+                List.of(resultSet.getString("spaces").split(",")),
+                resultSet.getBoolean("enumerated"),
+                resultSet.getTimestamp("created_at").toInstant()
+        );
+    }
+}
@@ -0,0 +1,119 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Lets one ingestion run at a time across all instances sharing the table: a full ingestion, a change-feed sync or an
+ * ingestion job. It is a Postgres session advisory lock, so the connection that took it is held until the lock is
+ * released, and an instance that dies releases it with its connection.
+ */
+@Slf4j
+public class PostgresIngestionLock {
+    private static final Duration RETRY_INTERVAL = Duration.ofSeconds(1);
+
+    private final DataSource dataSource;
+    private final String lockName;
+
+    public PostgresIngestionLock(@NonNull ConfluenceRagDataSource dataSource, @NonNull DatabaseProperties databaseProperties) {
+        this.dataSource = dataSource.getDataSource();
+        this.lockName = databaseProperties.getTable() + "_ingestion";
+    }
+
+    /**
+     * Takes the lock if no other ingestion holds it. The returned lease releases it when closed.
+     */
+    public Optional<Lease> tryAcquire(@NonNull String holder) {
+        final Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException e) {
+            throw new DataAccessResourceFailureException("Could not obtain a connection for the ingestion lock", e);
+        }
+
+        try (final var statement = connection.prepareStatement("SELECT pg_try_advisory_lock(hashtext(?))")) {
+            statement.setString(1, lockName);
+            try (final var resultSet = statement.executeQuery()) {
+                if (resultSet.next() && resultSet.getBoolean(1)) {
+                    log.debug("Acquired ingestion lock '{}' for {}", lockName, holder);
+                    return Optional.of(new Lease(connection, holder));
+                }
+            }
+        } catch (SQLException e) {
+            close(connection);
+            throw new DataAccessResourceFailureException("Could not take the ingestion lock '%s'".formatted(lockName), e);
+        }
+
+        close(connection);
+        return Optional.empty();
+    }
+
+    /**
+     * Waits for the lock until it is taken, or returns empty once {@code stopped} is true or the thread is interrupted.
+     */
+    public Optional<Lease> acquire(@NonNull String holder, @NonNull BooleanSupplier stopped) {
+        var logged = false;
+        while (!stopped.getAsBoolean()) {
+            final var lease = tryAcquire(holder);
+            if (lease.isPresent()) {
+                return lease;
+            }
+            if (!logged) {
+                log.info("⚙️ Another ingestion is in progress, {} waits for it to finish", holder);
+                logged = true;
+            }
+
+            try {
+                Thread.sleep(RETRY_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return Optional.empty();
+            }
+        }
+        return Optional.empty();
+    }
+
+    private void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.warn("Could not close the connection of ingestion lock '{}'", lockName, e);
+        }
+    }
+
+    public final class Lease implements AutoCloseable {
+        private final Connection connection;
+        private final String holder;
+
+        private Lease(Connection connection, String holder) {
+            this.connection = connection;
+            this.holder = holder;
+        }
+
+        @Override
+        public void close() {
+            try (final var statement = connection.prepareStatement("SELECT pg_advisory_unlock(hashtext(?))")) {
+                statement.setString(1, lockName);
+                statement.execute();
+                log.debug("Released ingestion lock '{}' of {}", lockName, holder);
+            } catch (SQLException e) {
+                log.warn("Could not release ingestion lock '{}' of {}", lockName, holder, e);
+                // A pooled connection would keep its session and the lock with it, so it is discarded instead
+                if (dataSource instanceof HikariDataSource hikariDataSource) {
+                    hikariDataSource.evictConnection(connection);
+                    return;
+                }
+            }
+            PostgresIngestionLock.this.close(connection);
+        }
+    }
+}
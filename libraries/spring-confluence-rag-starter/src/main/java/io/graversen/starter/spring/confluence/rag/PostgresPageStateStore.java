@@ -0,0 +1,138 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class PostgresPageStateStore implements ConfluencePageStateStore {
+    private final JdbcTemplate jdbcTemplate;
+    private final String vectorTable;
+    private final String stateTable;
+    private final String attachmentStateTable;
+
+    public PostgresPageStateStore(@NonNull ConfluenceRagDataSource dataSource, @NonNull DatabaseProperties databaseProperties) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource.getDataSource());
+        this.vectorTable = databaseProperties.getTable();
+        this.stateTable = databaseProperties.getTable() + "_page_state";
+        this.attachmentStateTable = databaseProperties.getTable() + "_attachment_state";
+    }
+
+    public void initialize() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    page_id TEXT PRIMARY KEY,
+                    space_key TEXT NOT NULL,
+                    version INTEGER NOT NULL,
+                    content_hash TEXT NOT NULL,
+                    ingested_at TIMESTAMPTZ NOT NULL DEFAULT now()
+                )
+                """.formatted(stateTable));
+        // Rows from before these columns existed match no configuration, so their pages are fetched and hashed once
+        jdbcTemplate.execute("ALTER TABLE %s ADD COLUMN IF NOT EXISTS configuration_hash TEXT NOT NULL DEFAULT ''".formatted(stateTable));
+        jdbcTemplate.execute("ALTER TABLE %s ADD COLUMN IF NOT EXISTS metadata_hash TEXT".formatted(stateTable));
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS %s_space_key_idx ON %s (space_key)".formatted(stateTable, stateTable));
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    attachment_id TEXT PRIMARY KEY,
+                    page_id TEXT NOT NULL,
+                    version INTEGER NOT NULL,
+                    ingested_at TIMESTAMPTZ NOT NULL DEFAULT now()
+                )
+                """.formatted(attachmentStateTable));
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS %s_page_id_idx ON %s (page_id)".formatted(attachmentStateTable, attachmentStateTable));
+
+        // Replacing a changed page or attachment deletes its segments by id, which must not scan the whole vector table
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS %s_page_id_idx ON %s ((metadata->>'pageId'))".formatted(vectorTable, vectorTable));
+        jdbcTemplate.execute("CREATE INDEX IF NOT EXISTS %s_attachment_id_idx ON %s ((metadata->>'attachmentId'))".formatted(vectorTable, vectorTable));
+        log.debug("Initialized page state table '{}'", stateTable);
+    }
+
+    @Override
+    public Map<String, PageFingerprint> findBySpace(@NonNull String spaceKey) {
+        return jdbcTemplate.query(
+                        """
+                                SELECT page_id, space_key, version, content_hash, configuration_hash, metadata_hash
+                                FROM %s
+                                WHERE space_key = ?
+                                """.formatted(stateTable),
+                        (resultSet, rowNumber) -> new PageFingerprint(
+                                resultSet.getString("page_id"),
+                                resultSet.getString("space_key"),
+                                resultSet.getInt("version"),
+                                resultSet.getString("content_hash"),
+                                resultSet.getString("configuration_hash"),
+                                resultSet.getString("metadata_hash")
+                        ),
+                        spaceKey
+                ).stream()
+                .collect(Collectors.toMap(PageFingerprint::pageId, Function.identity()));
+    }
+
+    @Override
+    public void save(@NonNull PageFingerprint pageFingerprint) {
+        jdbcTemplate.update("""
+                        INSERT INTO %s (page_id, space_key, version, content_hash, configuration_hash, metadata_hash, ingested_at)
+                        VALUES (?, ?, ?, ?, ?, ?, now())
+                        ON CONFLICT (page_id) DO UPDATE SET
+                            space_key = EXCLUDED.space_key,
+                            version = EXCLUDED.version,
+                            content_hash = EXCLUDED.content_hash,
+                            configuration_hash = EXCLUDED.configuration_hash,
+                            metadata_hash = EXCLUDED.metadata_hash,
+                            ingested_at = EXCLUDED.ingested_at
+                        """.formatted(stateTable),
+                pageFingerprint.pageId(),
+                pageFingerprint.spaceKey(),
+                pageFingerprint.version(),
+                pageFingerprint.contentHash(),
+                pageFingerprint.configurationHash(),
+                pageFingerprint.metadataHash()
+        );
+    }
+
+    @Override
+    public void delete(@NonNull String pageId) {
+        jdbcTemplate.update("DELETE FROM %s WHERE page_id = ?".formatted(stateTable), pageId);
+        jdbcTemplate.update("DELETE FROM %s WHERE page_id = ?".formatted(attachmentStateTable), pageId);
+    }
+
+    @Override
+    public Map<String, AttachmentFingerprint> findAttachments(@NonNull String pageId) {
+        return jdbcTemplate.query(
+                        "SELECT attachment_id, page_id, version FROM %s WHERE page_id = ?".formatted(attachmentStateTable),
+                        (resultSet, rowNumber) -> new AttachmentFingerprint(
+                                resultSet.getString("attachment_id"),
+                                resultSet.getString("page_id"),
+                                resultSet.getInt("version")
+                        ),
+                        pageId
+                ).stream()
+                .collect(Collectors.toMap(AttachmentFingerprint::attachmentId, Function.identity()));
+    }
+
+    @Override
+    public void saveAttachment(@NonNull AttachmentFingerprint attachmentFingerprint) {
+        jdbcTemplate.update("""
+                        INSERT INTO %s (attachment_id, page_id, version, ingested_at)
+                        VALUES (?, ?, ?, now())
+                        ON CONFLICT (attachment_id) DO UPDATE SET
+                            page_id = EXCLUDED.page_id,
+                            version = EXCLUDED.version,
+                            ingested_at = EXCLUDED.ingested_at
+                        """.formatted(attachmentStateTable),
+                attachmentFingerprint.attachmentId(),
+                attachmentFingerprint.pageId(),
+                attachmentFingerprint.version()
+        );
+    }
+
+    @Override
+    public void deleteAttachment(@NonNull String attachmentId) {
+        jdbcTemplate.update("DELETE FROM %s WHERE attachment_id = ?".formatted(attachmentStateTable), attachmentId);
+    }
+}
@@ -0,0 +1,60 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.Optional;
+
+@Slf4j
+public class PostgresSyncCheckpointStore implements ConfluenceSyncCheckpointStore {
+    private final JdbcTemplate jdbcTemplate;
+    private final String checkpointTable;
+
+    public PostgresSyncCheckpointStore(@NonNull ConfluenceRagDataSource dataSource, @NonNull DatabaseProperties databaseProperties) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource.getDataSource());
+        this.checkpointTable = databaseProperties.getTable() + "_sync_checkpoint";
+    }
+
+    public void initialize() {
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    space_key TEXT PRIMARY KEY,
+                    last_modified TIMESTAMPTZ NOT NULL,
+                    reconciled_at TIMESTAMPTZ NOT NULL,
+                    updated_at TIMESTAMPTZ NOT NULL DEFAULT now()
+                )
+                """.formatted(checkpointTable));
+        log.debug("Initialized sync checkpoint table '{}'", checkpointTable);
+    }
+
+    @Override
+    public Optional<SyncCheckpoint> find(@NonNull String spaceKey) {
+        return jdbcTemplate.query(
+                "SELECT space_key, last_modified, reconciled_at FROM %s WHERE space_key = ?".formatted(checkpointTable),
+                (resultSet, rowNumber) -> new SyncCheckpoint(
+                        resultSet.getString("space_key"),
+                        resultSet.getTimestamp("last_modified").toInstant(),
+                        resultSet.getTimestamp("reconciled_at").toInstant()
+                ),
+                spaceKey
+        ).stream().findFirst();
+    }
+
+    @Override
+    public void save(@NonNull SyncCheckpoint syncCheckpoint) {
+        jdbcTemplate.update("""
+                        INSERT INTO %s (space_key, last_modified, reconciled_at, updated_at)
+                        VALUES (?, ?, ?, now())
+                        ON CONFLICT (space_key) DO UPDATE SET
+                            last_modified = EXCLUDED.last_modified,
+                            reconciled_at = EXCLUDED.reconciled_at,
+                            updated_at = EXCLUDED.updated_at
+                        """.formatted(checkpointTable),
+                syncCheckpoint.spaceKey(),
+                Timestamp.from(syncCheckpoint.lastModified()),
+                Timestamp.from(syncCheckpoint.reconciledAt())
+        );
+    }
+}
@@ -0,0 +1,20 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.experimental.UtilityClass;
+
+import java.text.Normalizer;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+@UtilityClass
+public class QueryTexts {
+    private final Pattern WHITESPACE = Pattern.compile("\\s+");
+    private final Pattern TRAILING_PUNCTUATION = Pattern.compile("[\\s?!.]+$");
+
+    public String normalize(@NonNull String queryText) {
+        final var normalized = Normalizer.normalize(queryText, Normalizer.Form.NFC).toLowerCase(Locale.ROOT);
+        final var collapsed = WHITESPACE.matcher(normalized).replaceAll(" ").strip();
+        return TRAILING_PUNCTUATION.matcher(collapsed).replaceAll("");
+    }
+}
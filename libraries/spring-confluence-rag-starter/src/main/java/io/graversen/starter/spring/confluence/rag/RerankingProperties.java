@@ -0,0 +1,14 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class RerankingProperties {
+    private Boolean enabled = false;
+    private Integer candidates = 20;
+    private Integer contextTokenBudget = 2_000;
+    private Double retrievalScoreWeight = 0.3;
+    private Double minScore;
+}
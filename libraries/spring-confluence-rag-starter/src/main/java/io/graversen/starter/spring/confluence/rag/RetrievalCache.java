@@ -0,0 +1,162 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.rag.content.Content;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+@Slf4j
+public class RetrievalCache implements ConfluenceIngestionListener, MeterBinder {
+    private final int maxResults;
+    private final Cache<String, CachedContents> contents;
+    private final Cache<String, Embedding> queryEmbeddings;
+    private final Set<String> partialResults = ConcurrentHashMap.newKeySet();
+    private final ConcurrentHashMap<String, Set<String>> queriesByPageId = new ConcurrentHashMap<>();
+    // Advanced by every ingestion event, before its evictions, so a retrieval that overlapped one is never cached
+    private final AtomicLong generation = new AtomicLong();
+    private final LongAdder evictionsByIngestion = new LongAdder();
+    private final LongAdder nanosSaved = new LongAdder();
+
+    public RetrievalCache(@NonNull RetrievalCacheProperties retrievalCacheProperties, int maxResults) {
+        this.maxResults = maxResults;
+        this.contents = Caffeine.newBuilder()
+                .maximumSize(retrievalCacheProperties.getMaxResults())
+                .expireAfterWrite(retrievalCacheProperties.getTimeToLive())
+                .removalListener(this::onContentsRemoved)
+                .recordStats()
+                .build();
+        this.queryEmbeddings = Caffeine.newBuilder()
+                .maximumSize(retrievalCacheProperties.getMaxQueryEmbeddings())
+                .expireAfterWrite(retrievalCacheProperties.getTimeToLive())
+                .recordStats()
+                .build();
+    }
+
+    public List<Content> contents(@NonNull String queryKey, @NonNull Supplier<List<Content>> retrieval) {
+        final var cached = contents.getIfPresent(queryKey);
+        if (cached != null) {
+            nanosSaved.add(cached.retrievalNanos());
+            return cached.contents();
+        }
+
+        final var startedGeneration = generation.get();
+        final var startedAtNanos = System.nanoTime();
+        final var retrieved = retrieval.get();
+        final var retrievalNanos = System.nanoTime() - startedAtNanos;
+        if (generation.get() != startedGeneration) {
+            log.debug("Not caching retrieval results that overlapped an ingestion");
+            return retrieved;
+        }
+
+        pageIds(retrieved).forEach(pageId -> queriesByPageId.computeIfAbsent(pageId, ignored -> ConcurrentHashMap.newKeySet()).add(queryKey));
+        if (retrieved.size() < maxResults) {
+            partialResults.add(queryKey);
+        }
+
+        contents.put(queryKey, new CachedContents(List.copyOf(retrieved), retrievalNanos));
+        // An ingestion between the check above and the put may have evicted before there was anything to evict
+        if (generation.get() != startedGeneration) {
+            contents.invalidate(queryKey);
+        }
+        return retrieved;
+    }
+
+    public Embedding queryEmbedding(@NonNull String queryText, @NonNull Function<String, Embedding> embedding) {
+        return queryEmbeddings.get(QueryTexts.normalize(queryText), ignored -> embedding.apply(queryText));
+    }
+
+    @Override
+    public void bindTo(@NonNull MeterRegistry registry) {
+        CaffeineCacheMetrics.monitor(registry, contents, ConfluenceRagObservability.metricName("retrieval.cache.results"));
+        CaffeineCacheMetrics.monitor(registry, queryEmbeddings, ConfluenceRagObservability.metricName("retrieval.cache.query-embeddings"));
+        FunctionCounter.builder(ConfluenceRagObservability.metricName("retrieval.cache.evictions.ingestion"), evictionsByIngestion, LongAdder::sum)
+                .register(registry);
+        FunctionCounter.builder(ConfluenceRagObservability.metricName("retrieval.cache.latency.saved"), nanosSaved, adder -> adder.sum() / (double) TimeUnit.SECONDS.toNanos(1))
+                .baseUnit("seconds")
+                .register(registry);
+    }
+
+    public RetrievalCacheStatistics getStatistics() {
+        final var contentStats = contents.stats();
+        final var queryEmbeddingStats = queryEmbeddings.stats();
+        return new RetrievalCacheStatistics(
+                contentStats.hitCount(),
+                contentStats.missCount(),
+                queryEmbeddingStats.hitCount(),
+                queryEmbeddingStats.missCount(),
+                evictionsByIngestion.sum(),
+                Duration.ofNanos(nanosSaved.sum())
+        );
+    }
+
+    @Override
+    public void onPageIngested(@NonNull String spaceKey, @NonNull String pageId) {
+        generation.incrementAndGet();
+        final var queryKeys = queriesByPageId.remove(pageId);
+        if (queryKeys != null) {
+            evict(queryKeys);
+        }
+    }
+
+    @Override
+    public void onPageRemoved(@NonNull String spaceKey, @NonNull String pageId) {
+        onPageIngested(spaceKey, pageId);
+    }
+
+    @Override
+    public void onSpaceIngested(@NonNull String spaceKey) {
+        generation.incrementAndGet();
+        // Results that did not fill up top-K may now match content that was just ingested
+        evict(Set.copyOf(partialResults));
+    }
+
+    private void evict(Set<String> queryKeys) {
+        evictionsByIngestion.add(queryKeys.stream().filter(contents.asMap()::containsKey).count());
+        contents.invalidateAll(queryKeys);
+        log.debug("Evicted {} cached retrieval results after ingestion", queryKeys.size());
+    }
+
+    private void onContentsRemoved(String queryKey, CachedContents cachedContents, RemovalCause removalCause) {
+        if (removalCause == RemovalCause.REPLACED) {
+            return;
+        }
+
+        partialResults.remove(queryKey);
+        if (cachedContents != null) {
+            pageIds(cachedContents.contents()).forEach(pageId -> queriesByPageId.computeIfPresent(pageId, (ignored, queryKeys) -> {
+                queryKeys.remove(queryKey);
+                return queryKeys.isEmpty() ? null : queryKeys;
+            }));
+        }
+    }
+
+    private static Set<String> pageIds(List<Content> contents) {
+        return contents.stream()
+                .map(content -> content.textSegment().metadata().getString("pageId"))
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+    }
+
+    private record CachedContents(List<Content> contents, long retrievalNanos) {
+
+    }
+}
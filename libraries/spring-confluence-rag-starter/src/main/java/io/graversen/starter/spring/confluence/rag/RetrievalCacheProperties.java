@@ -0,0 +1,15 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class RetrievalCacheProperties {
+    private Boolean enabled = false;
+    private Integer maxResults = 10_000;
+    private Integer maxQueryEmbeddings = 10_000;
+    private Duration timeToLive = Duration.ofHours(1);
+}
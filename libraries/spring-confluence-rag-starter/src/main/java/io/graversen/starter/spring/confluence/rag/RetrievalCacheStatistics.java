@@ -0,0 +1,22 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import java.time.Duration;
+
+public record RetrievalCacheStatistics(
+        long resultHits,
+        long resultMisses,
+        long queryEmbeddingHits,
+        long queryEmbeddingMisses,
+        long evictionsByIngestion,
+        Duration latencySaved
+) {
+    public double resultHitRate() {
+        final var lookups = resultHits + resultMisses;
+        return lookups == 0 ? 0.0 : (double) resultHits / lookups;
+    }
+
+    public double queryEmbeddingHitRate() {
+        final var lookups = queryEmbeddingHits + queryEmbeddingMisses;
+        return lookups == 0 ? 0.0 : (double) queryEmbeddingHits / lookups;
+    }
+}
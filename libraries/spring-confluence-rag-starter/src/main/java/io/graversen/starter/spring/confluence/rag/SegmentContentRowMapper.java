@@ -0,0 +1,51 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import lombok.NonNull;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+
+/**
+ * Maps rows with {@code embedding_id}, {@code score}, {@code text} and {@code metadata} columns of the vector store
+ * table to retrieved content.
+ */
+public class SegmentContentRowMapper implements RowMapper<Content> {
+    private static final TypeReference<Map<String, Object>> METADATA_TYPE = new TypeReference<>() {
+    };
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String table;
+
+    public SegmentContentRowMapper(@NonNull String table) {
+        this.table = table;
+    }
+
+    @Override
+    public Content mapRow(ResultSet resultSet, int rowNumber) throws SQLException {
+        final var segment = TextSegment.from(resultSet.getString("text"), metadata(resultSet.getString("metadata")));
+        return Content.from(segment, Map.of(
+                ContentMetadata.SCORE, resultSet.getDouble("score"),
+                ContentMetadata.EMBEDDING_ID, resultSet.getString("embedding_id")
+        ));
+    }
+
+    private Metadata metadata(String json) {
+        if (json == null || json.isBlank()) {
+            return new Metadata();
+        }
+        try {
+            return Metadata.from(objectMapper.readValue(json, METADATA_TYPE));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not read segment metadata from '%s'".formatted(table), e);
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.embedding.EmbeddingModel;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static io.graversen.starter.spring.confluence.rag.IngestionThroughput.Stage;
+
+@Slf4j
+public class SegmentEmbeddingPipeline implements AutoCloseable {
+    private final EmbeddingModel embeddingModel;
+    private final EmbeddingStore<TextSegment> embeddingStore;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final IngestionProperties ingestionProperties;
+    private final IngestionThroughput throughput;
+    private final ConfluenceRagObservability observability;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<CompletableFuture<Void>> inFlight = ConcurrentHashMap.newKeySet();
+    private final Semaphore inFlightPermits;
+
+    private final Object lock = new Object();
+    private List<PendingSegment> pending = new ArrayList<>();
+    private int pendingTokens = 0;
+
+    public SegmentEmbeddingPipeline(
+            @NonNull EmbeddingModel embeddingModel,
+            @NonNull EmbeddingStore<TextSegment> embeddingStore,
+            @NonNull TokenCountEstimator tokenCountEstimator,
+            @NonNull IngestionProperties ingestionProperties,
+            @NonNull IngestionThroughput throughput,
+            @NonNull ConfluenceRagObservability observability
+    ) {
+        this.embeddingModel = embeddingModel;
+        this.embeddingStore = embeddingStore;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.ingestionProperties = ingestionProperties;
+        this.throughput = throughput;
+        this.observability = observability;
+        this.inFlightPermits = new Semaphore(Math.max(ingestionProperties.getEmbeddingConcurrency(), 1));
+    }
+
+    public CompletableFuture<Void> submit(@NonNull List<TextSegment> segments) {
+        if (segments.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final var page = new PendingPage(segments.size());
+        for (final var segment : segments) {
+            final var tokens = tokenCountEstimator.estimateTokenCountInText(segment.text());
+            List<PendingSegment> batch = null;
+
+            synchronized (lock) {
+                if (!pending.isEmpty() && exceedsBatchLimits(tokens)) {
+                    batch = drain();
+                }
+                pending.add(new PendingSegment(segment, page));
+                pendingTokens += tokens;
+            }
+
+            if (batch != null) {
+                dispatch(batch);
+            }
+        }
+
+        return page.stored;
+    }
+
+    public void flush() {
+        final List<PendingSegment> batch;
+        synchronized (lock) {
+            batch = drain();
+        }
+
+        if (!batch.isEmpty()) {
+            dispatch(batch);
+        }
+
+        CompletableFuture.allOf(inFlight.toArray(CompletableFuture[]::new))
+                .handle((ignored, throwable) -> null)
+                .join();
+    }
+
+    @Override
+    public void close() {
+        flush();
+        executor.close();
+    }
+
+    private boolean exceedsBatchLimits(int tokens) {
+        return pendingTokens + tokens > ingestionProperties.getEmbeddingBatchMaxTokens()
+                || pending.size() >= ingestionProperties.getEmbeddingBatchMaxSegments();
+    }
+
+    private List<PendingSegment> drain() {
+        final var batch = pending;
+        pending = new ArrayList<>();
+        pendingTokens = 0;
+        return batch;
+    }
+
+    private void dispatch(List<PendingSegment> batch) {
+        inFlightPermits.acquireUninterruptibly();
+        final var embedding = CompletableFuture.runAsync(() -> embedAndStore(batch), executor);
+        inFlight.add(embedding);
+        embedding.whenComplete((ignored, throwable) -> {
+            inFlight.remove(embedding);
+            inFlightPermits.release();
+            if (throwable != null) {
+                log.error("⚙️ Failed to embed and store a batch of {} segments", batch.size(), throwable);
+                batch.forEach(pendingSegment -> pendingSegment.page().stored.completeExceptionally(throwable));
+            }
+        });
+    }
+
+    private void embedAndStore(List<PendingSegment> batch) {
+        final var segments = batch.stream().map(PendingSegment::segment).toList();
+        final List<Embedding> embeddings = throughput.measure(Stage.EMBED, segments.size(), () -> embeddingModel.embedAll(segments).content());
+
+        final var storeBatchSize = Math.max(ingestionProperties.getStoreBatchSize(), 1);
+        for (var from = 0; from < segments.size(); from += storeBatchSize) {
+            final var to = Math.min(from + storeBatchSize, segments.size());
+            final var embeddingsBatch = embeddings.subList(from, to);
+            final var segmentsBatch = segments.subList(from, to);
+            throughput.measure(Stage.STORE, segmentsBatch.size(), () -> observability.observe("store.write", () -> embeddingStore.addAll(embeddingsBatch, segmentsBatch)));
+            observability.counter("store.segments").increment(segmentsBatch.size());
+            batch.subList(from, to).forEach(pendingSegment -> pendingSegment.page().segmentStored());
+        }
+
+        log.debug("⚙️ Embedded and stored a batch of {} segments", segments.size());
+    }
+
+    private record PendingSegment(TextSegment segment, PendingPage page) {
+
+    }
+
+    private static class PendingPage {
+        private final AtomicInteger remaining;
+        private final CompletableFuture<Void> stored = new CompletableFuture<>();
+
+        private PendingPage(int segments) {
+            this.remaining = new AtomicInteger(segments);
+        }
+
+        private void segmentStored() {
+            if (remaining.decrementAndGet() == 0) {
+                stored.complete(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Owns the layout of a vector store table that is list-partitioned by space key: every space gets a partition of its
+ * own, which is created on its first insert and carries its own copy of the vector index. Space filters prune the
+ * other partitions before the index is scanned, and removing a space drops its partition instead of deleting rows.
+ */
+@Slf4j
+public class SpacePartitionManager {
+    private static final int MAX_IDENTIFIER_LENGTH = 63;
+
+    private final Set<String> partitionedSpaces = ConcurrentHashMap.newKeySet();
+    private final JdbcTemplate jdbcTemplate;
+    private final String table;
+    private final int dimension;
+
+    public SpacePartitionManager(@NonNull ConfluenceRagDataSource dataSource, @NonNull DatabaseProperties databaseProperties, int dimension) {
+        this.jdbcTemplate = new JdbcTemplate(dataSource.getDataSource());
+        this.table = databaseProperties.getTable();
+        this.dimension = dimension;
+    }
+
+    public void initialize() {
+        final var relationKind = jdbcTemplate.queryForObject(
+                "SELECT (SELECT relkind FROM pg_class WHERE oid = to_regclass(?))::text",
+                String.class,
+                table
+        );
+        if ("r".equals(relationKind)) {
+            // Rows cannot be moved into partitions in place, the table has to be re-created and re-ingested
+            throw new IllegalStateException(
+                    "Table '%s' is not partitioned by space; configure another table or drop it to re-ingest".formatted(table)
+            );
+        }
+
+        // The embedding store creates its table only if it does not exist, so this layout takes precedence. The key
+        // must include the partition key; leading with the id keeps lookups of retrieved segments indexed
+        jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS vector");
+        jdbcTemplate.execute("""
+                CREATE TABLE IF NOT EXISTS %s (
+                    embedding_id UUID NOT NULL,
+                    embedding vector(%d),
+                    text TEXT NULL,
+                    metadata JSON NULL,
+                    space_key TEXT NOT NULL,
+                    PRIMARY KEY (embedding_id, space_key)
+                ) PARTITION BY LIST (space_key)
+                """.formatted(table, dimension));
+        log.debug("Initialized space partitioned table '{}'", table);
+    }
+
+    public void ensurePartition(@NonNull String spaceKey) {
+        if (partitionedSpaces.contains(spaceKey)) {
+            return;
+        }
+
+        // Serialized, as concurrent CREATE TABLE IF NOT EXISTS of the same partition can still collide in the catalog
+        synchronized (this) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS %s PARTITION OF %s FOR VALUES IN (%s)"
+                    .formatted(partitionName(spaceKey), table, literal(spaceKey)));
+            partitionedSpaces.add(spaceKey);
+        }
+    }
+
+    public synchronized void dropPartition(@NonNull String spaceKey) {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS %s".formatted(partitionName(spaceKey)));
+        partitionedSpaces.remove(spaceKey);
+        log.info("Dropped partition of space '{}' from '{}'", spaceKey, table);
+    }
+
+    public String partitionName(@NonNull String spaceKey) {
+        // Personal space keys start with a tilde, and keys only differing in case are distinct spaces
+        final var suffix = spaceKey.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]", "_");
+        // Postgres silently truncates identifiers past 63 bytes, which would cut off the hash that keeps long keys
+        // apart, so the readable part is shortened instead
+        final var name = "%s_space_%s".formatted(table, suffix);
+        return "%s_%08x".formatted(name.substring(0, Math.min(name.length(), MAX_IDENTIFIER_LENGTH - 9)), spaceKey.hashCode());
+    }
+
+    private static String literal(String value) {
+        return "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,135 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.pgvector.PGvector;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import lombok.NonNull;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+/**
+ * Writes segments into the space partitioned table. The wrapped store's insert targets {@code ON CONFLICT
+ * (embedding_id)}, which a partitioned table cannot back with a unique index, so segments are inserted here with their
+ * space key as the partition key. Removing all segments of a space drops its partition; searches and all other
+ * removals are left to the wrapped store.
+ */
+public class SpacePartitionedEmbeddingStore implements EmbeddingStore<TextSegment> {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final EmbeddingStore<TextSegment> delegate;
+    private final SpacePartitionManager partitionManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final String insert;
+
+    public SpacePartitionedEmbeddingStore(
+            @NonNull EmbeddingStore<TextSegment> delegate,
+            @NonNull SpacePartitionManager partitionManager,
+            @NonNull ConfluenceRagDataSource dataSource,
+            @NonNull DatabaseProperties databaseProperties
+    ) {
+        this.delegate = delegate;
+        this.partitionManager = partitionManager;
+        this.jdbcTemplate = new JdbcTemplate(dataSource.getDataSource());
+        this.insert = "INSERT INTO %s (embedding_id, embedding, text, metadata, space_key) VALUES (?::uuid, ?, ?, ?::json, ?)"
+                .formatted(databaseProperties.getTable());
+    }
+
+    @Override
+    public String add(Embedding embedding) {
+        throw new IllegalArgumentException("Segments of a space partitioned store require a space key");
+    }
+
+    @Override
+    public void add(String id, Embedding embedding) {
+        throw new IllegalArgumentException("Segments of a space partitioned store require a space key");
+    }
+
+    @Override
+    public String add(Embedding embedding, TextSegment textSegment) {
+        final var id = UUID.randomUUID().toString();
+        addAll(List.of(id), List.of(embedding), List.of(textSegment));
+        return id;
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings) {
+        throw new IllegalArgumentException("Segments of a space partitioned store require a space key");
+    }
+
+    @Override
+    public List<String> addAll(List<Embedding> embeddings, List<TextSegment> textSegments) {
+        final var ids = IntStream.range(0, embeddings.size()).mapToObj(i -> UUID.randomUUID().toString()).toList();
+        addAll(ids, embeddings, textSegments);
+        return ids;
+    }
+
+    @Override
+    public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> textSegments) {
+        if (ids.size() != embeddings.size() || textSegments == null || textSegments.size() != embeddings.size()) {
+            throw new IllegalArgumentException("Every embedding requires an id and a segment");
+        }
+
+        final var spaceKeys = new HashSet<String>();
+        for (final var textSegment : textSegments) {
+            final var spaceKey = textSegment.metadata().getString("spaceKey");
+            if (spaceKey == null) {
+                throw new IllegalArgumentException("Segments of a space partitioned store require a space key");
+            }
+            spaceKeys.add(spaceKey);
+        }
+        spaceKeys.forEach(partitionManager::ensurePartition);
+
+        final var rows = IntStream.range(0, ids.size()).boxed().toList();
+        jdbcTemplate.batchUpdate(insert, rows, rows.size(), (statement, i) -> {
+            final var textSegment = textSegments.get(i);
+            statement.setString(1, ids.get(i));
+            statement.setObject(2, new PGvector(embeddings.get(i).vector()));
+            statement.setString(3, textSegment.text());
+            statement.setString(4, json(textSegment));
+            statement.setString(5, textSegment.metadata().getString("spaceKey"));
+        });
+    }
+
+    @Override
+    public void removeAll(Collection<String> ids) {
+        delegate.removeAll(ids);
+    }
+
+    @Override
+    public void removeAll(Filter filter) {
+        if (filter instanceof IsEqualTo isEqualTo && "spaceKey".equals(isEqualTo.key())) {
+            partitionManager.dropPartition(String.valueOf(isEqualTo.comparisonValue()));
+            return;
+        }
+        delegate.removeAll(filter);
+    }
+
+    @Override
+    public void removeAll() {
+        delegate.removeAll();
+    }
+
+    @Override
+    public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+        return delegate.search(request);
+    }
+
+    private String json(TextSegment textSegment) {
+        try {
+            return objectMapper.writeValueAsString(textSegment.metadata().toMap());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Could not write segment metadata", e);
+        }
+    }
+}
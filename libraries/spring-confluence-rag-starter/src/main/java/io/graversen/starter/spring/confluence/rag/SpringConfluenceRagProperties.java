@@ -12,6 +12,9 @@ public class SpringConfluenceRagProperties {
     @NestedConfigurationProperty
     private ConfluenceProperties confluence = new ConfluenceProperties();
 
+    @NestedConfigurationProperty
+    private IngestionProperties ingestion = new IngestionProperties();
+
     @NestedConfigurationProperty
     private EmbeddingModelProperties embeddingModel = new EmbeddingModelProperties();
 
@@ -0,0 +1,659 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import org.apache.commons.text.StringEscapeUtils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Converts Confluence storage format (XHTML with {@code ac:} and {@code ri:} elements) to Markdown in a single pass.
+ * Unlike {@link Html2MarkdownContentFormatter} no DOM is built: the input is tokenized once and Markdown is emitted
+ * into per-element buffers, which only live as long as the element is open. Elements outside the relaxed HTML
+ * safelist are dropped while their text is kept; macros are rendered instead of being discarded, and the first row of a
+ * table without header cells becomes its header so that the table stays valid Markdown.
+ */
+public class StorageFormatMarkdownFormatter implements ConfluenceContentFormatter {
+    private static final String ROOT = "#root";
+    private static final Set<String> FRAMES = Set.of(
+            "h1", "h2", "h3", "h4", "h5", "h6",
+            "strong", "b", "em", "i", "code", "del", "s", "strike", "a",
+            "ul", "ol", "li", "pre", "blockquote", "table", "tr", "th", "td",
+            "script", "style", "ac:placeholder", "ac:task-id",
+            "ac:structured-macro", "ac:macro", "ac:parameter", "ac:rich-text-body", "ac:plain-text-body",
+            "ac:link", "ac:link-body", "ac:plain-text-link-body", "ac:image",
+            "ac:task-list", "ac:task", "ac:task-status"
+    );
+    private static final Set<String> BLOCKS = Set.of(
+            "p", "div", "section", "header", "footer", "article", "dl", "dt", "dd", "caption", "figure",
+            "ac:layout", "ac:layout-section", "ac:layout-cell", "ac:task-body"
+    );
+    private static final Set<String> DISCARDED = Set.of("script", "style", "ac:placeholder", "ac:task-id");
+    private static final Set<String> MACROS = Set.of("ac:structured-macro", "ac:macro");
+    private static final Set<String> SAFE_SCHEMES = Set.of("http", "https", "mailto");
+    private static final Pattern SCHEME = Pattern.compile("([a-zA-Z][a-zA-Z0-9+.-]*):");
+    private static final Set<String> CALLOUTS = Set.of("info", "note", "warning", "tip");
+    private static final Set<String> BODILESS_MACROS = Set.of(
+            "anchor", "toc", "children", "pagetree", "recently-updated", "attachments", "livesearch", "contentbylabel",
+            "create-from-template", "profile", "gallery"
+    );
+
+    @Override
+    public String formatContent(@NonNull String pageContent) {
+        return new Conversion(pageContent).convert();
+    }
+
+    private static final class Frame {
+        private final String name;
+        private final Map<String, String> attributes;
+        private final StringBuilder text = new StringBuilder();
+
+        private int items;
+        private List<String> cells;
+        private List<List<String>> rows;
+        private Map<String, String> parameters;
+        private String richBody;
+        private String plainBody;
+        private String target;
+        private String href;
+        private String body;
+        private String status;
+
+        private Frame(String name, Map<String, String> attributes) {
+            this.name = name;
+            this.attributes = attributes;
+        }
+    }
+
+    private static final class Conversion {
+        private final String source;
+        private final Deque<Frame> frames = new ArrayDeque<>();
+        private int verbatimDepth;
+        private int codeDepth;
+
+        private Conversion(String source) {
+            this.source = source;
+            this.frames.push(new Frame(ROOT, Map.of()));
+        }
+
+        private String convert() {
+            final var length = source.length();
+            var position = 0;
+            while (position < length) {
+                final var tagStart = source.indexOf('<', position);
+                if (tagStart < 0) {
+                    text(source.substring(position));
+                    break;
+                }
+                if (tagStart > position) {
+                    text(source.substring(position, tagStart));
+                }
+                position = markup(tagStart);
+            }
+
+            while (frames.size() > 1) {
+                close(frames.pop());
+            }
+            return frames.peek().text.toString().strip();
+        }
+
+        private int markup(int tagStart) {
+            if (source.startsWith("<!--", tagStart)) {
+                return skipPast("-->", tagStart + 4);
+            }
+            if (source.startsWith("<![CDATA[", tagStart)) {
+                final var end = source.indexOf("]]>", tagStart + 9);
+                frames.peek().text.append(source, tagStart + 9, end < 0 ? source.length() : end);
+                return end < 0 ? source.length() : end + 3;
+            }
+            if (source.startsWith("<!", tagStart) || source.startsWith("<?", tagStart)) {
+                return skipPast(">", tagStart + 2);
+            }
+
+            final var next = tagStart + 1 < source.length() ? source.charAt(tagStart + 1) : ' ';
+            if (next != '/' && !Character.isLetter(next)) {
+                text("<");
+                return tagStart + 1;
+            }
+
+            final var tagEnd = tagEnd(tagStart + 1);
+            if (tagEnd < 0) {
+                text(source.substring(tagStart));
+                return source.length();
+            }
+
+            if (next == '/') {
+                endTag(source.substring(tagStart + 2, tagEnd).strip().toLowerCase(Locale.ROOT));
+            } else {
+                startTag(tagStart + 1, tagEnd);
+            }
+            return tagEnd + 1;
+        }
+
+        private int skipPast(String terminator, int from) {
+            final var end = source.indexOf(terminator, from);
+            return end < 0 ? source.length() : end + terminator.length();
+        }
+
+        private int tagEnd(int from) {
+            var quote = (char) 0;
+            for (var i = from; i < source.length(); i++) {
+                final var c = source.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void startTag(int from, int to) {
+            var nameEnd = from;
+            while (nameEnd < to && !Character.isWhitespace(source.charAt(nameEnd)) && source.charAt(nameEnd) != '/') {
+                nameEnd++;
+            }
+            final var name = source.substring(from, nameEnd).toLowerCase(Locale.ROOT);
+            final var selfClosing = source.charAt(to - 1) == '/';
+            final var attributes = nameEnd < to ? attributes(nameEnd, selfClosing ? to - 1 : to) : Map.<String, String>of();
+
+            if (FRAMES.contains(name) && !selfClosing) {
+                open(name, attributes);
+                return;
+            }
+
+            final var current = frames.peek();
+            switch (name) {
+                case "br" -> current.text.append(verbatimDepth > 0 ? "\n" : "  \n");
+                case "hr" -> {
+                    blankLine(current.text);
+                    current.text.append("---");
+                    blankLine(current.text);
+                }
+                case "img" -> image(current, attributes.getOrDefault("alt", ""), attributes.get("src"));
+                case "time" -> text(attributes.getOrDefault("datetime", ""));
+                case "ri:page", "ri:blog-post" -> linkTarget(attributes.get("ri:content-title"), null);
+                case "ri:attachment" -> linkTarget(attributes.get("ri:filename"), attributes.get("ri:filename"));
+                case "ri:url" -> linkTarget(attributes.get("ri:value"), attributes.get("ri:value"));
+                case "ri:space" -> linkTarget(attributes.get("ri:space-key"), null);
+                case "ri:user" -> linkTarget("@" + attributes.getOrDefault("ri:username", "user"), null);
+                case "ac:structured-macro", "ac:macro" -> renderMacro(new Frame(name, attributes), current);
+                default -> {
+                    if (BLOCKS.contains(name)) {
+                        blankLine(current.text);
+                    }
+                }
+            }
+        }
+
+        private void endTag(String name) {
+            if (BLOCKS.contains(name)) {
+                blankLine(frames.peek().text);
+                return;
+            }
+            if (!FRAMES.contains(name) || frames.stream().noneMatch(frame -> frame.name.equals(name))) {
+                return;
+            }
+
+            // Unclosed elements inside the one being closed are closed implicitly, as an HTML parser would
+            while (!frames.peek().name.equals(name)) {
+                close(frames.pop());
+            }
+            close(frames.pop());
+        }
+
+        private void open(String name, Map<String, String> attributes) {
+            final var frame = new Frame(name, attributes);
+            switch (name) {
+                case "pre", "ac:plain-text-body", "ac:plain-text-link-body" -> verbatimDepth++;
+                case "code" -> codeDepth++;
+                case "table" -> frame.rows = new ArrayList<>();
+                case "tr" -> frame.cells = new ArrayList<>();
+                case "ac:structured-macro", "ac:macro" -> frame.parameters = new HashMap<>();
+                default -> {
+                }
+            }
+            frames.push(frame);
+        }
+
+        private void close(Frame frame) {
+            final var parent = frames.peek();
+            final var text = frame.text.toString();
+            if (frame.name.equals("code")) {
+                codeDepth--;
+            }
+            if (verbatimDepth > 0 && isInline(frame)) {
+                // Formatting inside preformatted text is not Markdown, keep the text exactly as it is
+                parent.text.append(text);
+                return;
+            }
+
+            switch (frame.name) {
+                case "h1", "h2", "h3", "h4", "h5", "h6" -> {
+                    final var heading = singleLine(text);
+                    if (!heading.isEmpty()) {
+                        blankLine(parent.text);
+                        parent.text.append("#".repeat(frame.name.charAt(1) - '0')).append(' ').append(heading);
+                        blankLine(parent.text);
+                    }
+                }
+                case "strong", "b" -> inline(parent, text, "**");
+                case "em", "i" -> inline(parent, text, "*");
+                case "del", "s", "strike" -> inline(parent, text, "~~");
+                case "code" -> inline(parent, text, "`");
+                case "a" -> link(parent, text, frame.attributes.get("href"));
+                case "ul", "ol", "ac:task-list" -> {
+                    blankLine(parent.text);
+                    parent.text.append(text.strip());
+                    blankLine(parent.text);
+                }
+                case "li" -> listItem(parent, text, "ol".equals(parent.name) ? ++parent.items + ". " : "* ");
+                case "ac:task" -> listItem(parent, text, "complete".equalsIgnoreCase(frame.status) ? "* [x] " : "* [ ] ");
+                case "ac:task-status" -> parent.status = text.strip();
+                case "pre" -> {
+                    verbatimDepth--;
+                    fence(parent, text, null);
+                }
+                case "blockquote" -> {
+                    blankLine(parent.text);
+                    parent.text.append(quote(text.strip()));
+                    blankLine(parent.text);
+                }
+                case "th", "td" -> {
+                    if (parent.cells != null) {
+                        parent.cells.add(singleLine(text).replace("|", "\\|"));
+                    }
+                }
+                case "tr" -> {
+                    if (parent.rows != null && !frame.cells.isEmpty()) {
+                        parent.rows.add(frame.cells);
+                    }
+                }
+                case "table" -> table(parent, frame.rows);
+                case "ac:parameter" -> {
+                    final var macro = nearest(MACROS);
+                    if (macro != null) {
+                        macro.parameters.put(frame.attributes.getOrDefault("ac:name", ""), text.strip());
+                    }
+                }
+                case "ac:rich-text-body" -> {
+                    final var macro = nearest(MACROS);
+                    if (macro != null) {
+                        macro.richBody = text;
+                    }
+                }
+                case "ac:plain-text-body" -> {
+                    verbatimDepth--;
+                    final var macro = nearest(MACROS);
+                    if (macro != null) {
+                        macro.plainBody = text;
+                    }
+                }
+                case "ac:link-body", "ac:plain-text-link-body" -> {
+                    if (frame.name.equals("ac:plain-text-link-body")) {
+                        verbatimDepth--;
+                    }
+                    final var link = nearest(Set.of("ac:link"));
+                    if (link != null) {
+                        link.body = text;
+                    }
+                }
+                case "ac:structured-macro", "ac:macro" -> renderMacro(frame, parent);
+                case "ac:link" -> {
+                    final var label = frame.body != null && !frame.body.isBlank() ? frame.body : frame.target;
+                    link(parent, label == null ? text : label, frame.href);
+                }
+                case "ac:image" -> image(parent, frame.target == null ? "" : frame.target, frame.href);
+                default -> {
+                    // Discarded elements (script, style, placeholders) drop their text
+                }
+            }
+        }
+
+        private void renderMacro(Frame macro, Frame parent) {
+            final var macroName = macro.attributes.getOrDefault("ac:name", "").toLowerCase(Locale.ROOT);
+            final var parameters = macro.parameters == null ? Map.<String, String>of() : macro.parameters;
+            final var title = parameters.get("title");
+            final var body = macro.richBody != null ? macro.richBody : macro.text.toString();
+
+            if (macroName.equals("code") || macroName.equals("noformat")) {
+                if (title != null && !title.isBlank()) {
+                    blankLine(parent.text);
+                    parent.text.append("**").append(title).append("**");
+                }
+                fence(parent, macro.plainBody != null ? macro.plainBody : body, parameters.get("language"));
+            } else if (CALLOUTS.contains(macroName) || macroName.equals("panel")) {
+                final var label = macroName.equals("panel") ? null : Character.toUpperCase(macroName.charAt(0)) + macroName.substring(1);
+                final var heading = label == null
+                        ? title == null || title.isBlank() ? null : title
+                        : title == null || title.isBlank() ? label : label + ": " + title;
+                final var callout = (heading == null ? "" : "**" + heading + "**\n\n") + body.strip();
+                blankLine(parent.text);
+                parent.text.append(quote(callout.strip()));
+                blankLine(parent.text);
+            } else if (macroName.equals("expand")) {
+                blankLine(parent.text);
+                parent.text.append("**").append(title == null || title.isBlank() ? "Details" : title).append("**");
+                blankLine(parent.text);
+                parent.text.append(body.strip());
+                blankLine(parent.text);
+            } else if (macroName.equals("status")) {
+                final var status = title == null || title.isBlank() ? parameters.getOrDefault("colour", "") : title;
+                // Parameter values are text, which was already escaped as it was read
+                appendInline(parent, "[" + status + "]");
+            } else if (macroName.equals("jira")) {
+                appendInline(parent, parameters.getOrDefault("key", ""));
+            } else if (!BODILESS_MACROS.contains(macroName)) {
+                if (!body.isBlank()) {
+                    blankLine(parent.text);
+                    parent.text.append(body.strip());
+                    blankLine(parent.text);
+                } else if (macro.plainBody != null && !macro.plainBody.isBlank()) {
+                    fence(parent, macro.plainBody, null);
+                }
+            }
+        }
+
+        private void text(String raw) {
+            final var current = frames.peek();
+            if (DISCARDED.contains(current.name)) {
+                return;
+            }
+
+            final var decoded = raw.indexOf('&') < 0 ? raw : StringEscapeUtils.unescapeHtml4(raw);
+            if (verbatimDepth > 0) {
+                current.text.append(decoded);
+                return;
+            }
+
+            final var out = current.text;
+            final var escaping = codeDepth == 0;
+            var pendingSpace = false;
+            for (var i = 0; i < decoded.length(); i++) {
+                final var c = decoded.charAt(i);
+                if (Character.isWhitespace(c) || c == '\u00A0') {
+                    pendingSpace = true;
+                    continue;
+                }
+                if (pendingSpace) {
+                    space(current);
+                    pendingSpace = false;
+                }
+                if (escaping && (c == '\\' || c == '*' || c == '_' || c == '`')) {
+                    out.append('\\');
+                }
+                out.append(c);
+            }
+            if (pendingSpace) {
+                space(current);
+            }
+        }
+
+        private void space(Frame frame) {
+            final var out = frame.text;
+            if (out.isEmpty()) {
+                // Leading whitespace of inline elements is kept so the markers can be placed outside of it
+                if (isInline(frame)) {
+                    out.append(' ');
+                }
+                return;
+            }
+            final var last = out.charAt(out.length() - 1);
+            if (last != ' ' && last != '\n') {
+                out.append(' ');
+            }
+        }
+
+        private void linkTarget(String target, String href) {
+            final var current = frames.peek();
+            if (current.name.equals("ac:link") || current.name.equals("ac:image")) {
+                current.target = target;
+                current.href = href;
+            }
+        }
+
+        private Frame nearest(Set<String> names) {
+            for (final var frame : frames) {
+                if (names.contains(frame.name)) {
+                    return frame;
+                }
+            }
+            return null;
+        }
+
+        private Map<String, String> attributes(int from, int to) {
+            final var attributes = new HashMap<String, String>();
+            var i = from;
+            while (i < to) {
+                while (i < to && Character.isWhitespace(source.charAt(i))) {
+                    i++;
+                }
+                final var nameStart = i;
+                while (i < to && source.charAt(i) != '=' && !Character.isWhitespace(source.charAt(i))) {
+                    i++;
+                }
+                if (i == nameStart) {
+                    i++;
+                    continue;
+                }
+                final var name = source.substring(nameStart, i).toLowerCase(Locale.ROOT);
+                while (i < to && Character.isWhitespace(source.charAt(i))) {
+                    i++;
+                }
+                if (i >= to || source.charAt(i) != '=') {
+                    attributes.put(name, "");
+                    continue;
+                }
+                i++;
+                while (i < to && Character.isWhitespace(source.charAt(i))) {
+                    i++;
+                }
+                final String value;
+                if (i < to && (source.charAt(i) == '"' || source.charAt(i) == '\'')) {
+                    final var quote = source.charAt(i);
+                    final var end = source.indexOf(quote, i + 1);
+                    final var valueEnd = end < 0 || end > to ? to : end;
+                    value = source.substring(i + 1, valueEnd);
+                    i = valueEnd + 1;
+                } else {
+                    final var valueStart = i;
+                    while (i < to && !Character.isWhitespace(source.charAt(i))) {
+                        i++;
+                    }
+                    value = source.substring(valueStart, i);
+                }
+                attributes.put(name, value.indexOf('&') < 0 ? value : StringEscapeUtils.unescapeHtml4(value));
+            }
+            return attributes;
+        }
+
+        private static boolean isInline(Frame frame) {
+            return switch (frame.name) {
+                case "strong", "b", "em", "i", "code", "del", "s", "strike", "a", "ac:link", "ac:link-body" -> true;
+                default -> false;
+            };
+        }
+
+        private static void inline(Frame parent, String text, String marker) {
+            if (text.isBlank()) {
+                appendInline(parent, text.isEmpty() ? "" : " ");
+                return;
+            }
+            final var leading = Character.isWhitespace(text.charAt(0));
+            final var trailing = Character.isWhitespace(text.charAt(text.length() - 1));
+            appendInline(parent, (leading ? " " : "") + marker + text.strip() + marker + (trailing ? " " : ""));
+        }
+
+        private static void appendInline(Frame parent, String text) {
+            final var out = parent.text;
+            if (text.startsWith(" ") && (out.isEmpty() || out.charAt(out.length() - 1) == ' ' || out.charAt(out.length() - 1) == '\n')) {
+                out.append(text, 1, text.length());
+            } else {
+                out.append(text);
+            }
+        }
+
+        private static void link(Frame parent, String text, String rawHref) {
+            final var label = text.strip();
+            final var href = safeHref(rawHref);
+            if (href == null) {
+                appendInline(parent, text);
+            } else if (label.isEmpty()) {
+                appendInline(parent, "<" + href + ">");
+            } else {
+                final var leading = Character.isWhitespace(text.charAt(0)) ? " " : "";
+                final var trailing = Character.isWhitespace(text.charAt(text.length() - 1)) ? " " : "";
+                appendInline(parent, leading + "[" + label + "](" + href + ")" + trailing);
+            }
+        }
+
+        private static void image(Frame parent, String alt, String rawSrc) {
+            final var src = safeHref(rawSrc);
+            if (src != null) {
+                appendInline(parent, "![" + escape(alt) + "](" + src + ")");
+            }
+        }
+
+        private static String safeHref(String href) {
+            if (href == null || href.isBlank()) {
+                return null;
+            }
+
+            // Page content ends up in answers that may be rendered, so only links that cannot run anything are kept.
+            // Browsers ignore whitespace and control characters inside a scheme, and so does this check
+            final var target = href.strip();
+            final var scheme = SCHEME.matcher(target.replaceAll("[\\s\\p{Cntrl}]", ""));
+            if (scheme.lookingAt() && !SAFE_SCHEMES.contains(scheme.group(1).toLowerCase(Locale.ROOT))) {
+                return null;
+            }
+            // Characters that would end the Markdown link destination early are percent-encoded
+            return target.replace(" ", "%20").replace("(", "%28").replace(")", "%29").replace("<", "%3C").replace(">", "%3E");
+        }
+
+        private static void listItem(Frame parent, String text, String marker) {
+            final var lines = text.strip().split("\n");
+            newLine(parent.text);
+            var first = true;
+            for (final var line : lines) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                parent.text.append(first ? marker : "    ").append(first ? line.strip() : line.stripTrailing()).append('\n');
+                first = false;
+            }
+            if (first) {
+                parent.text.append(marker.stripTrailing()).append('\n');
+            }
+        }
+
+        private static void fence(Frame parent, String code, String language) {
+            var content = code.stripTrailing();
+            if (content.startsWith("\n")) {
+                content = content.substring(1);
+            }
+            final var fence = content.contains("```") ? "~~~" : "```";
+            blankLine(parent.text);
+            parent.text.append(fence).append(language == null ? "" : language).append('\n')
+                    .append(content).append('\n')
+                    .append(fence);
+            blankLine(parent.text);
+        }
+
+        private static void table(Frame parent, List<List<String>> rows) {
+            if (rows.isEmpty()) {
+                return;
+            }
+
+            final var columns = rows.stream().mapToInt(List::size).max().orElse(0);
+            blankLine(parent.text);
+            for (var row = 0; row < rows.size(); row++) {
+                final var cells = rows.get(row);
+                parent.text.append('|');
+                for (var column = 0; column < columns; column++) {
+                    parent.text.append(' ').append(column < cells.size() ? cells.get(column) : "").append(" |");
+                }
+                parent.text.append('\n');
+                if (row == 0) {
+                    parent.text.append('|').append(" --- |".repeat(columns)).append('\n');
+                }
+            }
+            blankLine(parent.text);
+        }
+
+        private static String quote(String text) {
+            final var quoted = new StringBuilder(text.length() + 16);
+            for (final var line : text.split("\n", -1)) {
+                quoted.append(line.isBlank() ? ">" : "> " + line).append('\n');
+            }
+            return quoted.toString().stripTrailing();
+        }
+
+        private static String singleLine(String text) {
+            final var line = new StringBuilder(text.length());
+            var pendingSpace = false;
+            for (var i = 0; i < text.length(); i++) {
+                final var c = text.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    pendingSpace = !line.isEmpty();
+                } else {
+                    if (pendingSpace) {
+                        line.append(' ');
+                        pendingSpace = false;
+                    }
+                    line.append(c);
+                }
+            }
+            return line.toString();
+        }
+
+        private static String escape(String text) {
+            final var escaped = new StringBuilder(text.length());
+            for (var i = 0; i < text.length(); i++) {
+                final var c = text.charAt(i);
+                if (c == '\\' || c == '*' || c == '_' || c == '`') {
+                    escaped.append('\\');
+                }
+                escaped.append(c);
+            }
+            return escaped.toString();
+        }
+
+        private static void newLine(StringBuilder out) {
+            trimTrailingSpaces(out);
+            if (!out.isEmpty() && out.charAt(out.length() - 1) != '\n') {
+                out.append('\n');
+            }
+        }
+
+        private static void blankLine(StringBuilder out) {
+            trimTrailingSpaces(out);
+            if (out.isEmpty()) {
+                return;
+            }
+            if (out.charAt(out.length() - 1) != '\n') {
+                out.append("\n\n");
+            } else if (out.length() < 2 || out.charAt(out.length() - 2) != '\n') {
+                out.append('\n');
+            }
+        }
+
+        private static void trimTrailingSpaces(StringBuilder out) {
+            var length = out.length();
+            while (length > 0 && (out.charAt(length - 1) == ' ' || out.charAt(length - 1) == '\t')) {
+                length--;
+            }
+            out.setLength(length);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.data.message.UserMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.chat.StreamingChatModel;
+import dev.langchain4j.model.chat.response.ChatResponse;
+import dev.langchain4j.model.chat.response.StreamingChatResponseHandler;
+import dev.langchain4j.rag.AugmentationRequest;
+import dev.langchain4j.rag.RetrievalAugmentor;
+import dev.langchain4j.rag.query.Metadata;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+@Slf4j
+@RequiredArgsConstructor
+public class StreamingConfluenceRagChain implements AutoCloseable {
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final @NonNull StreamingChatModel streamingChatModel;
+    private final @NonNull RetrievalAugmentor retrievalAugmentor;
+    private final @NonNull ConversationChatMemoryProvider chatMemoryProvider;
+    private final @NonNull ChatModelProperties chatModelProperties;
+
+    public CompletableFuture<String> ask(@NonNull String question, @NonNull Consumer<String> tokenConsumer) {
+        final var answer = new CompletableFuture<String>();
+        ask(question, new StreamingRagAnswerHandler() {
+            @Override
+            public void onToken(String token) {
+                tokenConsumer.accept(token);
+            }
+
+            @Override
+            public void onComplete(String completeAnswer) {
+                answer.complete(completeAnswer);
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                answer.completeExceptionally(error);
+            }
+        });
+        return answer;
+    }
+
+    public void ask(@NonNull String question, @NonNull StreamingRagAnswerHandler handler) {
+        executor.execute(() -> {
+            try {
+                streamAnswer(null, null, question, handler, () -> {
+                });
+            } catch (RuntimeException e) {
+                handler.onError(e);
+            }
+        });
+    }
+
+    public void ask(@NonNull Object conversationId, @NonNull String question, @NonNull StreamingRagAnswerHandler handler) {
+        executor.execute(() -> {
+            // The turn is held until the answer is in the memory, it ends on a callback thread of the model
+            final var turn = chatMemoryProvider.turn(conversationId);
+            turn.acquireUninterruptibly();
+            final var turnEnded = new AtomicBoolean();
+            final Runnable endTurn = () -> {
+                if (turnEnded.compareAndSet(false, true)) {
+                    turn.release();
+                }
+            };
+
+            try {
+                streamAnswer(conversationId, chatMemoryProvider.get(conversationId), question, handler, endTurn);
+            } catch (RuntimeException e) {
+                endTurn.run();
+                handler.onError(e);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        // Answers being retrieved get a moment to reach the model, anything left is interrupted rather than outliving the context
+        executor.shutdown();
+        if (!executor.awaitTermination(SHUTDOWN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+            log.warn("Interrupting answers that did not start streaming within {}", SHUTDOWN_TIMEOUT);
+            executor.shutdownNow();
+        }
+    }
+
+    private void streamAnswer(
+            Object conversationId,
+            ChatMemory memory,
+            String question,
+            StreamingRagAnswerHandler handler,
+            Runnable endTurn
+    ) {
+        final var startedAtNanos = System.nanoTime();
+        final var userMessage = UserMessage.from(question);
+        final List<ChatMessage> history = memory == null
+                ? List.of(SystemMessage.from(chatModelProperties.getSystemPrompt()))
+                : memory.messages();
+        final var augmentationResult = retrievalAugmentor.augment(
+                new AugmentationRequest(userMessage, Metadata.from(userMessage, conversationId, history))
+        );
+
+        final var contents = augmentationResult.contents();
+        handler.onRetrieved(contents, ConfluenceCitation.from(contents));
+        final var retrievedAtNanos = System.nanoTime();
+
+        final var messages = new ArrayList<>(history);
+        messages.add(augmentationResult.chatMessage());
+
+        final var firstToken = new AtomicBoolean(true);
+        streamingChatModel.chat(messages, new StreamingChatResponseHandler() {
+            @Override
+            public void onPartialResponse(String partialResponse) {
+                if (firstToken.compareAndSet(true, false)) {
+                    log.debug(
+                            "First token after {} ms ({} ms retrieval)",
+                            (System.nanoTime() - startedAtNanos) / 1_000_000,
+                            (retrievedAtNanos - startedAtNanos) / 1_000_000
+                    );
+                }
+                handler.onToken(partialResponse);
+            }
+
+            @Override
+            public void onCompleteResponse(ChatResponse completeResponse) {
+                try {
+                    if (memory != null) {
+                        memory.add(augmentationResult.chatMessage());
+                        memory.add(completeResponse.aiMessage());
+                    }
+                } finally {
+                    endTurn.run();
+                }
+                handler.onComplete(completeResponse.aiMessage().text());
+            }
+
+            @Override
+            public void onError(Throwable error) {
+                endTurn.run();
+                handler.onError(error);
+            }
+        });
+    }
+}
@@ -0,0 +1,19 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.rag.content.Content;
+
+import java.util.List;
+
+public interface StreamingRagAnswerHandler {
+    default void onRetrieved(List<Content> contents, List<ConfluenceCitation> citations) {
+
+    }
+
+    void onToken(String token);
+
+    default void onComplete(String answer) {
+
+    }
+
+    void onError(Throwable error);
+}
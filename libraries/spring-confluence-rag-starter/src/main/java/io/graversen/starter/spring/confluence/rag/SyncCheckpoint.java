@@ -0,0 +1,9 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+
+import java.time.Instant;
+
+public record SyncCheckpoint(@NonNull String spaceKey, @NonNull Instant lastModified, @NonNull Instant reconciledAt) {
+
+}
@@ -0,0 +1,17 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+public class SyncProperties {
+    private Boolean enabled = false;
+    private Duration initialDelay = Duration.ofMinutes(1);
+    private Duration interval = Duration.ofMinutes(5);
+    private Duration lookback = Duration.ofMinutes(5);
+    private String timeZone = "UTC";
+    private Duration reconcileInterval = Duration.ofHours(24);
+}
@@ -0,0 +1,63 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import org.apache.tika.exception.TikaException;
+import org.apache.tika.io.TikaInputStream;
+import org.apache.tika.metadata.Metadata;
+import org.apache.tika.mime.MediaType;
+import org.apache.tika.parser.AutoDetectParser;
+import org.apache.tika.parser.ParseContext;
+import org.apache.tika.sax.BodyContentHandler;
+import org.xml.sax.SAXException;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.file.Path;
+import java.util.function.Consumer;
+
+/**
+ * Extracts text with Apache Tika. Tika reports the text of a document as SAX events while parsing it, which are
+ * forwarded as they arrive instead of being collected into a string; parsers read from the file, so formats that need
+ * random access do not buffer the attachment either.
+ */
+public class TikaAttachmentTextExtractor implements ConfluenceAttachmentTextExtractor {
+    private final AutoDetectParser parser = new AutoDetectParser();
+
+    @Override
+    public boolean supports(@NonNull String mediaType) {
+        final var parsedMediaType = MediaType.parse(mediaType);
+        return parsedMediaType != null && parser.getSupportedTypes(new ParseContext()).contains(parsedMediaType.getBaseType());
+    }
+
+    @Override
+    public void extractText(@NonNull Path file, @NonNull String mediaType, @NonNull Consumer<String> textConsumer) throws IOException {
+        final var metadata = new Metadata();
+        metadata.set(Metadata.CONTENT_TYPE, mediaType);
+        try (final var inputStream = TikaInputStream.get(file, metadata)) {
+            parser.parse(inputStream, new BodyContentHandler(new ForwardingWriter(textConsumer)), metadata, new ParseContext());
+        } catch (SAXException | TikaException e) {
+            throw new IOException("Could not extract text from %s attachment".formatted(mediaType), e);
+        }
+    }
+
+    @RequiredArgsConstructor
+    private static class ForwardingWriter extends Writer {
+        private final Consumer<String> textConsumer;
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            if (length > 0) {
+                textConsumer.accept(new String(buffer, offset, length));
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
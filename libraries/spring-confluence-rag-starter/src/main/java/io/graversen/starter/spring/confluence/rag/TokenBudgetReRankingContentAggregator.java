@@ -0,0 +1,134 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.model.scoring.ScoringModel;
+import dev.langchain4j.rag.content.Content;
+import dev.langchain4j.rag.content.ContentMetadata;
+import dev.langchain4j.rag.content.aggregator.ContentAggregator;
+import dev.langchain4j.rag.query.Query;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+/**
+ * Reranks over-fetched candidates with a {@link ScoringModel} and keeps the best ones that fit a token budget, so the
+ * prompt stays small while the retriever can cast a wider net. The final score blends the reranker's score with the
+ * retrieval score, both min-max normalized over the candidates, so a cheap lexical scorer refines rather than replaces
+ * the semantic ranking. The min score applies to the reranker's own score before normalization, since a normalized
+ * score only says how a candidate compares to the others and the worst one is always 0.
+ */
+@Slf4j
+public class TokenBudgetReRankingContentAggregator implements ContentAggregator {
+    private final ScoringModel scoringModel;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final RerankingProperties rerankingProperties;
+    private final int maxResults;
+
+    public TokenBudgetReRankingContentAggregator(
+            @NonNull ScoringModel scoringModel,
+            @NonNull TokenCountEstimator tokenCountEstimator,
+            @NonNull RerankingProperties rerankingProperties,
+            int maxResults
+    ) {
+        this.scoringModel = scoringModel;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.rerankingProperties = rerankingProperties;
+        this.maxResults = maxResults;
+    }
+
+    @Override
+    public List<Content> aggregate(Map<Query, Collection<List<Content>>> queryToContents) {
+        if (queryToContents.isEmpty()) {
+            return List.of();
+        }
+
+        // The augmentor routes a single query; with query transformation the first one is the user's question
+        final var query = queryToContents.keySet().iterator().next();
+        final var retrieved = candidates(queryToContents);
+        if (retrieved.isEmpty()) {
+            return List.of();
+        }
+
+        final var segments = retrieved.stream().map(Content::textSegment).toList();
+        final var rawRerankScores = scoringModel.scoreAll(segments, query.text()).content();
+        final var minScore = rerankingProperties.getMinScore();
+        final var kept = IntStream.range(0, retrieved.size())
+                .filter(i -> minScore == null || rawRerankScores.get(i) >= minScore)
+                .boxed()
+                .toList();
+        if (kept.isEmpty()) {
+            log.debug("No candidate of {} reached the min rerank score {}", retrieved.size(), minScore);
+            return List.of();
+        }
+
+        final var candidates = kept.stream().map(retrieved::get).toList();
+        final var rerankScores = normalize(kept.stream().map(rawRerankScores::get).toList());
+        final var retrievalScores = normalize(candidates.stream().map(TokenBudgetReRankingContentAggregator::retrievalScore).toList());
+        final var weight = Math.max(0.0, Math.min(rerankingProperties.getRetrievalScoreWeight(), 1.0));
+
+        final var ranked = IntStream.range(0, candidates.size())
+                .mapToObj(i -> new Ranked(candidates.get(i), weight * retrievalScores.get(i) + (1 - weight) * rerankScores.get(i)))
+                .sorted(Comparator.comparingDouble(Ranked::score).reversed())
+                .toList();
+
+        final var selected = new ArrayList<Content>();
+        var tokens = 0;
+        for (final var candidate : ranked) {
+            if (selected.size() >= maxResults) {
+                break;
+            }
+            final var segmentTokens = tokenCountEstimator.estimateTokenCountInText(candidate.content().textSegment().text());
+            // Always keep the best candidate, even if it alone exceeds the budget
+            if (!selected.isEmpty() && tokens + segmentTokens > rerankingProperties.getContextTokenBudget()) {
+                continue;
+            }
+            tokens += segmentTokens;
+            selected.add(reranked(candidate));
+        }
+
+        log.debug("Reranked {} candidates down to {} ({} tokens)", retrieved.size(), selected.size(), tokens);
+        return selected;
+    }
+
+    private static List<Content> candidates(Map<Query, Collection<List<Content>>> queryToContents) {
+        final var unique = new LinkedHashMap<TextSegment, Content>();
+        queryToContents.values().stream()
+                .flatMap(Collection::stream)
+                .flatMap(List::stream)
+                .forEach(content -> unique.merge(content.textSegment(), content, (first, second) ->
+                        retrievalScore(second) > retrievalScore(first) ? second : first));
+        return List.copyOf(unique.values());
+    }
+
+    private static double retrievalScore(Content content) {
+        return content.metadata().get(ContentMetadata.SCORE) instanceof Number score ? score.doubleValue() : 0.0;
+    }
+
+    private static List<Double> normalize(List<Double> scores) {
+        final var min = scores.stream().mapToDouble(Double::doubleValue).min().orElse(0.0);
+        final var max = scores.stream().mapToDouble(Double::doubleValue).max().orElse(0.0);
+        if (max - min <= 0.0) {
+            return scores.stream().map(score -> 1.0).toList();
+        }
+        return scores.stream().map(score -> (score - min) / (max - min)).toList();
+    }
+
+    private static Content reranked(Ranked ranked) {
+        final var metadata = new HashMap<>(ranked.content().metadata());
+        metadata.put(ContentMetadata.RERANKED_SCORE, ranked.score());
+        return Content.from(ranked.content().textSegment(), metadata);
+    }
+
+    private record Ranked(Content content, double score) {
+
+    }
+}
@@ -0,0 +1,110 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.message.ChatMessage;
+import dev.langchain4j.data.message.SystemMessage;
+import dev.langchain4j.memory.ChatMemory;
+import dev.langchain4j.model.TokenCountEstimator;
+import dev.langchain4j.store.memory.chat.ChatMemoryStore;
+import lombok.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TokenCountingChatMemory implements ChatMemory {
+    private final Object id;
+    private final int maxTokens;
+    private final TokenCountEstimator tokenCountEstimator;
+    private final ChatMemoryStore chatMemoryStore;
+
+    private final ArrayDeque<CountedMessage> messages = new ArrayDeque<>();
+    private CountedMessage systemMessage;
+    private int tokens;
+
+    public TokenCountingChatMemory(
+            @NonNull Object id,
+            int maxTokens,
+            @NonNull TokenCountEstimator tokenCountEstimator,
+            ChatMemoryStore chatMemoryStore
+    ) {
+        this.id = id;
+        this.maxTokens = maxTokens;
+        this.tokenCountEstimator = tokenCountEstimator;
+        this.chatMemoryStore = chatMemoryStore;
+
+        if (chatMemoryStore != null) {
+            chatMemoryStore.getMessages(id).forEach(this::append);
+            evict();
+        }
+    }
+
+    @Override
+    public Object id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void add(ChatMessage message) {
+        append(message);
+        evict();
+        persist();
+    }
+
+    @Override
+    public synchronized List<ChatMessage> messages() {
+        final var snapshot = new ArrayList<ChatMessage>(messages.size() + 1);
+        if (systemMessage != null) {
+            snapshot.add(systemMessage.message());
+        }
+        messages.forEach(countedMessage -> snapshot.add(countedMessage.message()));
+        return snapshot;
+    }
+
+    @Override
+    public synchronized void clear() {
+        messages.clear();
+        systemMessage = null;
+        tokens = 0;
+        if (chatMemoryStore != null) {
+            chatMemoryStore.deleteMessages(id);
+        }
+    }
+
+    public synchronized boolean hasPriorTurns() {
+        return !messages.isEmpty();
+    }
+
+    public synchronized int tokens() {
+        return tokens;
+    }
+
+    private void append(ChatMessage message) {
+        // Every message is estimated exactly once; the window total is kept up to date incrementally
+        final var countedMessage = new CountedMessage(message, tokenCountEstimator.estimateTokenCountInMessage(message));
+        if (message instanceof SystemMessage) {
+            if (systemMessage != null) {
+                tokens -= systemMessage.tokens();
+            }
+            systemMessage = countedMessage;
+        } else {
+            messages.addLast(countedMessage);
+        }
+        tokens += countedMessage.tokens();
+    }
+
+    private void evict() {
+        while (tokens > maxTokens && !messages.isEmpty()) {
+            tokens -= messages.removeFirst().tokens();
+        }
+    }
+
+    private void persist() {
+        if (chatMemoryStore != null) {
+            chatMemoryStore.updateMessages(id, messages());
+        }
+    }
+
+    private record CountedMessage(ChatMessage message, int tokens) {
+
+    }
+}
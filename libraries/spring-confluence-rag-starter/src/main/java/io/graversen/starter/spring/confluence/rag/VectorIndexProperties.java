@@ -0,0 +1,18 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class VectorIndexProperties {
+    private VectorIndexType type = VectorIndexType.HNSW;
+    private Integer m = 16;
+    private Integer efConstruction = 64;
+    private Integer lists = 100;
+    private Integer efSearch = 40;
+    private Integer probes = 10;
+    private Boolean buildAfterBulkLoad = true;
+    private Double rebuildChangedFraction = 0.2;
+    private String maintenanceWorkMem;
+}
@@ -0,0 +1,7 @@
+package io.graversen.starter.spring.confluence.rag;
+
+public enum VectorIndexType {
+    NONE,
+    HNSW,
+    IVFFLAT
+}
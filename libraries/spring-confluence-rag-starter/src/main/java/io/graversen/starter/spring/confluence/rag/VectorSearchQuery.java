@@ -0,0 +1,92 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import com.pgvector.PGvector;
+import lombok.NonNull;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Nearest-neighbour subquery for the configured vector storage, selecting {@code embedding_id} and cosine
+ * {@code distance} ordered by distance. With binary quantization the index only ranks candidates by the Hamming
+ * distance of their sign bits, and the candidates are then rescored against the stored vectors for the final order.
+ * A space filter is part of the scan itself, so the nearest segments of the requested spaces are returned rather than
+ * whatever remains of the overall top-k after filtering.
+ */
+public class VectorSearchQuery {
+    private final String sql;
+    private final String spaceFilteredSql;
+    private final String spaceColumn;
+    private final boolean binaryQuantization;
+    private final int rescoreCandidates;
+
+    public VectorSearchQuery(@NonNull DatabaseProperties databaseProperties, int dimension) {
+        final var storage = databaseProperties.getStorage();
+        this.spaceColumn = storage.getPartitionBySpace() ? "space_key" : "(metadata->>'spaceKey')";
+        this.binaryQuantization = storage.getBinaryQuantization();
+        this.rescoreCandidates = storage.getRescoreCandidates();
+        this.sql = sql(databaseProperties, dimension, "");
+        this.spaceFilteredSql = sql(databaseProperties, dimension, "WHERE %s = ANY(?)".formatted(spaceColumn));
+    }
+
+    /**
+     * The expression holding a segment's space key: the partition key when partitioned by space, otherwise the
+     * segment's metadata.
+     */
+    public String spaceColumn() {
+        return spaceColumn;
+    }
+
+    public String sql(boolean spaceFiltered) {
+        return spaceFiltered ? spaceFilteredSql : sql;
+    }
+
+    /**
+     * Binds the parameters of {@link #sql(boolean)} starting at {@code parameterIndex}, and returns the index of the
+     * next parameter of the enclosing statement. An empty list of space keys matches the unfiltered query.
+     */
+    public int bind(
+            @NonNull PreparedStatement statement,
+            int parameterIndex,
+            float[] vector,
+            int limit,
+            @NonNull List<String> spaceKeys
+    ) throws SQLException {
+        final var queryVector = new PGvector(vector);
+        var index = parameterIndex;
+        statement.setObject(index++, queryVector);
+        if (!spaceKeys.isEmpty()) {
+            index = bindSpaceKeys(statement, index, spaceKeys);
+        }
+        if (binaryQuantization) {
+            statement.setObject(index++, queryVector);
+            statement.setInt(index++, Math.max(rescoreCandidates, limit));
+        }
+        statement.setInt(index++, limit);
+        return index;
+    }
+
+    public static int bindSpaceKeys(@NonNull PreparedStatement statement, int parameterIndex, @NonNull List<String> spaceKeys) throws SQLException {
+        statement.setArray(parameterIndex, statement.getConnection().createArrayOf("text", spaceKeys.toArray()));
+        return parameterIndex + 1;
+    }
+
+    private static String sql(DatabaseProperties databaseProperties, int dimension, String spaceFilter) {
+        final var storage = databaseProperties.getStorage();
+        final var vectorType = PgVectorIndexManager.columnType(storage.getType());
+        return storage.getBinaryQuantization()
+                ? """
+                SELECT embedding_id, embedding <=> ?::%1$s AS distance
+                FROM (
+                    SELECT embedding_id, embedding FROM %2$s
+                    %4$s
+                    ORDER BY binary_quantize(embedding)::bit(%3$d) <~> binary_quantize(?::vector)
+                    LIMIT ?
+                ) candidates
+                ORDER BY distance
+                LIMIT ?""".formatted(vectorType, databaseProperties.getTable(), dimension, spaceFilter)
+                : "SELECT embedding_id, embedding <=> ?::%s AS distance FROM %s %s ORDER BY distance LIMIT ?"
+                .formatted(vectorType, databaseProperties.getTable(), spaceFilter);
+    }
+}
@@ -0,0 +1,13 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class VectorStorageProperties {
+    private VectorStorageType type = VectorStorageType.VECTOR;
+    private Boolean binaryQuantization = false;
+    private Integer rescoreCandidates = 100;
+    private Boolean partitionBySpace = false;
+}
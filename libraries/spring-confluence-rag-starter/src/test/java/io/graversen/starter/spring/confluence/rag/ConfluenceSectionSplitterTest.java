@@ -0,0 +1,93 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import dev.langchain4j.data.document.Document;
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConfluenceSectionSplitterTest {
+    @Test
+    void keepsTheLastLineOfAnUnclosedCodeFence() {
+        final var splitter = new ConfluenceSectionSplitter(200, 0);
+        final var code = IntStream.range(0, 30).mapToObj("echo step %d"::formatted).collect(Collectors.joining("\n"));
+
+        final var segments = splitter.split(Document.from("# Setup\n\n```bash\n" + code));
+
+        assertThat(segments).hasSizeGreaterThan(1).allSatisfy(segment -> {
+            assertThat(segment.text()).hasSizeLessThanOrEqualTo(200).startsWith("# Setup\n\n```bash\n").endsWith("\n```");
+        });
+        assertThat(segments.getLast().text()).contains("echo step 29");
+        assertThat(segments.stream().mapToInt(segment -> occurrences(segment.text(), "echo step")).sum()).isEqualTo(30);
+    }
+
+    @Test
+    void doesNotTreatTheClosingFenceAsCode() {
+        final var splitter = new ConfluenceSectionSplitter(200, 0);
+        final var code = IntStream.range(0, 30).mapToObj("echo step %d"::formatted).collect(Collectors.joining("\n"));
+
+        final var segments = splitter.split(Document.from("# Setup\n\n~~~\n" + code + "\n~~~\n\nDone."));
+
+        assertThat(segments).allSatisfy(segment -> {
+            assertThat(segment.text()).hasSizeLessThanOrEqualTo(200).doesNotContain("~~~\n~~~");
+        });
+        assertThat(segments.stream().mapToInt(segment -> occurrences(segment.text(), "echo step")).sum()).isEqualTo(30);
+        assertThat(segments.getLast().text()).endsWith("Done.");
+    }
+
+    @Test
+    void leavesRoomForTheHeadingInOversizedSections() {
+        final var splitter = new ConfluenceSectionSplitter(300, 30);
+        final var heading = "## Inspection of the ventilation shafts in sector seven";
+        final var paragraph = IntStream.range(0, 200).mapToObj("word%d"::formatted).collect(Collectors.joining(" "));
+
+        final var segments = splitter.split(Document.from(heading + "\n\n" + paragraph));
+
+        assertThat(segments).hasSizeGreaterThan(1).allSatisfy(segment -> {
+            assertThat(segment.text()).hasSizeLessThanOrEqualTo(300).startsWith(heading + "\n\n");
+        });
+        assertThat(segments.getLast().text()).contains("word199");
+    }
+
+    @Test
+    void splitsOversizedTablesByRowsRepeatingTheHeader() {
+        final var splitter = new ConfluenceSectionSplitter(200, 0);
+        final var rows = IntStream.range(0, 40).mapToObj(row -> "| Miner-%d | %d |".formatted(row, row * 10)).collect(Collectors.joining("\n"));
+
+        final var segments = splitter.split(Document.from("# Yield\n\n| Rig | Tonnes |\n| --- | --- |\n" + rows));
+
+        assertThat(segments).hasSizeGreaterThan(1).allSatisfy(segment -> {
+            assertThat(segment.text()).hasSizeLessThanOrEqualTo(200).startsWith("# Yield\n\n| Rig | Tonnes |\n| --- | --- |\n");
+        });
+        assertThat(segments.stream().mapToInt(segment -> occurrences(segment.text(), "| Miner-")).sum()).isEqualTo(40);
+    }
+
+    @Test
+    void addsTheSectionPathOfEverySegment() {
+        final var splitter = new ConfluenceSectionSplitter(500, 50);
+        final var document = Document.from(
+                "# Drilling\n\nRigs drill.\n\n## Maintenance\n\nRigs are inspected.\n\n# Safety\n\nWear a helmet.",
+                Metadata.from(Map.of("pageTitle", "Runbook"))
+        );
+
+        final var segments = splitter.split(document);
+
+        assertThat(segments).extracting(segment -> segment.metadata().getString(ConfluenceSectionSplitter.SECTION_PATH))
+                .containsExactly("Runbook > Drilling", "Runbook > Drilling > Maintenance", "Runbook > Safety");
+        assertThat(segments).extracting(TextSegment::text)
+                .containsExactly("# Drilling\n\nRigs drill.", "## Maintenance\n\nRigs are inspected.", "# Safety\n\nWear a helmet.");
+    }
+
+    private static int occurrences(String text, String part) {
+        var count = 0;
+        for (var index = text.indexOf(part); index >= 0; index = text.indexOf(part, index + 1)) {
+            count++;
+        }
+        return count;
+    }
+}
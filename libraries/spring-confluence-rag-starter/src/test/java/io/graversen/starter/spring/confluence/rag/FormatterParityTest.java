@@ -0,0 +1,132 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import org.jsoup.Jsoup;
+import org.jsoup.parser.Parser;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Checks that {@link StorageFormatMarkdownFormatter} produces the same Markdown as {@link Html2MarkdownContentFormatter}.
+ * Macros are rendered instead of dropped, so they are unwrapped to their rich text body before both formatters run; both
+ * outputs must then equal the golden {@code .parity.md} file exactly, up to Markdown syntax that renders the same
+ * (heading style, table padding) and the header row a table without header cells is given. As a supplementary check
+ * the words of the reference output must be kept, on the fixture pages or on the exported storage-format pages that
+ * {@code -Dformatter.parity.corpus=<directory>} points at.
+ */
+class FormatterParityTest {
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern SETEXT_HEADING = Pattern.compile("(?m)^(\\S.*)\\n(=+|-+)$");
+    private static final Pattern TABLE_CELL_SEPARATOR = Pattern.compile("(?<!\\\\)\\|");
+    private static final Pattern HEADERLESS_TABLE = Pattern.compile("(?m)(\\A|\\n\\n)(\\| --- (?:\\| --- )*\\|)\\n(\\|.*)$");
+    private static final double THRESHOLD = 0.98;
+
+    private final ConfluenceContentFormatter reference = new Html2MarkdownContentFormatter();
+    private final ConfluenceContentFormatter candidate = new StorageFormatMarkdownFormatter();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"runbook", "nested-macros", "tables", "code"})
+    void matchesTheReferenceFormatterOutsideMacros(String fixture) throws IOException, URISyntaxException {
+        final var content = withoutMacros(Files.readString(fixture(fixture + ".html")));
+        final var expected = Files.readString(fixture(fixture + ".parity.md")).strip();
+
+        assertThat(canonical(reference.formatContent(content))).as("reference output of %s", fixture).isEqualTo(expected);
+        assertThat(canonical(candidate.formatContent(content))).as("output of %s", fixture).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @MethodSource("pages")
+    void keepsTheWordsOfTheReferenceFormatter(Path page) throws IOException {
+        final var content = Files.readString(page);
+
+        final var recall = recall(words(reference.formatContent(content)), words(candidate.formatContent(content)));
+
+        assertThat(recall).as("word recall of %s", page.getFileName()).isGreaterThanOrEqualTo(THRESHOLD);
+    }
+
+    static List<Path> pages() throws IOException, URISyntaxException {
+        final var corpus = System.getProperty("formatter.parity.corpus");
+        final var directory = corpus == null || corpus.isBlank() ? fixture("") : Path.of(corpus);
+        try (final Stream<Path> files = Files.list(directory)) {
+            return files.filter(Files::isRegularFile)
+                    .filter(file -> !file.getFileName().toString().endsWith(".md"))
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    private static Path fixture(String name) throws URISyntaxException {
+        return Path.of(Objects.requireNonNull(FormatterParityTest.class.getResource("/storage-format")).toURI()).resolve(name);
+    }
+
+    private static String withoutMacros(String content) {
+        final var document = Jsoup.parse(content, "", Parser.xmlParser());
+        document.outputSettings().prettyPrint(false).charset(StandardCharsets.UTF_8);
+        for (final var macro : document.select("ac|structured-macro")) {
+            macro.select("> ac|parameter").remove();
+            final var body = macro.selectFirst("> ac|rich-text-body");
+            if (body == null) {
+                macro.remove();
+            } else {
+                body.unwrap();
+                macro.unwrap();
+            }
+        }
+        return document.html();
+    }
+
+    private static String canonical(String markdown) {
+        final var headings = SETEXT_HEADING.matcher(markdown.replace("\r\n", "\n")).replaceAll(match ->
+                (match.group(2).startsWith("=") ? "# " : "## ") + match.group(1));
+        final var tables = headings.lines()
+                .map(line -> line.startsWith("|") ? canonicalTableRow(line) : line.stripTrailing())
+                .collect(Collectors.joining("\n"));
+        // The reference leaves the header of a table without header cells empty, the formatter promotes its first row
+        return HEADERLESS_TABLE.matcher(tables).replaceAll("$1$3\n$2").strip();
+    }
+
+    private static String canonicalTableRow(String row) {
+        final var cells = TABLE_CELL_SEPARATOR.split(row.strip(), -1);
+        return Arrays.stream(cells, 1, cells.length - 1)
+                .map(String::strip)
+                .map(cell -> cell.matches(":?-+:?") ? "---" : cell)
+                .collect(Collectors.joining(" | ", "| ", " |"))
+                .replace("|  |", "| |");
+    }
+
+    private static Map<String, Integer> words(String markdown) {
+        final var words = new HashMap<String, Integer>();
+        Arrays.stream(NON_WORD.split(markdown.toLowerCase(Locale.ROOT)))
+                .filter(word -> !word.isEmpty())
+                .forEach(word -> words.merge(word, 1, Integer::sum));
+        return words;
+    }
+
+    private static double recall(Map<String, Integer> expected, Map<String, Integer> actual) {
+        final var total = expected.values().stream().mapToInt(Integer::intValue).sum();
+        if (total == 0) {
+            return 1.0;
+        }
+        final var found = expected.entrySet().stream()
+                .mapToInt(entry -> Math.min(entry.getValue(), actual.getOrDefault(entry.getKey(), 0)))
+                .sum();
+        return (double) found / total;
+    }
+}
@@ -0,0 +1,63 @@
+package io.graversen.starter.spring.confluence.rag;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StorageFormatMarkdownFormatterTest {
+    private final StorageFormatMarkdownFormatter formatter = new StorageFormatMarkdownFormatter();
+
+    @ParameterizedTest
+    @ValueSource(strings = {"runbook", "nested-macros", "tables", "code"})
+    void formatsFixture(String fixture) {
+        final var markdown = formatter.formatContent(resource(fixture + ".html"));
+
+        assertThat(markdown).isEqualTo(resource(fixture + ".md").strip());
+    }
+
+    @Test
+    void dropsLinksAndImagesWithUnsafeSchemes() {
+        final var markdown = formatter.formatContent("""
+                <p><a href="javascript:alert(1)">click</a> <a href=" JaVa\tScript:alert(1)">tab</a> \
+                <ac:image><ri:url ri:value="data:image/svg+xml,x" /></ac:image><img src="vbscript:x" alt="img" /> done</p>
+                """);
+
+        assertThat(markdown).isEqualTo("click tab done");
+    }
+
+    @Test
+    void keepsHttpMailtoAndRelativeLinks() {
+        final var markdown = formatter.formatContent("""
+                <p><a href="/display/OPS/Runbook">runbook</a> <a href="mailto:ops@example.com">mail</a> \
+                <a href="https://example.com/a (b)">paren</a></p>
+                """);
+
+        assertThat(markdown).isEqualTo("[runbook](/display/OPS/Runbook) [mail](mailto:ops@example.com) [paren](https://example.com/a%20%28b%29)");
+    }
+
+    @Test
+    void escapesMacroParametersOnce() {
+        final var markdown = formatter.formatContent("""
+                <h2>Cycle <ac:structured-macro ac:name="status"><ac:parameter ac:name="colour">Yellow</ac:parameter>\
+                <ac:parameter ac:name="title">IN_PROGRESS</ac:parameter></ac:structured-macro></h2>
+                <p>Tracked in <ac:structured-macro ac:name="jira"><ac:parameter ac:name="key">OPS_12</ac:parameter></ac:structured-macro></p>
+                """);
+
+        assertThat(markdown).isEqualTo("## Cycle [IN\\_PROGRESS]\n\nTracked in OPS\\_12");
+    }
+
+    private static String resource(String name) {
+        try (final var input = StorageFormatMarkdownFormatterTest.class.getResourceAsStream("/storage-format/" + name)) {
+            assertThat(input).as("fixture %s", name).isNotNull();
+            return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}